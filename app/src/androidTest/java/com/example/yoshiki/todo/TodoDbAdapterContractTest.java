@@ -0,0 +1,95 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * TodoDbAdapterがTodoRepositoryの共通テストを満たすことの確認.
+ * @author 清兼
+ */
+public class TodoDbAdapterContractTest extends AndroidTestCase {
+
+    /**
+     * メンバ変数定義
+     */
+    private Context mTestContext;               // テスト用DBを参照するContext
+    private TodoDbAdapter mDbHelper;            // テスト対象
+    private TodoRepositoryContract mContract;   // 共通テスト
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTestContext = new RenamingDelegatingContext(getContext(), "test_");
+        mTestContext.deleteDatabase("todo");
+        mDbHelper = new TodoDbAdapter(mTestContext).open();
+        mContract = new TodoRepositoryContract(mDbHelper);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mTestContext.deleteDatabase("todo");
+        super.tearDown();
+    }
+
+    public void testCreateAndFetch() {
+        mContract.verifyCreateAndFetch();
+    }
+
+    public void testCreateTodoItems() {
+        mContract.verifyCreateTodoItems();
+    }
+
+    public void testFetchTodoItems() {
+        mContract.verifyFetchTodoItems();
+    }
+
+    public void testFetchListItems() {
+        mContract.verifyFetchListItems();
+    }
+
+    public void testFetchTodoItemsByState() {
+        mContract.verifyFetchTodoItemsByState();
+    }
+
+    public void testFetchTodoItemPage() {
+        mContract.verifyFetchTodoItemPage();
+    }
+
+    public void testSortedPages() {
+        mContract.verifySortedPages();
+    }
+
+    public void testCanceledFetch() {
+        mContract.verifyCanceledFetch();
+    }
+
+    public void testFetchTodoItemsAfter() {
+        mContract.verifyFetchTodoItemsAfter();
+    }
+
+    public void testFetchTodoItemsByDueDate() {
+        mContract.verifyFetchTodoItemsByDueDate();
+    }
+
+    public void testUpdateTodoItem() {
+        mContract.verifyUpdateTodoItem();
+    }
+
+    public void testUpdateTodoItemsState() {
+        mContract.verifyUpdateTodoItemsState();
+    }
+
+    public void testDeleteNote() {
+        mContract.verifyDeleteNote();
+    }
+
+    public void testUndeleteAndPurge() {
+        mContract.verifyUndeleteAndPurge();
+    }
+
+    public void testChangeNotification() {
+        mContract.verifyChangeNotification();
+    }
+}
@@ -0,0 +1,644 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * TodoDbAdapterのテスト.
+ * @author 清兼
+ */
+public class TodoDbAdapterTest extends AndroidTestCase {
+
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoDbAdapterTest";
+
+    /**
+     * メンバ変数定義
+     */
+    private Context mTestContext;       // テスト用DBを参照するContext
+    private TodoDbAdapter mDbHelper;    // テスト対象
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // 本番DBを汚さないよう、テスト用のDB名で開く
+        mTestContext = new RenamingDelegatingContext(getContext(), "test_");
+        mTestContext.deleteDatabase("todo");
+        mDbHelper = new TodoDbAdapter(mTestContext);
+        mDbHelper.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mTestContext.deleteDatabase("todo");
+        super.tearDown();
+    }
+
+    /**
+     * 一括登録で採番された_idが登録順に返り、内容が保存されていることを確認.
+     */
+    public void testCreateTodoItems() {
+        // Columnの取り違えが分かるよう、Column毎に異なる値を設定する
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 100; nIndex++) {
+            String strState = (nIndex % 2 == 0) ? TodoDbAdapter.STR_STATE_OPEN : TodoDbAdapter.STR_STATE_CLOSE;
+            items.add(new TodoItem("title" + nIndex, "body" + nIndex, "2015/07/" + (10 + nIndex % 20), strState));
+        }
+        long[] ids = mDbHelper.createTodoItems(items);
+
+        assertEquals(100, ids.length);
+        for (int nIndex = 1; nIndex < ids.length; nIndex++) {
+            assertTrue(ids[nIndex] > ids[nIndex - 1]);
+        }
+
+        // 採番された_idで取得した内容が、登録した内容と一致する
+        List<TodoItem> saved = mDbHelper.fetchTodoItems(ids);
+        assertEquals(100, saved.size());
+        for (int nIndex = 0; nIndex < ids.length; nIndex++) {
+            TodoItem expected = items.get(nIndex);
+            TodoItem item = saved.get(nIndex);
+            assertEquals(ids[nIndex], item.getPrimaryKey());
+            assertEquals(expected.getTitle(), item.getTitle());
+            assertEquals(expected.getBody(), item.getBody());
+            assertEquals(expected.getDate(), item.getDate());
+            assertEquals(expected.getState(), item.getState());
+        }
+        assertEquals(100, mDbHelper.deleteNote(ids));
+    }
+
+    /**
+     * 削除件数が戻り値として返ることを確認.
+     */
+    public void testDeleteNoteReturnsDeletedRows() {
+        long[] ids = insertItems(3);
+
+        // 存在しないPrimaryKeyは件数に含まれない
+        assertEquals(2, mDbHelper.deleteNote(new long[]{ids[0], ids[2], -1}));
+        assertEquals(0, mDbHelper.deleteNote(new long[]{ids[0]}));
+        assertEquals(0, mDbHelper.deleteNote(new long[0]));
+    }
+
+    /**
+     * 1000件の一括削除と1件ずつの削除で、削除件数が正しく返ることを確認.
+     */
+    public void testBulkDelete1k() {
+        verifyDeleteCounts(1000);
+    }
+
+    /**
+     * 10000件の一括削除と1件ずつの削除で、削除件数が正しく返ることを確認.
+     * 所要時間の比較はTodoDbBenchmark（bulkDelete, perRowDelete）で計測する.
+     */
+    public void testBulkDelete10k() {
+        verifyDeleteCounts(10000);
+    }
+
+    /**
+     * 1件ずつの削除と一括削除の削除件数を確認する.
+     *
+     * @param nCount 削除件数
+     */
+    private void verifyDeleteCounts(int nCount) {
+        // 1件ずつ削除
+        long[] ids = insertItems(nCount);
+        for (long id : ids) {
+            assertEquals(1, mDbHelper.deleteNote(new long[]{id}));
+        }
+
+        // 一括削除（"_id IN (...)"の分割を跨ぐ件数）
+        ids = insertItems(nCount);
+        assertEquals(nCount, mDbHelper.deleteNote(ids));
+        assertEquals(0, mDbHelper.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null).size());
+    }
+
+    /**
+     * Stateによる一覧取得がインデックスを使い、完了済みアイテムの件数に依存しないことを確認.
+     */
+    public void testFetchByStateUsesIndex() {
+        // ほとんどが完了済みの100000件のテーブル
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 100000; nIndex++) {
+            String strState = (nIndex % 10000 == 0) ? TodoDbAdapter.STR_STATE_OPEN : TodoDbAdapter.STR_STATE_CLOSE;
+            items.add(new TodoItem("title" + nIndex, "body", "2015/07/13", strState));
+        }
+        mDbHelper.createTodoItems(items);
+
+        // クエリプランの確認
+        String strPlan = explainQueryPlan(
+                "SELECT _id, title FROM todoItem WHERE state = ? ORDER BY _id", TodoDbAdapter.STR_STATE_OPEN);
+        assertTrue(strPlan, strPlan.contains("USING INDEX todoItem_state"));
+        assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+
+        // 未完了のアイテムのみ取得される
+        long nStart = System.nanoTime();
+        Cursor cursor = mDbHelper.fetchAllTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN);
+        long nElapsedUs = (System.nanoTime() - nStart) / 1000;
+        try {
+            assertEquals(10, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+        Log.i(STR_CLASS_NAME, "未完了10件/全100000件の取得: " + nElapsedUs + "us");
+    }
+
+    /**
+     * 期限順の取得が(state, date)のインデックスのみを使い、並べ替え（TEMP B-TREE）を行わないことを確認.
+     */
+    public void testFetchByDueDateUsesIndex() {
+        insertItems(100);
+
+        String strPlan = explainQueryPlan(
+                "SELECT _id, date, state FROM todoItem WHERE state = ? AND date >= ? ORDER BY date, _id LIMIT 65",
+                TodoDbAdapter.STR_STATE_OPEN, "2015/07/13");
+        assertTrue(strPlan, strPlan.contains("todoItem_state_date"));
+        assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+
+        List<TodoItem> items = mDbHelper.fetchTodoItemsByDueDate(TodoDbAdapter.STR_STATE_OPEN, "2015/07/13", 65);
+        assertEquals(65, items.size());
+    }
+
+    /**
+     * 並び順毎のページ取得が対応するインデックスのみを使い、並べ替え（TEMP B-TREE）を行わないことを確認.
+     * 先頭ページ・2ページ目以降のいずれも確認する（インデックス名は前方一致しないよう" ("まで比較する）.
+     */
+    public void testSortedPagesUseIndex() {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 1000; nIndex++) {
+            String strState = (nIndex % 3 == 0) ? TodoDbAdapter.STR_STATE_OPEN : TodoDbAdapter.STR_STATE_CLOSE;
+            items.add(new TodoItem(
+                    ((nIndex % 2 == 0) ? "Title" : "title") + (nIndex % 97), "body", "2015/07/" + (10 + nIndex % 20), strState));
+        }
+        mDbHelper.createTodoItems(items);
+
+        String strOpen = TodoDbAdapter.STR_STATE_OPEN;
+        String[][] strQueries = {
+            {"todoItem_state",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? ORDER BY _id LIMIT 50",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? AND _id > ? ORDER BY _id LIMIT 50"},
+            {"todoItem_state_date",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? ORDER BY date, _id LIMIT 50",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? AND date >= ? AND (date > ? OR _id > ?) "
+                        + "ORDER BY date, _id LIMIT 50"},
+            {"todoItem_state_title",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? ORDER BY title COLLATE NOCASE, _id LIMIT 50",
+                "SELECT _id, title, date, state FROM todoItem WHERE state = ? AND title COLLATE NOCASE >= ? "
+                        + "AND (title COLLATE NOCASE > ? OR _id > ?) ORDER BY title COLLATE NOCASE, _id LIMIT 50"},
+        };
+        String[][] strAfterArgs = {
+            {strOpen, "100"},
+            {strOpen, "2015/07/15", "2015/07/15", "100"},
+            {strOpen, "title5", "title5", "100"},
+        };
+        for (int nQuery = 0; nQuery < strQueries.length; nQuery++) {
+            String strPlan = explainQueryPlan(strQueries[nQuery][1], strOpen);
+            assertTrue(strPlan, strPlan.contains("INDEX " + strQueries[nQuery][0] + " ("));
+            assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+
+            strPlan = explainQueryPlan(strQueries[nQuery][2], strAfterArgs[nQuery]);
+            assertTrue(strPlan, strPlan.contains("INDEX " + strQueries[nQuery][0] + " ("));
+            assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+        }
+
+        // タイトル順の全件取得も並べ替えを行わない
+        String strPlan = explainQueryPlan(
+                "SELECT _id, title, body, date, state FROM todoItem WHERE state = ? ORDER BY title COLLATE NOCASE, _id",
+                strOpen);
+        assertTrue(strPlan, strPlan.contains("INDEX todoItem_state_title ("));
+        assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+
+        // 大文字・小文字のみが異なるタイトルは続けて並ぶ
+        Cursor cursor = mDbHelper.fetchAllTodoItemsByState(
+                TodoDbAdapter.STR_LIST_COLUMNS, strOpen, TodoItem.N_SORT_TITLE, null);
+        List<TodoItem> sorted = TodoDbAdapter.toTodoItems(cursor);
+        assertEquals(334, sorted.size());
+        for (int nIndex = 1; nIndex < sorted.size(); nIndex++) {
+            assertTrue(TodoItem.TITLE_ORDER.compare(sorted.get(nIndex - 1), sorted.get(nIndex)) < 0);
+        }
+    }
+
+    /**
+     * ページを順に読み込むと、全件が重複なく_id順に取得できることを確認.
+     */
+    public void testFetchPagesByState() {
+        long[] ids = insertItems(125);
+
+        long nAfterKey = 0;
+        int nTotal = 0;
+        while (true) {
+            Cursor cursor = mDbHelper.fetchTodoItemPageByState(
+                    TodoDbAdapter.STR_LIST_COLUMNS, TodoDbAdapter.STR_STATE_OPEN, nAfterKey, 50, null);
+            int nCount = cursor.getCount();
+            try {
+                for (int nIndex = 0; nIndex < nCount; nIndex++) {
+                    cursor.moveToPosition(nIndex);
+                    long nPrimaryKey = cursor.getLong(cursor.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_PRIMARY));
+                    assertEquals(ids[nTotal++], nPrimaryKey);
+                    nAfterKey = nPrimaryKey;
+                }
+            } finally {
+                cursor.close();
+            }
+            if (nCount < 50) {
+                break;
+            }
+        }
+        assertEquals(125, nTotal);
+    }
+
+    /**
+     * 全文検索が前方一致し、タイトルの一致を優先し、登録・更新・削除に追従することを確認.
+     */
+    public void testSearchTodoItems() {
+        long nBodyHit = mDbHelper.createTodoItem("shopping", "buy milk", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        long nTitleHit = mDbHelper.createTodoItem("milkshake", "make it", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        mDbHelper.createTodoItem("other", "nothing", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+
+        // 前方一致、タイトルでの一致が上位
+        List<TodoItem> items = mDbHelper.searchTodoItems("mil", 10);
+        assertEquals(2, items.size());
+        assertEquals(nTitleHit, items.get(0).getPrimaryKey());
+        assertEquals(nBodyHit, items.get(1).getPrimaryKey());
+
+        // 件数の上限
+        assertEquals(1, mDbHelper.searchTodoItems("mil", 1).size());
+
+        // 複数単語は全てを含むもの
+        items = mDbHelper.searchTodoItems("buy mil", 10);
+        assertEquals(1, items.size());
+        assertEquals(nBodyHit, items.get(0).getPrimaryKey());
+
+        // 更新・削除の反映
+        mDbHelper.updateTodoItem(nBodyHit, null, "buy bread", null, null);
+        mDbHelper.deleteNote(new long[]{nTitleHit});
+        assertEquals(0, mDbHelper.searchTodoItems("mil", 10).size());
+        assertEquals(1, mDbHelper.searchTodoItems("bre", 10).size());
+
+        // FTSの構文は無視される
+        assertEquals(0, mDbHelper.searchTodoItems("\"*-()", 10).size());
+    }
+
+    /**
+     * 完了日時が完了・再開に合わせて記録・消去されることを確認.
+     */
+    public void testClosedAtFollowsState() {
+        long[] ids = insertItems(2);
+        long nClosed = mDbHelper.createTodoItem("closed", "body", "2015/07/13", TodoDbAdapter.STR_STATE_CLOSE);
+
+        mDbHelper.updateTodoItemsState(new long[]{ids[0]}, TodoDbAdapter.STR_STATE_CLOSE);
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM todoItem WHERE closed_at IS NOT NULL AND _id IN (?, ?)",
+                String.valueOf(ids[0]), String.valueOf(nClosed)));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM todoItem WHERE closed_at IS NOT NULL AND _id = ?",
+                String.valueOf(ids[1])));
+
+        mDbHelper.updateTodoItem(ids[0], null, null, null, TodoDbAdapter.STR_STATE_OPEN);
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM todoItem WHERE closed_at IS NOT NULL AND _id = ?",
+                String.valueOf(ids[0])));
+    }
+
+    /**
+     * 古い完了済みTodoアイテムのみがバッチ単位でアーカイブへ移り、検索・復元できることを確認.
+     */
+    public void testArchiveAndRestore() {
+        long nOld = mDbHelper.createTodoItem("old milk", "body", "2015/07/13", TodoDbAdapter.STR_STATE_CLOSE);
+        long nOlder = mDbHelper.createTodoItem("older milk", "body", "2015/07/13", TodoDbAdapter.STR_STATE_CLOSE);
+        long nRecent = mDbHelper.createTodoItem("recent milk", "body", "2015/07/13", TodoDbAdapter.STR_STATE_CLOSE);
+        long nOpen = mDbHelper.createTodoItem("open milk", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+
+        // 完了日時を過去へずらす
+        long nNow = System.currentTimeMillis();
+        execOnTestDatabase("UPDATE todoItem SET closed_at = ? WHERE _id = ?", nNow / 1000 - 40 * 86400, nOld);
+        execOnTestDatabase("UPDATE todoItem SET closed_at = ? WHERE _id = ?", nNow / 1000 - 50 * 86400, nOlder);
+
+        // 完了日時の古い順に1件ずつ移る
+        long nClosedBefore = nNow - 30 * 86400000L;
+        assertEquals(1, mDbHelper.archiveClosedTodoItems(nClosedBefore, 1));
+        assertNull(mDbHelper.fetchTodoItem(nOlder));
+        assertNotNull(mDbHelper.fetchTodoItem(nOld));
+        assertEquals(1, mDbHelper.archiveClosedTodoItems(nClosedBefore, 1));
+        assertEquals(0, mDbHelper.archiveClosedTodoItems(nClosedBefore, 1));
+        assertNotNull(mDbHelper.fetchTodoItem(nRecent));
+        assertNotNull(mDbHelper.fetchTodoItem(nOpen));
+
+        // アーカイブ側のみで検索される
+        List<TodoItem> archived = mDbHelper.fetchArchivedTodoItemsAfter(0, 10);
+        assertEquals(2, archived.size());
+        assertEquals(nOld, archived.get(0).getPrimaryKey());
+        assertEquals("older milk", archived.get(1).getTitle());
+        assertEquals(2, mDbHelper.searchTodoItems("milk", 10).size());
+        List<TodoItem> items = mDbHelper.searchArchivedTodoItems("older", 10);
+        assertEquals(1, items.size());
+        assertEquals(nOlder, items.get(0).getPrimaryKey());
+
+        // 同じPrimaryKeyで戻り、すぐには再びアーカイブされない
+        assertEquals(1, mDbHelper.restoreTodoItems(new long[]{nOlder, -1}));
+        TodoItem item = mDbHelper.fetchTodoItem(nOlder);
+        assertEquals("older milk", item.getTitle());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+        assertEquals(1, mDbHelper.searchTodoItems("older", 10).size());
+        assertEquals(0, mDbHelper.searchArchivedTodoItems("older", 10).size());
+        assertEquals(0, mDbHelper.archiveClosedTodoItems(nClosedBefore, 10));
+    }
+
+    /**
+     * アーカイブの検索結果が、アーカイブ側のテーブルの行から組み立てられることを確認.
+     * 同じPrimaryKeyの別の行をtodoItemへ直接作り、そちらの値が返らないことで区別する.
+     */
+    public void testSearchArchivedReadsArchiveTable() {
+        long nArchived = mDbHelper.createTodoItem("archived milk", "archived body", "2015/07/13",
+                TodoDbAdapter.STR_STATE_CLOSE);
+        long nNow = System.currentTimeMillis();
+        execOnTestDatabase("UPDATE todoItem SET closed_at = ? WHERE _id = ?", nNow / 1000 - 40 * 86400, nArchived);
+        assertEquals(1, mDbHelper.archiveClosedTodoItems(nNow - 30 * 86400000L, 10));
+
+        // アーカイブ済みと同じPrimaryKeyの行をtodoItemへ作る
+        execOnTestDatabase("INSERT INTO todoItem (_id, title, body, date, state) VALUES (?, ?, ?, ?, ?)",
+                nArchived, "live copy", "live body", "2015/07/14", TodoDbAdapter.STR_STATE_OPEN);
+
+        List<TodoItem> items = mDbHelper.searchArchivedTodoItems("archived", 10);
+        assertEquals(1, items.size());
+        TodoItem item = items.get(0);
+        assertEquals(nArchived, item.getPrimaryKey());
+        assertEquals("archived milk", item.getTitle());
+        assertEquals("archived body", item.getBody());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+    }
+
+    /**
+     * アーカイブ対象の取得が(state, closed_at)のインデックスのみを使い、並べ替えを行わないことを確認.
+     */
+    public void testArchiveScanUsesIndex() {
+        String strPlan = explainQueryPlan(
+                "SELECT _id FROM todoItem WHERE state = ? AND closed_at < ? ORDER BY closed_at LIMIT 200",
+                TodoDbAdapter.STR_STATE_CLOSE, "0");
+        assertTrue(strPlan, strPlan.contains("todoItem_state_closed"));
+        assertFalse(strPlan, strPlan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * 削除したTodoアイテムは行を残したまま一覧・検索・集計から除かれ、元に戻せること、
+     * 完全に削除すると全文検索の索引からも削除されることを確認.
+     */
+    public void testSoftDeleteAndUndo() {
+        long nOpen = mDbHelper.createTodoItem("milk", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        long nClosed = mDbHelper.createTodoItem("milk tea", "body", "2015/07/13", TodoDbAdapter.STR_STATE_CLOSE);
+        execOnTestDatabase("UPDATE todoItem SET closed_at = 1000 WHERE _id = ?", nClosed);
+        TodoStats stats = mDbHelper.getStats();
+        assertEquals(new TodoStats(1, 1, 1, 0), stats);
+
+        assertEquals(2, mDbHelper.deleteNote(new long[]{nOpen, nClosed}));
+        assertEquals(2, queryLong("SELECT COUNT(*) FROM todoItem WHERE state = 'deleted'"));
+        assertEquals(0, mDbHelper.searchTodoItems("mil", 10).size());
+        assertEquals(0, mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, 10, null).size());
+        assertEquals(new TodoStats(0, 0, 0, 0), mDbHelper.getStats());
+        assertTrue(mDbHelper.checkStats());
+
+        // 元に戻すと、State・完了日時も削除前に戻る
+        assertEquals(2, mDbHelper.undeleteTodoItems(new long[]{nOpen, nClosed}));
+        assertEquals(stats, mDbHelper.getStats());
+        assertEquals(2, mDbHelper.searchTodoItems("mil", 10).size());
+        assertEquals(1000, queryLong("SELECT closed_at FROM todoItem WHERE _id = ?", String.valueOf(nClosed)));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM todoItem WHERE deleted_at IS NOT NULL"));
+
+        // 完全に削除
+        mDbHelper.deleteNote(new long[]{nOpen});
+        assertEquals(1, mDbHelper.purgeDeletedTodoItems(System.currentTimeMillis() + 1000, 10));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM todoItem WHERE _id = ?", String.valueOf(nOpen)));
+        assertEquals(0, queryLong("SELECT COUNT(*) FROM todoSearch WHERE todoSearch MATCH 'milk' AND docid = ?",
+                String.valueOf(nOpen)));
+        assertTrue(mDbHelper.checkStats());
+    }
+
+    /**
+     * 削除済みの取得・全文検索からの除外がインデックスを使い、テーブルを走査しないことを確認.
+     */
+    public void testDeletedFilterUsesIndex() {
+        String strPlan = explainQueryPlan(
+                "SELECT _id FROM todoItem WHERE state = ? AND deleted_at < ? LIMIT 500", "deleted", "0");
+        assertTrue(strPlan, strPlan.contains("USING INDEX todoItem_state"));
+
+        strPlan = explainQueryPlan(
+                "SELECT docid FROM todoSearch WHERE todoSearch MATCH ? "
+                        + "AND docid NOT IN (SELECT _id FROM todoItem WHERE state = 'deleted')", "milk*");
+        assertTrue(strPlan, strPlan.contains("INDEX todoItem_state"));
+        assertFalse(strPlan, strPlan.contains("SCAN TABLE todoItem"));
+    }
+
+    /**
+     * INCREMENTALへ切り替えた後は、削除で空いたページがincremental vacuumで解放されることを確認.
+     */
+    public void testReclaimFreePages() {
+        assertTrue(mDbHelper.enableIncrementalVacuum());
+        assertFalse(mDbHelper.enableIncrementalVacuum());
+
+        mDbHelper.deleteNote(insertItems(5000));
+        while (mDbHelper.purgeDeletedTodoItems(Long.MAX_VALUE, 500) > 0) {
+            // 削除済みを全て削除する
+        }
+        assertTrue(queryLong("PRAGMA freelist_count") > 0);
+        assertTrue(mDbHelper.reclaimFreePages(Integer.MAX_VALUE) > 0);
+        assertEquals(0, queryLong("PRAGMA freelist_count"));
+        assertEquals(0, mDbHelper.reclaimFreePages(Integer.MAX_VALUE));
+    }
+
+    /**
+     * 件数の集計が登録・更新・削除・アーカイブに追従し、数え直した件数と一致することを確認.
+     */
+    public void testStatsFollowWrites() {
+        String strToday = TodoDateCodec.format(TodoDateCodec.today());
+        String strYesterday = TodoDateCodec.format(
+                TodoDateCodec.fromEpochDay(TodoDateCodec.toEpochDay(TodoDateCodec.today()) - 1));
+        String strTomorrow = TodoDateCodec.format(
+                TodoDateCodec.fromEpochDay(TodoDateCodec.toEpochDay(TodoDateCodec.today()) + 1));
+
+        long nOverdue = mDbHelper.createTodoItem("a", "b", strYesterday, TodoDbAdapter.STR_STATE_OPEN);
+        long nToday = mDbHelper.createTodoItem("a", "b", strToday, TodoDbAdapter.STR_STATE_OPEN);
+        long nLater = mDbHelper.createTodoItem("a", "b", strTomorrow, TodoDbAdapter.STR_STATE_OPEN);
+        mDbHelper.createTodoItem("a", "b", strYesterday, TodoDbAdapter.STR_STATE_CLOSE);
+        assertEquals(new TodoStats(3, 1, 1, 1), mDbHelper.getStats());
+
+        // 期限の変更・完了・再開
+        mDbHelper.updateTodoItem(nLater, null, null, strYesterday, null);
+        assertEquals(new TodoStats(3, 1, 2, 1), mDbHelper.getStats());
+        mDbHelper.updateTodoItemsState(new long[]{nOverdue, nToday}, TodoDbAdapter.STR_STATE_CLOSE);
+        assertEquals(new TodoStats(1, 3, 1, 0), mDbHelper.getStats());
+        mDbHelper.updateTodoItem(nToday, "title", null, null, TodoDbAdapter.STR_STATE_OPEN);
+        assertEquals(new TodoStats(2, 2, 1, 1), mDbHelper.getStats());
+
+        // 削除・アーカイブ
+        mDbHelper.deleteNote(new long[]{nLater});
+        assertEquals(new TodoStats(1, 2, 0, 1), mDbHelper.getStats());
+        assertEquals(2, mDbHelper.archiveClosedTodoItems(System.currentTimeMillis() + 1000, 10));
+        assertEquals(new TodoStats(1, 0, 0, 1), mDbHelper.getStats());
+        assertTrue(mDbHelper.checkStats());
+    }
+
+    /**
+     * 日付が変わった後は期限切れの件数が進み、ずれた集計は確認で検出されて作り直せることを確認.
+     */
+    public void testCheckAndRebuildStats() {
+        String strToday = TodoDateCodec.format(TodoDateCodec.today());
+        mDbHelper.createTodoItem("a", "b", strToday, TodoDbAdapter.STR_STATE_OPEN);
+        mDbHelper.createTodoItem("a", "b", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        insertItems(100);
+
+        // 前回の取得が過去の日付だった場合
+        execOnTestDatabase("UPDATE todoStats SET overdue = 0, overdue_before = ?", "2015/07/13");
+        assertEquals(new TodoStats(102, 0, 101, 1), mDbHelper.getStats());
+        assertTrue(mDbHelper.checkStats());
+
+        // 集計のずれを検出して作り直す
+        execOnTestDatabase("UPDATE todoDueCount SET count = count + 1 WHERE date = ?", strToday);
+        assertFalse(mDbHelper.checkStats());
+        mDbHelper.rebuildStats();
+        assertTrue(mDbHelper.checkStats());
+        assertEquals(new TodoStats(102, 0, 101, 1), mDbHelper.getStats());
+    }
+
+    /**
+     * 共有のDBがWALで開かれていることを確認.
+     */
+    public void testDatabaseUsesWriteAheadLog() {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mTestContext.getDatabasePath("todo").getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("wal", cursor.getString(0));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * 別のTodoDbAdapterが一括登録のトランザクション中でも、読み込みが待たされずに完了することを確認.
+     */
+    public void testReadDuringWriteTransaction() throws Exception {
+        insertItems(100);
+
+        // 書き込み側は別のTodoDbAdapter（共有のDatabaseHelperを使う）から実行
+        final TodoDbAdapter writer = new TodoDbAdapter(mTestContext).open();
+        final List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 50000; nIndex++) {
+            items.add(new TodoItem("title" + nIndex, "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        }
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean bWriting = new AtomicBoolean(true);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                writer.createTodoItems(items);
+                bWriting.set(false);
+            }
+        });
+        thread.start();
+
+        // コミット前の読み込みは、書き込み前の100件のみが見える
+        started.await();
+        int nReadsDuringWrite = 0;
+        while (bWriting.get()) {
+            List<TodoItem> page = mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, 200, null);
+            if (page.size() == 100 && bWriting.get()) {
+                nReadsDuringWrite++;
+            }
+        }
+        thread.join();
+        writer.close();
+
+        Log.i(STR_CLASS_NAME, "書き込み中の読み込み回数: " + nReadsDuringWrite);
+        assertTrue(nReadsDuringWrite > 0);
+    }
+
+    /**
+     * テスト用DBでEXPLAIN QUERY PLANを実行し、detail列を連結して返す.
+     *
+     * @param strSql 対象のSQL
+     * @param strArgs SQLの引数
+     * @return クエリプラン
+     */
+    private String explainQueryPlan(String strSql, String... strArgs) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mTestContext.getDatabasePath("todo").getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + strSql, strArgs);
+            try {
+                StringBuilder sb = new StringBuilder();
+                int nDetail = cursor.getColumnIndexOrThrow("detail");
+                while (cursor.moveToNext()) {
+                    sb.append(cursor.getString(nDetail)).append('\n');
+                }
+                return sb.toString();
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * テスト用DBで1行1列の結果を返すSQLを実行する.
+     *
+     * @param strSql 対象のSQL
+     * @param strArgs SQLの引数
+     * @return 結果
+     */
+    private long queryLong(String strSql, String... strArgs) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mTestContext.getDatabasePath("todo").getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return DatabaseUtils.longForQuery(db, strSql, strArgs);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * テスト用DBで更新のSQLを実行する.
+     *
+     * @param strSql 対象のSQL
+     * @param args SQLの引数
+     */
+    private void execOnTestDatabase(String strSql, Object... args) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                mTestContext.getDatabasePath("todo").getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            db.execSQL(strSql, args);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * テスト用のTodoアイテムを登録する.
+     *
+     * @param nCount 登録件数
+     * @return 登録したTodoアイテムのPrimaryKey
+     */
+    private long[] insertItems(int nCount) {
+        List<TodoItem> items = new ArrayList<TodoItem>(nCount);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            items.add(new TodoItem(
+                    "title" + nIndex, "body" + nIndex, "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        }
+        return mDbHelper.createTodoItems(items);
+    }
+}
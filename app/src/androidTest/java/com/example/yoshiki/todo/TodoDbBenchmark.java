@@ -0,0 +1,631 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.InstrumentationTestCase;
+import android.test.InstrumentationTestRunner;
+import android.test.RenamingDelegatingContext;
+import android.util.JsonWriter;
+import android.util.Log;
+import android.view.View;
+import android.widget.ListView;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * データアクセス層のベンチマーク.
+ * 1000, 10000, 100000件のテーブルで各操作の所要時間を計測し、結果をJSONで出力する.
+ * あわせて、日付変換（TodoDateCodec）を従来の文字列処理と比較し、100万件のインポート・エクスポートを計測する.
+ * 起動時の最初のリスト表示までの時間は、DBを開いて読み込む場合とスナップショットから表示する場合を比較する.
+ * 通常のテスト実行では時間がかかるため、インストルメンテーション引数"benchmark"が"true"の場合のみ実行する.
+ *
+ * 実行例：
+ *  adb shell am instrument -w -e benchmark true -e class com.example.yoshiki.todo.TodoDbBenchmark \
+ *      com.example.yoshiki.todo.test/android.test.InstrumentationTestRunner
+ *  adb pull /sdcard/Android/data/com.example.yoshiki.todo/files/benchmark.json
+ * @author 清兼
+ */
+public class TodoDbBenchmark extends InstrumentationTestCase {
+
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoDbBenchmark";
+
+    /**
+     * 計測条件定義
+     */
+    private static final int[] N_ROW_COUNTS = {1000, 10000, 100000};    // テーブルの件数
+    private static final int N_WARMUP       = 1;                        // 計測前の空回し回数
+    private static final int N_ITERATIONS   = 5;                        // 計測回数
+    private static final int N_RANDOM_OPS   = 1000;                     // ランダムアクセス系の操作回数
+    private static final int N_BIND_ROWS    = 1000;                     // リスト表示の計測行数
+    private static final int N_DATE_OPS     = 10000;                    // 日付変換の計測回数
+    private static final int N_TRANSFER_ROWS = 1000000;                 // エクスポート・インポートの件数
+    private static final int N_STARTUP_ROWS = 10000;                    // 起動時の計測のテーブルの件数
+    private static final int N_STARTUP_PAGE_SIZE = 50;                  // 起動時に表示する件数（TodoAppの1ページ）
+    private static final int N_PER_ROW_DELETE_MAX_ROWS = 10000;         // 1件ずつの削除を計測する最大件数（1件毎にfsyncするため）
+
+    /**
+     * 結果の出力ファイル名
+     */
+    private static final String STR_RESULT_FILE = "benchmark.json";
+
+    /**
+     * 1回分の計測対象の処理.
+     */
+    private interface Operation {
+
+        /**
+         * 計測前の準備（計測時間に含まない）.
+         */
+        void prepare();
+
+        /**
+         * 計測対象の処理.
+         */
+        void run();
+    }
+
+    /**
+     * メンバ変数定義
+     */
+    private Context mTestContext;       // テスト用DBを参照するContext
+    private TodoDbAdapter mDbHelper;    // 計測対象
+    private JsonWriter mWriter;         // 結果の出力先
+    private final Random mRandom = new Random(20150713);    // 再現性のため固定シード
+    private int mSink;                  // 計測対象の結果（最適化で処理が省かれないよう保持）
+
+    /**
+     * 全件数・全操作を計測し、結果をJSONで出力する.
+     */
+    public void testDataLayer() throws IOException {
+        if (!isEnabled()) {
+            Log.i(STR_CLASS_NAME, "ベンチマークは -e benchmark true を指定した場合のみ実行");
+            return;
+        }
+
+        mTestContext = new RenamingDelegatingContext(getInstrumentation().getTargetContext(), "bench_");
+        File file = new File(getInstrumentation().getTargetContext().getExternalFilesDir(null), STR_RESULT_FILE);
+        mWriter = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        mWriter.setIndent("  ");
+        try {
+            mWriter.beginObject();
+            mWriter.name("device").value(Build.MODEL);
+            mWriter.name("sdk").value(Build.VERSION.SDK_INT);
+            mWriter.name("timestamp").value(System.currentTimeMillis());
+            mWriter.name("results").beginArray();
+            for (int nRows : N_ROW_COUNTS) {
+                benchmarkRows(nRows);
+            }
+            benchmarkDateCodec();
+            benchmarkTransfer();
+            benchmarkStartup();
+            mWriter.endArray();
+            mWriter.endObject();
+        } finally {
+            mWriter.close();
+        }
+        Log.i(STR_CLASS_NAME, "結果: " + file.getPath());
+    }
+
+    /**
+     * 指定件数のテーブルで各操作を計測する.
+     *
+     * @param nRows テーブルの件数
+     */
+    private void benchmarkRows(final int nRows) throws IOException {
+        final List<TodoItem> items = createItems(nRows);
+        final long[][] ids = new long[1][];
+
+        // 一括登録
+        measure("insert", nRows, new Operation() {
+            @Override
+            public void prepare() {
+                reopen();
+            }
+
+            @Override
+            public void run() {
+                ids[0] = mDbHelper.createTodoItems(items);
+            }
+        });
+
+        // 一括削除
+        measure("bulkDelete", nRows, new Operation() {
+            @Override
+            public void prepare() {
+                reopen();
+                ids[0] = mDbHelper.createTodoItems(items);
+            }
+
+            @Override
+            public void run() {
+                mDbHelper.deleteNote(ids[0]);
+            }
+        });
+
+        // 1件ずつの削除（暗黙のトランザクション毎にfsync、一括削除との比較用）
+        if (nRows <= N_PER_ROW_DELETE_MAX_ROWS) {
+            measure("perRowDelete", nRows, new Operation() {
+                @Override
+                public void prepare() {
+                    reopen();
+                    ids[0] = mDbHelper.createTodoItems(items);
+                }
+
+                @Override
+                public void run() {
+                    for (long nPrimaryKey : ids[0]) {
+                        mDbHelper.deleteNote(new long[]{nPrimaryKey});
+                    }
+                }
+            });
+        }
+
+        // 以降の計測は同じテーブルを使う
+        reopen();
+        ids[0] = mDbHelper.createTodoItems(items);
+
+        // Stateでの全件取得
+        measure("fetchByState", nRows, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                Cursor cursor = mDbHelper.fetchAllTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN);
+                cursor.close();
+            }
+        });
+
+        // Stateでの先頭ページ取得
+        measure("fetchPageByState", nRows, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, 50, null);
+            }
+        });
+
+        // 期限順・タイトル順での先頭ページ取得（並び順のインデックスを使い、並べ替えを行わない）
+        measure("fetchPageByDueDate", nRows, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, TodoItem.N_SORT_DUE_DATE, null, 50, null);
+            }
+        });
+        measure("fetchPageByTitle", nRows, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, TodoItem.N_SORT_TITLE, null, 50, null);
+            }
+        });
+
+        // PrimaryKeyでの取得（キャッシュを通さない）
+        measure("fetchById", nRows, new Operation() {
+            private long[] mTargets;
+
+            @Override
+            public void prepare() {
+                mTargets = pickRandom(ids[0], N_RANDOM_OPS);
+            }
+
+            @Override
+            public void run() {
+                for (long nPrimaryKey : mTargets) {
+                    mDbHelper.fetchToDoItemByPrimaryKey(nPrimaryKey).close();
+                }
+            }
+        });
+
+        // 1件ずつの更新
+        measure("update", nRows, new Operation() {
+            private long[] mTargets;
+
+            @Override
+            public void prepare() {
+                mTargets = pickRandom(ids[0], N_RANDOM_OPS);
+            }
+
+            @Override
+            public void run() {
+                for (long nPrimaryKey : mTargets) {
+                    mDbHelper.updateTodoItem(nPrimaryKey, "updated", null, null, null);
+                }
+            }
+        });
+
+        // リスト表示のView生成・再利用
+        final List<TodoItem> rows = mDbHelper.fetchTodoItemPage(
+                TodoDbAdapter.STR_STATE_OPEN, 0, Math.min(nRows, N_BIND_ROWS), null);
+        measure("listBinding", nRows, new Operation() {
+            private TodoListAdapter mAdapter;
+            private ListView mParent;
+
+            @Override
+            public void prepare() {
+                mAdapter = new TodoListAdapter(mTestContext);
+                mAdapter.setItems(rows, false);
+                mParent = new ListView(mTestContext);
+            }
+
+            @Override
+            public void run() {
+                View view = null;
+                for (int nPosition = 0; nPosition < mAdapter.getCount(); nPosition++) {
+                    view = mAdapter.getView(nPosition, view, mParent);
+                }
+            }
+        });
+
+        mDbHelper.close();
+        mTestContext.deleteDatabase("todo");
+    }
+
+    /**
+     * 日付の変換を、TodoDateCodecと従来の文字列処理とで比較する.
+     * rowsには変換回数を出力する.
+     */
+    private void benchmarkDateCodec() throws IOException {
+        final String[] strDates = new String[N_DATE_OPS];
+        final int[] nDates = new int[N_DATE_OPS];
+        for (int nIndex = 0; nIndex < N_DATE_OPS; nIndex++) {
+            nDates[nIndex] = TodoDateCodec.fromEpochDay(16000 + mRandom.nextInt(3650));
+            strDates[nIndex] = TodoDateCodec.format(nDates[nIndex]);
+        }
+
+        // 従来のTodoDate：split("/")とparseInt
+        measure("dateParseSplit", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (String strDate : strDates) {
+                    String[] strWork = strDate.split("/", 0);
+                    mSink += Integer.parseInt(strWork[0]) + Integer.parseInt(strWork[1]) + Integer.parseInt(strWork[2]);
+                }
+            }
+        });
+        measure("dateParseCodec", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (String strDate : strDates) {
+                    int nDate = TodoDateCodec.parse(strDate);
+                    mSink += TodoDateCodec.getYear(nDate) + TodoDateCodec.getMonth(nDate) + TodoDateCodec.getDay(nDate);
+                }
+            }
+        });
+
+        // 従来のTodoEdit.populateFields：SimpleDateFormatを毎回生成して本日の日付を整形
+        measure("dateTodaySimpleDateFormat", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (int nIndex = 0; nIndex < N_DATE_OPS; nIndex++) {
+                    DateFormat df = new SimpleDateFormat("yyyy/MM/dd");
+                    mSink += df.format(new Date(System.currentTimeMillis())).length();
+                }
+            }
+        });
+        measure("dateTodayCodec", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (int nIndex = 0; nIndex < N_DATE_OPS; nIndex++) {
+                    mSink += TodoDateCodec.format(TodoDateCodec.today()).length();
+                }
+            }
+        });
+
+        // 従来のTodoEdit.onActivityResult：年月日の文字列を連結してString.formatで0埋め
+        measure("dateFormatConcat", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (int nDate : nDates) {
+                    String strDate = String.valueOf(TodoDateCodec.getYear(nDate)) + "/"
+                            + String.valueOf(TodoDateCodec.getMonth(nDate)) + "/"
+                            + String.valueOf(TodoDateCodec.getDay(nDate));
+                    String[] strWork = strDate.split("/", 0);
+                    mSink += String.format(Locale.US, "%04d/%02d/%02d",
+                            Integer.parseInt(strWork[0]),
+                            Integer.parseInt(strWork[1]),
+                            Integer.parseInt(strWork[2])).length();
+                }
+            }
+        });
+        measure("dateFormatCodec", N_DATE_OPS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                for (int nDate : nDates) {
+                    mSink += TodoDateCodec.format(nDate).length();
+                }
+            }
+        });
+
+        Log.i(STR_CLASS_NAME, "sink=" + mSink);
+    }
+
+    /**
+     * 100万件のJSON Linesファイルのインポートと、そのテーブルのエクスポートを計測する.
+     * ファイルは1行ずつ生成し、メモリに全件を保持しない.
+     */
+    private void benchmarkTransfer() throws IOException {
+        final File file = new File(getInstrumentation().getTargetContext().getExternalFilesDir(null), "transfer.jsonl");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int nIndex = 0; nIndex < N_TRANSFER_ROWS; nIndex++) {
+                sb.setLength(0);
+                TodoTransfer.appendJson(sb, new TodoItem(nIndex + 1,
+                        "title" + nIndex,
+                        "body of todo item " + nIndex,
+                        TodoDateCodec.format(TodoDateCodec.fromEpochDay(16000 + nIndex % 3650)),
+                        (nIndex % 2 == 0) ? TodoDbAdapter.STR_STATE_OPEN : TodoDbAdapter.STR_STATE_CLOSE));
+                writer.append(sb).append('\n');
+            }
+        } finally {
+            writer.close();
+        }
+
+        measure("import", N_TRANSFER_ROWS, new Operation() {
+            @Override
+            public void prepare() {
+                reopen();
+            }
+
+            @Override
+            public void run() {
+                try {
+                    Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                    try {
+                        mSink += TodoTransfer.importFrom(reader, TodoTransfer.N_FORMAT_JSON_LINES,
+                                mDbHelper, Runtime.getRuntime().availableProcessors());
+                    } finally {
+                        reader.close();
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+
+        measure("export", N_TRANSFER_ROWS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                try {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                    try {
+                        mSink += TodoTransfer.exportTo(mDbHelper, writer, TodoTransfer.N_FORMAT_JSON_LINES);
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+
+        mDbHelper.close();
+        mTestContext.deleteDatabase("todo");
+        file.delete();
+    }
+
+    /**
+     * 起動時に最初のTodoアイテムリスト（1ページ分）を表示できるまでの時間を計測する.
+     * DBの新規作成（初回起動）・既存のDBを開く場合と、スナップショットをメモリマップして読み込む場合を比較する.
+     * DBファイル・スナップショットはページキャッシュに残るため、プロセス起動直後の読み込みより速い値となる.
+     */
+    private void benchmarkStartup() throws IOException {
+        final File file = new File(getInstrumentation().getTargetContext().getCacheDir(), "startup.snapshot");
+
+        // DBの新規作成（DatabaseHelper.onCreateと全ての移行ステップを含む）
+        measure("firstPageCreateDb", 0, new Operation() {
+            @Override
+            public void prepare() {
+                closeDb();
+                mTestContext.deleteDatabase("todo");
+            }
+
+            @Override
+            public void run() {
+                mDbHelper = new TodoDbAdapter(mTestContext).open();
+                mSink += mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, N_STARTUP_PAGE_SIZE, null).size();
+            }
+        });
+
+        // 既存のDBとスナップショットを用意
+        reopen();
+        mDbHelper.createTodoItems(createItems(N_STARTUP_ROWS));
+        TodoListSnapshot.write(file,
+                mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, N_STARTUP_PAGE_SIZE, null),
+                TodoItem.N_SORT_CREATED, N_STARTUP_PAGE_SIZE, true);
+
+        // 既存のDBを開いて先頭ページを読み込む
+        measure("firstPageOpenDb", N_STARTUP_ROWS, new Operation() {
+            @Override
+            public void prepare() {
+                closeDb();
+            }
+
+            @Override
+            public void run() {
+                mDbHelper = new TodoDbAdapter(mTestContext).open();
+                mSink += mDbHelper.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, N_STARTUP_PAGE_SIZE, null).size();
+            }
+        });
+
+        // スナップショットを読み込む
+        measure("firstPageSnapshot", N_STARTUP_ROWS, new Operation() {
+            @Override
+            public void prepare() {
+            }
+
+            @Override
+            public void run() {
+                mSink += TodoListSnapshot.read(file).getItems().size();
+            }
+        });
+
+        closeDb();
+        mTestContext.deleteDatabase("todo");
+        file.delete();
+    }
+
+    /**
+     * 処理の所要時間を計測し、結果を出力する.
+     *
+     * @param strName 操作名
+     * @param nRows テーブルの件数
+     * @param operation 計測対象の処理
+     */
+    private void measure(String strName, int nRows, Operation operation) throws IOException {
+        // 空回し
+        for (int nIndex = 0; nIndex < N_WARMUP; nIndex++) {
+            operation.prepare();
+            operation.run();
+        }
+
+        // 計測
+        long[] nElapsedNs = new long[N_ITERATIONS];
+        for (int nIndex = 0; nIndex < N_ITERATIONS; nIndex++) {
+            operation.prepare();
+            long nStart = System.nanoTime();
+            operation.run();
+            nElapsedNs[nIndex] = System.nanoTime() - nStart;
+        }
+        Arrays.sort(nElapsedNs);
+
+        mWriter.beginObject();
+        mWriter.name("operation").value(strName);
+        mWriter.name("rows").value(nRows);
+        mWriter.name("iterations").value(N_ITERATIONS);
+        mWriter.name("minNs").value(nElapsedNs[0]);
+        mWriter.name("medianNs").value(nElapsedNs[N_ITERATIONS / 2]);
+        mWriter.name("maxNs").value(nElapsedNs[N_ITERATIONS - 1]);
+        mWriter.endObject();
+
+        Log.i(STR_CLASS_NAME, strName + " rows=" + nRows + " median=" + nElapsedNs[N_ITERATIONS / 2] / 1000 + "us");
+    }
+
+    /**
+     * テスト用DBを空の状態で開き直す.
+     */
+    private void reopen() {
+        if (mDbHelper != null) {
+            mDbHelper.close();
+        }
+        mTestContext.deleteDatabase("todo");
+        mDbHelper = new TodoDbAdapter(mTestContext).open();
+    }
+
+    /**
+     * テスト用DBを閉じる（共有のDatabaseHelperも閉じ、次のopen()で開き直す）.
+     */
+    private void closeDb() {
+        if (mDbHelper != null) {
+            mDbHelper.close();
+            mDbHelper = null;
+        }
+    }
+
+    /**
+     * 計測用のTodoアイテムを生成する（半数が未完了）.
+     *
+     * @param nCount 件数
+     * @return Todoアイテム
+     */
+    private static List<TodoItem> createItems(int nCount) {
+        List<TodoItem> items = new ArrayList<TodoItem>(nCount);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            items.add(new TodoItem(
+                    "title" + nIndex,
+                    "body of todo item " + nIndex,
+                    String.format("2015/%02d/%02d", nIndex % 12 + 1, nIndex % 28 + 1),
+                    (nIndex % 2 == 0) ? TodoDbAdapter.STR_STATE_OPEN : TodoDbAdapter.STR_STATE_CLOSE));
+        }
+        return items;
+    }
+
+    /**
+     * PrimaryKeyを無作為に選ぶ.
+     *
+     * @param ids 選択元
+     * @param nCount 件数
+     * @return 選んだPrimaryKey
+     */
+    private long[] pickRandom(long[] ids, int nCount) {
+        long[] nPicked = new long[nCount];
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            nPicked[nIndex] = ids[mRandom.nextInt(ids.length)];
+        }
+        return nPicked;
+    }
+
+    /**
+     * インストルメンテーション引数でベンチマークが有効化されているかを判定.
+     *
+     * @return 有効な場合はtrue
+     */
+    private boolean isEnabled() {
+        if (!(getInstrumentation() instanceof InstrumentationTestRunner)) {
+            return false;
+        }
+        Bundle arguments = ((InstrumentationTestRunner) getInstrumentation()).getArguments();
+        return arguments != null && "true".equals(arguments.getString("benchmark"));
+    }
+}
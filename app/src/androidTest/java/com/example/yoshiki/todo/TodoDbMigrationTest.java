@@ -0,0 +1,156 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * v1のDBから最新バージョンへの移行処理のテスト.
+ * @author 清兼
+ */
+public class TodoDbMigrationTest extends AndroidTestCase {
+
+    /**
+     * v1のTABLE Create用構文定義（リリース済みのスキーマ）
+     */
+    private static final String DATABASE_CREATE_V1 =
+            "create table TodoItem (_id integer primary key autoincrement, "
+                    + "title text not null, body text not null, date text not null, state text not null);";
+
+    /**
+     * メンバ変数定義
+     */
+    private Context mTestContext;       // テスト用DBを参照するContext
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTestContext = new RenamingDelegatingContext(getContext(), "test_");
+        mTestContext.deleteDatabase("todo");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mTestContext.deleteDatabase("todo");
+        super.tearDown();
+    }
+
+    /**
+     * データが登録済みのv1のDBを移行しても、データが失われないことを確認.
+     */
+    public void testUpgradeKeepsData() {
+        // v1のDBを作成（バッチサイズを超える件数を登録）
+        SQLiteDatabase db = createV1Database();
+        db.beginTransaction();
+        try {
+            for (int nIndex = 0; nIndex < 1234; nIndex++) {
+                db.execSQL("INSERT INTO todoItem (title, body, date, state) VALUES (?, ?, ?, ?)",
+                        new Object[]{"title" + nIndex, "body" + nIndex, "2015/7/" + (nIndex % 28 + 1),
+                                (nIndex % 2 == 0) ? "open" : "close"});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+
+        // 最新バージョンとして開く
+        TodoDbAdapter adapter = new TodoDbAdapter(mTestContext);
+        adapter.open();
+        try {
+            Cursor cursor = adapter.fetchAllTodoItems();
+            try {
+                assertEquals(1234, cursor.getCount());
+                int nDate = cursor.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_DATE);
+                while (cursor.moveToNext()) {
+                    // 日付が"yyyy/MM/dd"形式に統一されている
+                    assertTrue(cursor.getString(nDate).matches("2015/07/[0-9]{2}"));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            cursor = adapter.fetchAllTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN);
+            try {
+                assertEquals(617, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            adapter.close();
+        }
+
+        // インデックスが作成されている
+        db = openDatabase();
+        try {
+            assertTrue(db.getVersion() > 1);
+            Cursor cursor = db.rawQuery(
+                    "SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'todoItem_state'", null);
+            try {
+                assertEquals(1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+
+            // 既存の完了済みTodoアイテムに完了日時が記録されている
+            assertEquals(617, DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM todoItem WHERE state = 'close' AND closed_at IS NOT NULL", null));
+
+            // 件数の集計が既存のTodoアイテムから作成されている
+            assertEquals(617, DatabaseUtils.longForQuery(db, "SELECT open FROM todoStats", null));
+            assertEquals(617, DatabaseUtils.longForQuery(db, "SELECT closed FROM todoStats", null));
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * 途中のバージョンで中断されたDBも、残りのステップから移行できることを確認.
+     */
+    public void testResumeFromIntermediateVersion() {
+        SQLiteDatabase db = createV1Database();
+        db.execSQL("CREATE INDEX todoItem_state ON todoItem (state)");
+        db.execSQL("INSERT INTO todoItem (title, body, date, state) VALUES ('t', 'b', '2015/1/2', 'open')");
+        db.setVersion(2);
+        db.close();
+
+        TodoDbAdapter adapter = new TodoDbAdapter(mTestContext);
+        adapter.open();
+        try {
+            Cursor cursor = adapter.fetchAllTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN);
+            try {
+                assertEquals(1, cursor.getCount());
+                assertEquals("2015/01/02",
+                        cursor.getString(cursor.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_DATE)));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * v1のスキーマでDBを作成する.
+     *
+     * @return DBインスタンス
+     */
+    private SQLiteDatabase createV1Database() {
+        SQLiteDatabase db = openDatabase();
+        db.execSQL(DATABASE_CREATE_V1);
+        db.setVersion(1);
+        return db;
+    }
+
+    /**
+     * テスト用のDBを開く.
+     *
+     * @return DBインスタンス
+     */
+    private SQLiteDatabase openDatabase() {
+        return mTestContext.openOrCreateDatabase("todo", Context.MODE_PRIVATE, null);
+    }
+}
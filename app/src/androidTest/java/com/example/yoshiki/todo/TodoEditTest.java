@@ -0,0 +1,133 @@
+package com.example.yoshiki.todo;
+
+import android.app.Instrumentation;
+import android.test.ActivityInstrumentationTestCase2;
+import android.widget.EditText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TodoEditのテスト.
+ * @author 清兼
+ */
+public class TodoEditTest extends ActivityInstrumentationTestCase2<TodoEdit> {
+
+    /**
+     * 書き込み完了を待つ最大時間（ミリ秒）
+     */
+    private static final long N_TIMEOUT_MS = 5000;
+
+    /**
+     * メンバ変数定義
+     */
+    private String mTitle;      // テストで作成するTodoアイテムのタイトル（他のTodoアイテムと区別する）
+
+    public TodoEditTest() {
+        super(TodoEdit.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTitle = "recreate " + System.nanoTime();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // 作成したTodoアイテムを削除
+        TodoRepository repository = TodoRepositoryFactory.create(getInstrumentation().getTargetContext()).open();
+        try {
+            List<TodoItem> items = findItems(repository);
+            long[] nPrimaryKeys = new long[items.size()];
+            for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+                nPrimaryKeys[nIndex] = items.get(nIndex).getPrimaryKey();
+            }
+            repository.deleteNote(nPrimaryKeys);
+        } finally {
+            repository.close();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * 新規作成で最初に入力した直後に画面が再生成されても、続く編集が同じTodoアイテムへ保存されることを確認.
+     */
+    public void testRecreateAfterFirstInput() throws Throwable {
+        Instrumentation instrumentation = getInstrumentation();
+        final TodoEdit activity = getActivity();
+
+        // 最初の入力の直後に再生成（新規作成の書き込みは完了を待たない）
+        Instrumentation.ActivityMonitor monitor = instrumentation.addMonitor(TodoEdit.class.getName(), null, false);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ((EditText) activity.findViewById(R.id.title)).setText(mTitle);
+                activity.recreate();
+            }
+        });
+        final TodoEdit recreated = (TodoEdit) instrumentation.waitForMonitorWithTimeout(monitor, N_TIMEOUT_MS);
+        instrumentation.removeMonitor(monitor);
+        assertNotNull(recreated);
+        assertNotSame(activity, recreated);
+        instrumentation.waitForIdleSync();
+
+        // 再生成後の編集を保存して閉じる
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ((EditText) recreated.findViewById(R.id.title)).setText(mTitle + " edited");
+                recreated.finish();
+            }
+        });
+
+        // 書き込みスレッドは依頼順に処理するため、編集が保存されていれば作成も完了している
+        TodoRepository repository = TodoRepositoryFactory.create(instrumentation.getTargetContext()).open();
+        try {
+            List<TodoItem> items = findItems(repository);
+            long nDeadline = System.currentTimeMillis() + N_TIMEOUT_MS;
+            while (!containsTitle(items, mTitle + " edited") && System.currentTimeMillis() < nDeadline) {
+                Thread.sleep(50);
+                items = findItems(repository);
+            }
+
+            // 再生成の前後で1件のみ
+            assertEquals(1, items.size());
+            assertEquals(mTitle + " edited", items.get(0).getTitle());
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * テストで作成したTodoアイテムを取得する.
+     *
+     * @param repository 保存先
+     * @return タイトルがmTitleで始まる未完了のTodoアイテム
+     */
+    private List<TodoItem> findItems(TodoRepository repository) {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (TodoItem item : repository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null)) {
+            if (item.getTitle() != null && item.getTitle().startsWith(mTitle)) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 指定したタイトルのTodoアイテムが含まれるかを判定する.
+     *
+     * @param items Todoアイテム
+     * @param strTitle タイトル
+     * @return 含まれる場合はtrue
+     */
+    private static boolean containsTitle(List<TodoItem> items, String strTitle) {
+        for (TodoItem item : items) {
+            if (strTitle.equals(item.getTitle())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
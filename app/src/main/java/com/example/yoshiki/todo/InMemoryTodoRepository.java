@@ -0,0 +1,386 @@
+package com.example.yoshiki.todo;
+
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * メモリ上にTodoアイテムを保持するTodoRepository.
+ * PrimaryKeyは昇順に採番されるため、PrimaryKeyの配列とTodoアイテムの配列を_id順に保持し、
+ * 登録は末尾への追加、検索は二分探索で行う（Long型へのボクシングを行わない）.
+ * 削除したTodoアイテムは、完全に削除するまで{@link TodoTombstones}に保持する.
+ * @author 清兼
+ */
+public class InMemoryTodoRepository implements TodoRepository {
+
+    /**
+     * 配列の初期サイズ
+     */
+    private static final int N_INITIAL_CAPACITY = 16;
+
+    /**
+     * メンバ変数定義
+     */
+    private long[] mKeys = new long[N_INITIAL_CAPACITY];            // PrimaryKey（昇順）
+    private TodoItem[] mItems = new TodoItem[N_INITIAL_CAPACITY];   // Todoアイテム（mKeysと同じ位置）
+    private int mSize;                                              // 保持件数
+    private long mLastKey;                                          // 最後に採番したPrimaryKey
+    private final TodoTombstones mTombstones = new TodoTombstones(); // 削除したTodoアイテム
+
+    @Override
+    public InMemoryTodoRepository open()
+    {
+        return this;
+    }
+
+    @Override
+    public void close()
+    {
+        // Nothing to do
+    }
+
+    @Override
+    public long createTodoItem(
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        long nPrimaryKey;
+        synchronized (this) {
+            nPrimaryKey = append(strTitle, strBody, strDate, strState);
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, new long[]{nPrimaryKey});
+        return nPrimaryKey;
+    }
+
+    @Override
+    public long[] createTodoItems(List<TodoItem> items)
+    {
+        long[] nPrimaryKeys = new long[items.size()];
+        synchronized (this) {
+            for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+                TodoItem item = items.get(nIndex);
+                nPrimaryKeys[nIndex] = append(item.getTitle(), item.getBody(), item.getDate(), item.getState());
+            }
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        return nPrimaryKeys;
+    }
+
+    @Override
+    public synchronized TodoItem fetchTodoItem(long nPrimaryKey)
+    {
+        int nIndex = indexOf(nPrimaryKey);
+        return (nIndex < 0) ? null : mItems[nIndex];
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItems(long[] nPrimaryKeys)
+    {
+        long[] nSorted = nPrimaryKeys.clone();
+        Arrays.sort(nSorted);
+
+        List<TodoItem> items = new ArrayList<TodoItem>(nSorted.length);
+        for (int nKey = 0; nKey < nSorted.length; nKey++) {
+            // 重複は除く
+            if (nKey > 0 && nSorted[nKey] == nSorted[nKey - 1]) {
+                continue;
+            }
+            int nIndex = indexOf(nSorted[nKey]);
+            if (nIndex >= 0) {
+                items.add(mItems[nIndex]);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public List<TodoItem> fetchListItems(long[] nPrimaryKeys)
+    {
+        // リスト表示用に内容を除く
+        List<TodoItem> items = fetchTodoItems(nPrimaryKeys);
+        for (int nIndex = 0; nIndex < items.size(); nIndex++) {
+            TodoItem item = items.get(nIndex);
+            items.set(nIndex, new TodoItem(
+                    item.getPrimaryKey(), item.getTitle(), null, item.getDate(), item.getState()));
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsByState(
+            String strState,
+            CancellationSignal cancellationSignal)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < mSize; nIndex++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            if (strState.equals(mItems[nIndex].getState())) {
+                items.add(mItems[nIndex]);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemPage(
+            String strState,
+            long nAfterKey,
+            int nPageSize,
+            CancellationSignal cancellationSignal)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>(nPageSize);
+
+        // 前ページ最後の_idの次から走査
+        int nIndex = indexOf(nAfterKey);
+        nIndex = (nIndex < 0) ? -(nIndex + 1) : nIndex + 1;
+        for (; nIndex < mSize && items.size() < nPageSize; nIndex++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            if (strState.equals(mItems[nIndex].getState())) {
+                items.add(mItems[nIndex]);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemPage(
+            String strState,
+            int nSortOrder,
+            TodoItem after,
+            int nPageSize,
+            CancellationSignal cancellationSignal)
+    {
+        // 並び順の索引は持たないため、全件を走査する
+        Comparator<TodoItem> comparator = TodoItem.getComparator(nSortOrder);
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < mSize; nIndex++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            TodoItem item = mItems[nIndex];
+            if (strState.equals(item.getState()) && (after == null || comparator.compare(item, after) > 0)) {
+                items.add(item);
+            }
+        }
+        Collections.sort(items, comparator);
+        return (items.size() > nPageSize) ? new ArrayList<TodoItem>(items.subList(0, nPageSize)) : items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsAfter(
+            long nAfterKey,
+            int nLimit)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>(Math.min(nLimit, mSize));
+
+        // 前回最後の_idの次から取得
+        int nIndex = indexOf(nAfterKey);
+        nIndex = (nIndex < 0) ? -(nIndex + 1) : nIndex + 1;
+        for (; nIndex < mSize && items.size() < nLimit; nIndex++) {
+            items.add(mItems[nIndex]);
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsByDueDate(
+            String strState,
+            String strFromDate,
+            int nLimit)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < mSize; nIndex++) {
+            TodoItem item = mItems[nIndex];
+            if (strState.equals(item.getState()) && item.getDate().compareTo(strFromDate) >= 0) {
+                items.add(item);
+            }
+        }
+        Collections.sort(items, TodoItem.DUE_DATE_ORDER);
+        return (items.size() > nLimit) ? new ArrayList<TodoItem>(items.subList(0, nLimit)) : items;
+    }
+
+    @Override
+    public boolean updateTodoItem(
+            long nPrimaryKey,
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        synchronized (this) {
+            int nIndex = indexOf(nPrimaryKey);
+            if (nIndex < 0) {
+                return false;
+            }
+
+            // nullの項目は元の値を引き継ぐ
+            TodoItem old = mItems[nIndex];
+            mItems[nIndex] = new TodoItem(
+                    nPrimaryKey,
+                    (strTitle != null) ? strTitle : old.getTitle(),
+                    (strBody  != null) ? strBody  : old.getBody(),
+                    (strDate  != null) ? strDate  : old.getDate(),
+                    (strState != null) ? strState : old.getState());
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, new long[]{nPrimaryKey});
+        return true;
+    }
+
+    @Override
+    public int updateTodoItemsState(long[] nPrimaryKeys, String strState)
+    {
+        int nUpdated = 0;
+        synchronized (this) {
+            for (long nPrimaryKey : nPrimaryKeys) {
+                int nIndex = indexOf(nPrimaryKey);
+                if (nIndex < 0 || strState.equals(mItems[nIndex].getState())) {
+                    continue;
+                }
+                TodoItem old = mItems[nIndex];
+                mItems[nIndex] = new TodoItem(nPrimaryKey, old.getTitle(), old.getBody(), old.getDate(), strState);
+                nUpdated++;
+            }
+        }
+
+        // 変更を通知
+        if (nUpdated > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, nPrimaryKeys);
+        }
+        return nUpdated;
+    }
+
+    @Override
+    public int deleteNote(long nPrimaryKey[])
+    {
+        int nDeleted = 0;
+        synchronized (this) {
+            long[] nSorted = nPrimaryKey.clone();
+            Arrays.sort(nSorted);
+
+            // 削除対象以外を前詰めする（1回の走査で削除）
+            long nNow = System.currentTimeMillis();
+            int nDst = 0;
+            for (int nSrc = 0; nSrc < mSize; nSrc++) {
+                if (Arrays.binarySearch(nSorted, mKeys[nSrc]) >= 0) {
+                    mTombstones.put(mItems[nSrc], nNow);
+                    nDeleted++;
+                    continue;
+                }
+                mKeys[nDst] = mKeys[nSrc];
+                mItems[nDst] = mItems[nSrc];
+                nDst++;
+            }
+            Arrays.fill(mItems, nDst, mSize, null);
+            mSize = nDst;
+        }
+
+        // 変更を通知
+        if (nDeleted > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_DELETE, nPrimaryKey);
+        }
+        return nDeleted;
+    }
+
+    @Override
+    public int undeleteTodoItems(long[] nPrimaryKeys)
+    {
+        int nUndeleted = 0;
+        synchronized (this) {
+            for (long nPrimaryKey : nPrimaryKeys) {
+                TodoItem item = mTombstones.remove(nPrimaryKey);
+                if (item != null) {
+                    insert(item);
+                    nUndeleted++;
+                }
+            }
+        }
+
+        // 変更を通知
+        if (nUndeleted > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        }
+        return nUndeleted;
+    }
+
+    @Override
+    public synchronized int purgeDeletedTodoItems(long nDeletedBefore, int nBatchSize)
+    {
+        return mTombstones.purge(nDeletedBefore, nBatchSize);
+    }
+
+    /**
+     * PrimaryKeyを採番し、Todoアイテムを末尾へ追加する.
+     *
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody  Todoアイテムの内容
+     * @param strDate  Todo実施期限
+     * @param strState Todo状態
+     * @return 採番したPrimaryKey
+     */
+    private long append(
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        // 配列を拡張
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mItems = Arrays.copyOf(mItems, mSize * 2);
+        }
+
+        long nPrimaryKey = ++mLastKey;
+        mKeys[mSize] = nPrimaryKey;
+        mItems[mSize] = new TodoItem(nPrimaryKey, strTitle, strBody, strDate, strState);
+        mSize++;
+        return nPrimaryKey;
+    }
+
+    /**
+     * 採番済みのTodoアイテムを、PrimaryKeyの順序を保つ位置へ挿入する.
+     *
+     * @param item Todoアイテム
+     */
+    private void insert(TodoItem item)
+    {
+        // 配列を拡張
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mItems = Arrays.copyOf(mItems, mSize * 2);
+        }
+
+        int nIndex = -(indexOf(item.getPrimaryKey()) + 1);
+        System.arraycopy(mKeys, nIndex, mKeys, nIndex + 1, mSize - nIndex);
+        System.arraycopy(mItems, nIndex, mItems, nIndex + 1, mSize - nIndex);
+        mKeys[nIndex] = item.getPrimaryKey();
+        mItems[nIndex] = item;
+        mSize++;
+    }
+
+    /**
+     * PrimaryKeyの位置を二分探索する.
+     *
+     * @param nPrimaryKey PrimaryKey
+     * @return 位置。存在しない場合は(-(挿入位置) - 1)
+     */
+    private int indexOf(long nPrimaryKey)
+    {
+        return Arrays.binarySearch(mKeys, 0, mSize, nPrimaryKey);
+    }
+}
@@ -0,0 +1,932 @@
+package com.example.yoshiki.todo;
+
+import android.os.CancellationSignal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * 追記専用のレコードログにTodoアイテムを保存するTodoRepository.
+ * ログファイルはメモリマップして読み書きし、登録・更新・削除はいずれも末尾へのレコード追記のみで行う.
+ * 起動時にログを先頭から読み直して_id→レコード位置の索引を作り、
+ * 古くなったレコードが一定量を超えるとバックグラウンドで有効なレコードのみのログへ詰め直す.
+ *
+ * ファイル形式：
+ *  ヘッダ    int マジックナンバー, int 形式バージョン, long 最後に採番した_id
+ *  レコード  int レコード長, int CRC32, byte 種別, long _id, 登録・更新の場合は文字列×4（int バイト長 + UTF-8）
+ *  レコード長が0、またはCRC32が一致しない位置をログの終端とする.
+ *
+ * 削除は削除レコードを追記して確定し、元に戻す場合は削除前の内容を同じ_idで登録し直す.
+ * 削除前の内容は{@link TodoTombstones}でメモリ上にのみ保持するため、元に戻せるのはプロセスの終了までとなる.
+ *
+ * 書き込みはページキャッシュへの反映までのため、アプリが異常終了してもデータは残るが、
+ * 端末の電源断では{@link #sync()}以降の書き込みが失われることがある.
+ * @author 清兼
+ */
+public class LogTodoRepository implements TodoRepository {
+
+    /**
+     * ファイル形式定義
+     */
+    private static final int N_MAGIC            = 0x546f646f;   // "Todo"
+    private static final int N_FORMAT_VERSION   = 1;
+    private static final int N_HEADER_SIZE      = 16;           // ヘッダ長
+    private static final int N_OFFSET_LAST_KEY  = 8;            // ヘッダ内の最後に採番した_idの位置
+    private static final int N_RECORD_HEADER    = 4 + 4 + 1 + 8;    // レコード長, CRC32, 種別, _id
+    private static final byte N_TYPE_PUT        = 1;            // 登録・更新
+    private static final byte N_TYPE_DELETE     = 2;            // 削除
+
+    /**
+     * マップサイズ定義
+     */
+    private static final int N_INITIAL_MAP_SIZE = 64 * 1024;    // 初期サイズ
+
+    /**
+     * 詰め直しの開始条件（ログ長が閾値を超え、かつ無効なレコードが半分を超えた場合）
+     */
+    private static final int N_COMPACT_MIN_SIZE = 256 * 1024;
+
+    /**
+     * 文字コード
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 詰め直し用のバックグラウンドスレッド（全インスタンスで共有）
+     */
+    private static final ExecutorService sCompactExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LogTodoRepository-compact");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * メンバ変数定義
+     */
+    private final File mFile;               // ログファイル
+    private RandomAccessFile mRaf;          // ログファイルのハンドル
+    private MappedByteBuffer mBuffer;       // ログファイルのマップ
+    private OffsetIndex mIndex;             // _id→最新の登録・更新レコード位置
+    private int mTail;                      // ログの終端位置（次の追記位置）
+    private int mLiveBytes;                 // 有効なレコードの合計長
+    private long mLastKey;                  // 最後に採番した_id
+    private int mOpenCount;                 // open()の呼び出し回数（0になったら閉じる）
+    private Future<?> mCompaction;          // 実行中の詰め直し
+    private final TodoTombstones mTombstones = new TodoTombstones();    // 削除したTodoアイテム（元に戻す用）
+
+    /**
+     * コンストラクタ
+     *
+     * @param file ログファイル（存在しない場合はopen()で作成する）
+     */
+    public LogTodoRepository(File file)
+    {
+        this.mFile = file;
+    }
+
+    /**
+     * ログファイルを開き、索引を作成する.
+     * 複数の画面から共有できるよう、既に開いている場合は呼び出し回数のみ数える.
+     *
+     * @return 本インスタンス
+     * @throws IllegalStateException ログファイルを開けない場合
+     */
+    @Override
+    public synchronized LogTodoRepository open()
+    {
+        if (mOpenCount++ > 0) {
+            return this;
+        }
+
+        try {
+            mRaf = new RandomAccessFile(mFile, "rw");
+            boolean bNew = mRaf.length() < N_HEADER_SIZE;
+            map(Math.max(N_INITIAL_MAP_SIZE, (int) mRaf.length()));
+
+            if (bNew) {
+                // ヘッダを書き込む
+                mBuffer.putInt(0, N_MAGIC);
+                mBuffer.putInt(4, N_FORMAT_VERSION);
+                mBuffer.putLong(N_OFFSET_LAST_KEY, 0);
+            } else if (mBuffer.getInt(0) != N_MAGIC || mBuffer.getInt(4) != N_FORMAT_VERSION) {
+                throw new IOException("ログファイルの形式が不正: " + mFile);
+            }
+
+            // ログを先頭から読み直して索引を作成
+            replay();
+        } catch (IOException e) {
+            mOpenCount = 0;
+            closeFile();
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * ログファイルを閉じる.
+     * open()と同じ回数呼ばれた時点で、書き込みを反映して閉じる.
+     */
+    @Override
+    public void close()
+    {
+        Future<?> compaction;
+        synchronized (this) {
+            if (mOpenCount == 0 || --mOpenCount > 0) {
+                return;
+            }
+            compaction = mCompaction;
+        }
+
+        // 実行中の詰め直しの完了を待つ
+        if (compaction != null) {
+            try {
+                compaction.get();
+            } catch (Exception e) {
+                // 詰め直しに失敗しても元のログは有効
+            }
+        }
+
+        synchronized (this) {
+            if (mOpenCount == 0) {
+                sync();
+                closeFile();
+            }
+        }
+    }
+
+    /**
+     * ここまでの書き込みをストレージへ反映する.
+     */
+    public synchronized void sync()
+    {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    @Override
+    public long createTodoItem(
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        long nPrimaryKey;
+        synchronized (this) {
+            nPrimaryKey = ++mLastKey;
+            mBuffer.putLong(N_OFFSET_LAST_KEY, mLastKey);
+            appendPut(nPrimaryKey, strTitle, strBody, strDate, strState);
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, new long[]{nPrimaryKey});
+        return nPrimaryKey;
+    }
+
+    @Override
+    public long[] createTodoItems(List<TodoItem> items)
+    {
+        long[] nPrimaryKeys = new long[items.size()];
+        synchronized (this) {
+            for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+                TodoItem item = items.get(nIndex);
+                nPrimaryKeys[nIndex] = ++mLastKey;
+                appendPut(mLastKey, item.getTitle(), item.getBody(), item.getDate(), item.getState());
+            }
+            mBuffer.putLong(N_OFFSET_LAST_KEY, mLastKey);
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        return nPrimaryKeys;
+    }
+
+    @Override
+    public synchronized TodoItem fetchTodoItem(long nPrimaryKey)
+    {
+        int nOffset = mIndex.get(nPrimaryKey);
+        return (nOffset < 0) ? null : readItem(nOffset);
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItems(long[] nPrimaryKeys)
+    {
+        long[] nSorted = nPrimaryKeys.clone();
+        Arrays.sort(nSorted);
+
+        List<TodoItem> items = new ArrayList<TodoItem>(nSorted.length);
+        for (int nKey = 0; nKey < nSorted.length; nKey++) {
+            // 重複は除く
+            if (nKey > 0 && nSorted[nKey] == nSorted[nKey - 1]) {
+                continue;
+            }
+            int nOffset = mIndex.get(nSorted[nKey]);
+            if (nOffset >= 0) {
+                items.add(readItem(nOffset));
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public List<TodoItem> fetchListItems(long[] nPrimaryKeys)
+    {
+        // リスト表示用に内容を除く
+        List<TodoItem> items = fetchTodoItems(nPrimaryKeys);
+        for (int nIndex = 0; nIndex < items.size(); nIndex++) {
+            TodoItem item = items.get(nIndex);
+            items.set(nIndex, new TodoItem(
+                    item.getPrimaryKey(), item.getTitle(), null, item.getDate(), item.getState()));
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsByState(
+            String strState,
+            CancellationSignal cancellationSignal)
+    {
+        return fetchTodoItemPage(strState, 0, Integer.MAX_VALUE, cancellationSignal);
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemPage(
+            String strState,
+            long nAfterKey,
+            int nPageSize,
+            CancellationSignal cancellationSignal)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>(Math.min(nPageSize, 64));
+        for (int nIndex = mIndex.higherIndex(nAfterKey); nIndex < mIndex.size() && items.size() < nPageSize; nIndex++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            TodoItem item = readItem(mIndex.offsetAt(nIndex));
+            if (strState.equals(item.getState())) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemPage(
+            String strState,
+            int nSortOrder,
+            TodoItem after,
+            int nPageSize,
+            CancellationSignal cancellationSignal)
+    {
+        // 並び順の索引は持たないため、全件を走査する
+        Comparator<TodoItem> comparator = TodoItem.getComparator(nSortOrder);
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < mIndex.size(); nIndex++) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            TodoItem item = readItem(mIndex.offsetAt(nIndex));
+            if (strState.equals(item.getState()) && (after == null || comparator.compare(item, after) > 0)) {
+                items.add(item);
+            }
+        }
+        Collections.sort(items, comparator);
+        return (items.size() > nPageSize) ? new ArrayList<TodoItem>(items.subList(0, nPageSize)) : items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsAfter(
+            long nAfterKey,
+            int nLimit)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>(Math.min(nLimit, 64));
+        for (int nIndex = mIndex.higherIndex(nAfterKey); nIndex < mIndex.size() && items.size() < nLimit; nIndex++) {
+            items.add(readItem(mIndex.offsetAt(nIndex)));
+        }
+        return items;
+    }
+
+    @Override
+    public synchronized List<TodoItem> fetchTodoItemsByDueDate(
+            String strState,
+            String strFromDate,
+            int nLimit)
+    {
+        // 期限の索引は持たないため、全件を走査する
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < mIndex.size(); nIndex++) {
+            TodoItem item = readItem(mIndex.offsetAt(nIndex));
+            if (strState.equals(item.getState()) && item.getDate().compareTo(strFromDate) >= 0) {
+                items.add(item);
+            }
+        }
+        Collections.sort(items, TodoItem.DUE_DATE_ORDER);
+        return (items.size() > nLimit) ? new ArrayList<TodoItem>(items.subList(0, nLimit)) : items;
+    }
+
+    @Override
+    public boolean updateTodoItem(
+            long nPrimaryKey,
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        synchronized (this) {
+            int nOffset = mIndex.get(nPrimaryKey);
+            if (nOffset < 0) {
+                return false;
+            }
+
+            // nullの項目は元の値を引き継ぎ、全項目を追記する
+            TodoItem old = readItem(nOffset);
+            appendPut(
+                    nPrimaryKey,
+                    (strTitle != null) ? strTitle : old.getTitle(),
+                    (strBody  != null) ? strBody  : old.getBody(),
+                    (strDate  != null) ? strDate  : old.getDate(),
+                    (strState != null) ? strState : old.getState());
+        }
+
+        // 変更を通知
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, new long[]{nPrimaryKey});
+        return true;
+    }
+
+    @Override
+    public int updateTodoItemsState(long[] nPrimaryKeys, String strState)
+    {
+        int nUpdated = 0;
+        synchronized (this) {
+            for (long nPrimaryKey : nPrimaryKeys) {
+                int nOffset = mIndex.get(nPrimaryKey);
+                if (nOffset < 0) {
+                    continue;
+                }
+                TodoItem old = readItem(nOffset);
+                if (strState.equals(old.getState())) {
+                    continue;
+                }
+                appendPut(nPrimaryKey, old.getTitle(), old.getBody(), old.getDate(), strState);
+                nUpdated++;
+            }
+        }
+
+        // 変更を通知
+        if (nUpdated > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, nPrimaryKeys);
+        }
+        return nUpdated;
+    }
+
+    @Override
+    public int deleteNote(long nPrimaryKey[])
+    {
+        int nDeleted = 0;
+        synchronized (this) {
+            long nNow = System.currentTimeMillis();
+            for (long nKey : nPrimaryKey) {
+                int nOffset = mIndex.get(nKey);
+                if (nOffset < 0) {
+                    continue;
+                }
+                mTombstones.put(readItem(nOffset), nNow);
+                appendDelete(nKey);
+                nDeleted++;
+            }
+        }
+
+        // 変更を通知
+        if (nDeleted > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_DELETE, nPrimaryKey);
+        }
+        return nDeleted;
+    }
+
+    @Override
+    public int undeleteTodoItems(long[] nPrimaryKeys)
+    {
+        int nUndeleted = 0;
+        synchronized (this) {
+            for (long nPrimaryKey : nPrimaryKeys) {
+                TodoItem item = mTombstones.remove(nPrimaryKey);
+                if (item == null) {
+                    continue;
+                }
+                appendPut(nPrimaryKey, item.getTitle(), item.getBody(), item.getDate(), item.getState());
+                nUndeleted++;
+            }
+        }
+
+        // 変更を通知
+        if (nUndeleted > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        }
+        return nUndeleted;
+    }
+
+    /**
+     * 削除したTodoアイテムを元に戻せないようにする.
+     * ログ上は削除時に確定済みのため、メモリ上の削除前の内容を破棄するのみ.
+     */
+    @Override
+    public synchronized int purgeDeletedTodoItems(long nDeletedBefore, int nBatchSize)
+    {
+        return mTombstones.purge(nDeletedBefore, nBatchSize);
+    }
+
+    /**
+     * 詰め直しを実行中であれば、完了を待つ（テスト用）.
+     */
+    void awaitCompaction() throws Exception
+    {
+        Future<?> compaction;
+        synchronized (this) {
+            compaction = mCompaction;
+        }
+        if (compaction != null) {
+            compaction.get();
+        }
+    }
+
+    /**
+     * ログファイルの長さ（有効なレコードの終端位置）を取得（テスト用）.
+     *
+     * @return ログの終端位置
+     */
+    synchronized int getLogSize()
+    {
+        return mTail;
+    }
+
+    /**
+     * 登録・更新レコードを追記し、索引を更新する.
+     */
+    private void appendPut(
+            long nPrimaryKey,
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        byte[][] values = {
+                strTitle.getBytes(UTF_8), strBody.getBytes(UTF_8), strDate.getBytes(UTF_8), strState.getBytes(UTF_8)};
+        int nLength = N_RECORD_HEADER;
+        for (byte[] value : values) {
+            nLength += 4 + value.length;
+        }
+
+        int nOffset = beginRecord(nLength, N_TYPE_PUT, nPrimaryKey);
+        for (byte[] value : values) {
+            mBuffer.putInt(value.length);
+            mBuffer.put(value);
+        }
+        endRecord(nOffset, nLength);
+
+        // 以前のレコードは無効になる
+        int nOldOffset = mIndex.put(nPrimaryKey, nOffset);
+        if (nOldOffset >= 0) {
+            mLiveBytes -= mBuffer.getInt(nOldOffset);
+        }
+        mLiveBytes += nLength;
+        maybeCompact();
+    }
+
+    /**
+     * 削除レコードを追記し、索引から取り除く.
+     *
+     * @param nPrimaryKey 削除するPrimaryKey
+     */
+    private void appendDelete(long nPrimaryKey)
+    {
+        int nOffset = beginRecord(N_RECORD_HEADER, N_TYPE_DELETE, nPrimaryKey);
+        endRecord(nOffset, N_RECORD_HEADER);
+
+        // 削除レコード自体は、詰め直しで以前のレコードと共に不要になる
+        int nOldOffset = mIndex.remove(nPrimaryKey);
+        mLiveBytes -= mBuffer.getInt(nOldOffset);
+        maybeCompact();
+    }
+
+    /**
+     * レコードの書き込みを開始する（レコード長・CRC32は終了時に書き込む）.
+     *
+     * @return レコードの位置
+     */
+    private int beginRecord(int nLength, byte nType, long nPrimaryKey)
+    {
+        // 終端マーカー（レコード長0）の分も含めて領域を確保
+        ensureCapacity(mTail + nLength + 4);
+
+        int nOffset = mTail;
+        mBuffer.position(nOffset + 8);
+        mBuffer.put(nType);
+        mBuffer.putLong(nPrimaryKey);
+        return nOffset;
+    }
+
+    /**
+     * レコードの書き込みを完了する.
+     * 本体を書き込んだ後にレコード長を書き込むことで、書き込み途中のレコードを終端として扱う.
+     */
+    private void endRecord(int nOffset, int nLength)
+    {
+        mBuffer.putInt(nOffset + 4, crc(mBuffer, nOffset, nLength));
+        mBuffer.putInt(nOffset + nLength, 0);
+        mBuffer.putInt(nOffset, nLength);
+        mTail = nOffset + nLength;
+    }
+
+    /**
+     * ログを先頭から読み直し、索引・終端位置・有効なレコード長を求める.
+     */
+    private void replay()
+    {
+        mIndex = new OffsetIndex();
+        mLiveBytes = 0;
+        mLastKey = mBuffer.getLong(N_OFFSET_LAST_KEY);
+
+        int nOffset = N_HEADER_SIZE;
+        while (true) {
+            int nLength = validRecordLength(mBuffer, nOffset);
+            if (nLength == 0) {
+                break;
+            }
+
+            long nPrimaryKey = mBuffer.getLong(nOffset + 9);
+            int nOldOffset = (mBuffer.get(nOffset + 8) == N_TYPE_PUT)
+                    ? mIndex.put(nPrimaryKey, nOffset) : mIndex.remove(nPrimaryKey);
+            if (nOldOffset >= 0) {
+                mLiveBytes -= mBuffer.getInt(nOldOffset);
+            }
+            if (mBuffer.get(nOffset + 8) == N_TYPE_PUT) {
+                mLiveBytes += nLength;
+            }
+            mLastKey = Math.max(mLastKey, nPrimaryKey);
+            nOffset += nLength;
+        }
+        mTail = nOffset;
+
+        // 書き込み途中で終了していた場合に備え、終端を明示する
+        ensureCapacity(mTail + 4);
+        mBuffer.putInt(mTail, 0);
+    }
+
+    /**
+     * 指定位置のレコードが有効であればレコード長を返す.
+     *
+     * @return レコード長。終端または不正なレコードの場合は0
+     */
+    private static int validRecordLength(ByteBuffer buffer, int nOffset)
+    {
+        if (nOffset + 4 > buffer.capacity()) {
+            return 0;
+        }
+        int nLength = buffer.getInt(nOffset);
+        if (nLength < N_RECORD_HEADER || nOffset + nLength > buffer.capacity()) {
+            return 0;
+        }
+        return (buffer.getInt(nOffset + 4) == crc(buffer, nOffset, nLength)) ? nLength : 0;
+    }
+
+    /**
+     * レコードのCRC32（レコード長・CRC32自体を除く）を求める.
+     */
+    private static int crc(ByteBuffer buffer, int nOffset, int nLength)
+    {
+        CRC32 crc = new CRC32();
+        for (int nIndex = nOffset + 8; nIndex < nOffset + nLength; nIndex++) {
+            crc.update(buffer.get(nIndex));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 指定位置の登録・更新レコードからTodoアイテムを生成する.
+     */
+    private TodoItem readItem(int nOffset)
+    {
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.position(nOffset + 9);
+        long nPrimaryKey = buffer.getLong();
+        return new TodoItem(nPrimaryKey, readString(buffer), readString(buffer), readString(buffer), readString(buffer));
+    }
+
+    /**
+     * 現在位置の文字列を読み込む.
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        int nLength = buffer.getInt();
+        byte[] bytes = new byte[nLength];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * 指定サイズまで書き込めるよう、必要に応じてファイルを拡張してマップし直す.
+     */
+    private void ensureCapacity(int nRequired)
+    {
+        if (nRequired <= mBuffer.capacity()) {
+            return;
+        }
+        int nSize = mBuffer.capacity();
+        while (nSize < nRequired) {
+            nSize *= 2;
+        }
+        try {
+            map(nSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * ログファイルを指定サイズでマップする.
+     */
+    private void map(int nSize) throws IOException
+    {
+        mBuffer = mRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, nSize);
+    }
+
+    /**
+     * ログファイルを閉じる.
+     */
+    private void closeFile()
+    {
+        mBuffer = null;
+        mIndex = null;
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+            mRaf = null;
+        }
+    }
+
+    /**
+     * 無効なレコードが一定量を超えた場合に、バックグラウンドで詰め直しを開始する.
+     */
+    private void maybeCompact()
+    {
+        int nGarbage = mTail - N_HEADER_SIZE - mLiveBytes;
+        if (mTail < N_COMPACT_MIN_SIZE || nGarbage < mLiveBytes || mCompaction != null) {
+            return;
+        }
+        mCompaction = sCompactExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    // 詰め直しに失敗しても元のログは有効
+                } finally {
+                    synchronized (LogTodoRepository.this) {
+                        mCompaction = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 有効なレコードのみを新しいログへ書き出し、元のログと置き換える.
+     * 大半の複写は書き込みを止めずに行い、その間に追記されたレコードのみを最後に排他して複写する.
+     */
+    private void compact() throws IOException
+    {
+        File tmpFile = new File(mFile.getPath() + ".compact");
+        RandomAccessFile tmpRaf = new RandomAccessFile(tmpFile, "rw");
+        try {
+            tmpRaf.setLength(0);
+            FileChannel out = tmpRaf.getChannel();
+
+            // 索引と終端位置を取得（レコードは追記のみのため、以降も内容は変わらない）
+            ByteBuffer src;
+            OffsetIndex snapshot;
+            int nSnapshotTail;
+            long nLastKey;
+            synchronized (this) {
+                if (mBuffer == null) {
+                    return;
+                }
+                src = mBuffer.duplicate();
+                snapshot = mIndex.copy();
+                nSnapshotTail = mTail;
+                nLastKey = mLastKey;
+            }
+
+            // ヘッダと有効なレコードを複写し、新しい索引を作る
+            ByteBuffer header = ByteBuffer.allocate(N_HEADER_SIZE);
+            header.putInt(N_MAGIC).putInt(N_FORMAT_VERSION).putLong(nLastKey);
+            header.flip();
+            out.write(header, 0);
+            long nPosition = N_HEADER_SIZE;
+            OffsetIndex index = new OffsetIndex();
+            for (int nIndex = 0; nIndex < snapshot.size(); nIndex++) {
+                int nOffset = snapshot.offsetAt(nIndex);
+                index.put(snapshot.keyAt(nIndex), (int) nPosition);
+                nPosition += copyRecord(src, nOffset, out, nPosition);
+            }
+
+            synchronized (this) {
+                if (mBuffer == null) {
+                    return;
+                }
+
+                // 複写中に追記されたレコードをそのまま複写し、索引へ反映
+                src = mBuffer.duplicate();
+                int nOffset = nSnapshotTail;
+                while (nOffset < mTail) {
+                    long nPrimaryKey = src.getLong(nOffset + 9);
+                    if (src.get(nOffset + 8) == N_TYPE_PUT) {
+                        index.put(nPrimaryKey, (int) nPosition);
+                    } else {
+                        index.remove(nPrimaryKey);
+                    }
+                    int nLength = copyRecord(src, nOffset, out, nPosition);
+                    nPosition += nLength;
+                    nOffset += nLength;
+                }
+
+                // 採番済みの_idを引き継ぐ（削除済みの_idを再利用しない）
+                ByteBuffer lastKey = ByteBuffer.allocate(8);
+                lastKey.putLong(mLastKey);
+                lastKey.flip();
+                out.write(lastKey, N_OFFSET_LAST_KEY);
+                out.force(true);
+
+                // 新しいログをマップしてから置き換える（開いたファイルは名前が変わっても同じファイルを指す）.
+                // 置き換えまでに失敗した場合は、一時ファイルを削除して元のログをそのまま使い続ける
+                MappedByteBuffer buffer = out.map(
+                        FileChannel.MapMode.READ_WRITE, 0, Math.max(N_INITIAL_MAP_SIZE, (int) nPosition + 4));
+                buffer.putInt((int) nPosition, 0);
+                if (!tmpFile.renameTo(mFile)) {
+                    throw new IOException("ログファイルの置き換えに失敗: " + mFile);
+                }
+                RandomAccessFile oldRaf = mRaf;
+                mRaf = tmpRaf;
+                tmpRaf = null;
+                mBuffer = buffer;
+                mIndex = index;
+                mTail = (int) nPosition;
+
+                // 有効なレコードは索引が指す登録・更新レコードのみ（複写した削除レコード、上書きされたレコードを含めない）
+                mLiveBytes = 0;
+                for (int nIndex = 0; nIndex < index.size(); nIndex++) {
+                    mLiveBytes += buffer.getInt(index.offsetAt(nIndex));
+                }
+
+                try {
+                    oldRaf.close();
+                } catch (IOException e) {
+                    // 置き換え済みのため無視する
+                }
+            }
+        } finally {
+            if (tmpRaf != null) {
+                tmpRaf.close();
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * レコードを1件そのまま複写する.
+     *
+     * @return 複写したレコード長
+     */
+    private static int copyRecord(ByteBuffer src, int nOffset, FileChannel out, long nPosition) throws IOException
+    {
+        int nLength = src.getInt(nOffset);
+        ByteBuffer record = src.duplicate();
+        record.limit(nOffset + nLength);
+        record.position(nOffset);
+        while (record.hasRemaining()) {
+            nPosition += out.write(record, nPosition);
+        }
+        return nLength;
+    }
+
+    /**
+     * _id→レコード位置の索引.
+     * _idの昇順に並べた配列で保持し、検索は二分探索、_idの採番順の追加は末尾への追加で行う.
+     */
+    private static class OffsetIndex {
+        private long[] mKeys = new long[16];        // _id（昇順）
+        private int[] mOffsets = new int[16];       // レコード位置
+        private int mSize;                          // 件数
+
+        int size()
+        {
+            return mSize;
+        }
+
+        long keyAt(int nIndex)
+        {
+            return mKeys[nIndex];
+        }
+
+        int offsetAt(int nIndex)
+        {
+            return mOffsets[nIndex];
+        }
+
+        /**
+         * @return レコード位置。存在しない場合は-1
+         */
+        int get(long nKey)
+        {
+            int nIndex = Arrays.binarySearch(mKeys, 0, mSize, nKey);
+            return (nIndex < 0) ? -1 : mOffsets[nIndex];
+        }
+
+        /**
+         * 指定した_idより大きい最初の位置を返す.
+         */
+        int higherIndex(long nKey)
+        {
+            int nIndex = Arrays.binarySearch(mKeys, 0, mSize, nKey);
+            return (nIndex < 0) ? -(nIndex + 1) : nIndex + 1;
+        }
+
+        /**
+         * @return 以前のレコード位置。存在しなかった場合は-1
+         */
+        int put(long nKey, int nOffset)
+        {
+            // 採番順の追加
+            if (mSize == 0 || mKeys[mSize - 1] < nKey) {
+                insertAt(mSize, nKey, nOffset);
+                return -1;
+            }
+
+            int nIndex = Arrays.binarySearch(mKeys, 0, mSize, nKey);
+            if (nIndex >= 0) {
+                int nOldOffset = mOffsets[nIndex];
+                mOffsets[nIndex] = nOffset;
+                return nOldOffset;
+            }
+            insertAt(-(nIndex + 1), nKey, nOffset);
+            return -1;
+        }
+
+        /**
+         * @return 以前のレコード位置。存在しなかった場合は-1
+         */
+        int remove(long nKey)
+        {
+            int nIndex = Arrays.binarySearch(mKeys, 0, mSize, nKey);
+            if (nIndex < 0) {
+                return -1;
+            }
+            int nOldOffset = mOffsets[nIndex];
+            System.arraycopy(mKeys, nIndex + 1, mKeys, nIndex, mSize - nIndex - 1);
+            System.arraycopy(mOffsets, nIndex + 1, mOffsets, nIndex, mSize - nIndex - 1);
+            mSize--;
+            return nOldOffset;
+        }
+
+        OffsetIndex copy()
+        {
+            OffsetIndex index = new OffsetIndex();
+            index.mKeys = Arrays.copyOf(mKeys, Math.max(mSize, 16));
+            index.mOffsets = Arrays.copyOf(mOffsets, Math.max(mSize, 16));
+            index.mSize = mSize;
+            return index;
+        }
+
+        private void insertAt(int nIndex, long nKey, int nOffset)
+        {
+            if (mSize == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                mOffsets = Arrays.copyOf(mOffsets, mSize * 2);
+            }
+            System.arraycopy(mKeys, nIndex, mKeys, nIndex + 1, mSize - nIndex);
+            System.arraycopy(mOffsets, nIndex, mOffsets, nIndex + 1, mSize - nIndex);
+            mKeys[nIndex] = nKey;
+            mOffsets[nIndex] = nOffset;
+            mSize++;
+        }
+    }
+}
@@ -2,13 +2,20 @@ package com.example.yoshiki.todo;
 
 import android.app.ListActivity;
 import android.content.Intent;
-import android.database.Cursor;
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.OperationCanceledException;
+import android.util.Log;
 import android.util.SparseBooleanArray;
 import android.view.ActionMode;
 import android.view.ContextMenu;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.widget.AbsListView;
@@ -16,8 +23,25 @@ import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListAdapter;
 import android.widget.ListView;
-import android.widget.SimpleCursorAdapter;
 import android.widget.AdapterView.AdapterContextMenuInfo;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * TodoAppのメインクラス.本クラスから各クラスへ処理を流していく.
@@ -25,17 +49,95 @@ import android.widget.AdapterView.AdapterContextMenuInfo;
  */
 public class TodoApp extends ListActivity {
 
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoApp";
+
     /**
      * メニューボタンのID定義
      */
     private static final int N_INSERT_ID = Menu.FIRST;        // Todoアイテム追加
     private static final int N_DELETE_ID = Menu.FIRST + 1;    // Todoアイテム削除
+    private static final int N_EXPORT_ID = Menu.FIRST + 2;    // エクスポート
+    private static final int N_IMPORT_ID = Menu.FIRST + 3;    // インポート
+    private static final int N_UNDO_ID   = Menu.FIRST + 4;    // 削除を元に戻す
+    private static final int N_SORT_ID   = Menu.FIRST + 5;    // 並べ替え
+    private static final int N_SORT_CREATED_ID  = Menu.FIRST + 6;   // 登録順（以降、TodoItem.N_SORT_*の順に連番）
+    private static final int N_SORT_DUE_DATE_ID = Menu.FIRST + 7;   // 期限順
+    private static final int N_SORT_TITLE_ID    = Menu.FIRST + 8;   // タイトル順
+    private static final int N_STATE_ID         = Menu.FIRST + 9;   // 表示する状態
+    private static final int N_STATE_OPEN_ID    = Menu.FIRST + 10;  // 未完了
+    private static final int N_STATE_CLOSE_ID   = Menu.FIRST + 11;  // 完了済み
+
+    /**
+     * 並べ替え・表示する状態のメニューのグループ識別子
+     */
+    private static final int N_SORT_GROUP_ID  = 1;
+    private static final int N_STATE_GROUP_ID = 2;
+
+    /**
+     * 並び順・表示する状態の保存キー
+     */
+    private static final String STR_PREF_SORT_ORDER = "sort_order";
+    private static final String STR_PREF_LIST_STATE = "list_state";
+
+    /**
+     * エクスポート・インポートのファイル名（拡張子は形式による）
+     */
+    private static final String STR_TRANSFER_FILE_NAME = "todo.";
+
+    /**
+     * リスト表示のページング定義
+     */
+    private static final int N_PAGE_SIZE      = 50;     // 1回に読み込むTodoアイテム数
+    private static final int N_PAGE_THRESHOLD = 10;     // 末尾から何件手前で次のページを読み込むか
+
+    /**
+     * リストのスナップショット定義
+     */
+    private static final String STR_SNAPSHOT_FILE_NAME = "todo_list.snapshot";    // ファイル名
+    private static final long N_SNAPSHOT_DELAY_MS = 500;    // 変更から保存までの待ち時間（連続した変更は1回にまとめる）
 
     /**
      * メンバ変数定義
      */
-    private TodoDbAdapter mDbHelper;
-    private Cursor mTodoCursor;
+    private TodoRepository mDbHelper;                   // Todoアイテムの保存先
+    private TodoListAdapter mTodoItems;                 // リスト表示用のアダプタ
+    private int mSortOrder;                             // リストの並び順（TodoItem.N_SORT_*）
+    private String mListState;                          // リストに表示する状態（未完了・完了済み）
+    private ExecutorService mDbExecutor;                // DBアクセス用のバックグラウンドスレッド
+    private final Handler mHandler = new Handler();     // UIスレッドへの通知用
+    private Future<?> mLoadFuture;                      // 実行中の読み込み処理
+    private CancellationSignal mLoadSignal;             // 実行中の読み込みの中断用シグナル
+    private final TodoChangeNotifier.Listener mChangeListener = new ChangeListener();  // 変更通知のリスナー
+    private boolean mSnapshotPending;                   // スナップショットの保存待ち
+    private boolean mFullyDrawn;                        // DBからの読み込みで表示済み
+    private final Runnable mSaveSnapshot = new Runnable() {     // スナップショットの保存
+        @Override
+        public void run() {
+            saveSnapshot();
+        }
+    };
+    private long[] mUndoKeys;                           // 元に戻せる削除済みTodoアイテム（なければnull）
+    private long mUndoWindowMs;                         // 削除を元に戻せる時間
+    private final Runnable mExpireUndo = new Runnable() {       // 元に戻せる時間の経過
+        @Override
+        public void run() {
+            mUndoKeys = null;
+            invalidateOptionsMenu();
+            schedulePurge();
+        }
+    };
+    private boolean mPurgeScheduled;                    // 完全な削除をアイドル時に実行予定
+    private final MessageQueue.IdleHandler mPurgeIdleHandler = new MessageQueue.IdleHandler() {   // アイドル時の完全な削除
+        @Override
+        public boolean queueIdle() {
+            mPurgeScheduled = false;
+            purgeDeletedTodoItems();
+            return false;
+        }
+    };
 
     /**
      * アプリケーションのメイン画面を表示し、Todoアイテムが保存されているDBを読み込み.
@@ -49,15 +151,60 @@ public class TodoApp extends ListActivity {
         // Viewの表示
         setContentView(R.layout.todo_list);
 
+        // DBアクセスの計測設定
+        TodoDbMetrics.configure(
+                getResources().getBoolean(R.bool.db_metrics_enabled),
+                getResources().getInteger(R.integer.db_slow_query_ms));
+
+        // Todo実施期限の通知を開始
+        TodoReminders.getInstance(this);
+
+        // 古い完了済みTodoアイテムのアーカイブを開始
+        TodoArchiver.start(this);
+
         // DBアクセスクラスのインスタンスの生成
-        mDbHelper = new TodoDbAdapter(this);
+        mDbHelper = TodoRepositoryFactory.create(this);
+        mUndoWindowMs = getResources().getInteger(R.integer.delete_undo_seconds) * 1000L;
+
+        // DBアクセスは全てこのスレッドで順番に実行する
+        mDbExecutor = Executors.newSingleThreadExecutor();
 
         // DBを開く。DBが存在しない場合はDBを生成する。
-        mDbHelper.open();
+        // DB生成に時間がかかってもUIスレッドを止めないよう、バックグラウンドで実施
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.open();
+            }
+        });
+
+        // リスト表示用のアダプタ生成（Todoアイテムは読み込み完了後に設定する）
+        SharedPreferences preferences = getPreferences(MODE_PRIVATE);
+        mSortOrder = preferences.getInt(STR_PREF_SORT_ORDER, TodoItem.N_SORT_CREATED);
+        mListState = preferences.getString(STR_PREF_LIST_STATE, TodoDbAdapter.STR_STATE_OPEN);
+        mTodoItems = new TodoListAdapter(this);
+        mTodoItems.setSortOrder(mSortOrder);
+
+        // アプリケーションメイン画面へ表示
+        setListAdapter(mTodoItems);
+
+        // 前回のスナップショットがあれば、DBからの読み込みを待たずに表示する（未完了を同じ並び順で表示する場合のみ）
+        TodoListSnapshot snapshot = isShowingOpen() ? TodoListSnapshot.read(getSnapshotFile()) : null;
+        if (snapshot != null && snapshot.getSortOrder() == mSortOrder) {
+            mTodoItems.setItems(snapshot.getItems(), snapshot.hasMore());
+        }
+
+        // リスナー登録
+        ListView listView = getListView();
+        listView.setMultiChoiceModeListener(new Callback());
+        listView.setOnScrollListener(new PageScrollListener());
 
         // Todoアイテムリストを表示
         fillData();
 
+        // 以降の変更は、変更のあった行のみ反映する
+        TodoChangeNotifier.registerListener(mChangeListener);
+
 /* 清）テストのためコメントアウト
         // registerForContextMenu
         // ->長押しするとコンテキストメニューが表示される。
@@ -69,39 +216,297 @@ public class TodoApp extends ListActivity {
 
 
     /**
-     * DBからTodoアイテムを取得し、アプリケーションメイン画面に配置する.
+     * 画面が隠れる前に、保存待ちのスナップショットを保存する.
+     */
+    @Override
+    protected void onPause() {
+        if (mSnapshotPending) {
+            mHandler.removeCallbacks(mSaveSnapshot);
+            saveSnapshot();
+        }
+        super.onPause();
+    }
+
+    /**
+     * Activity破棄時に、実行中の読み込みを中断してDBを閉じる.
+     */
+    @Override
+    protected void onDestroy() {
+        // 変更通知の解除
+        TodoChangeNotifier.unregisterListener(mChangeListener);
+
+        // 元に戻さなかった削除済みTodoアイテムは、次回起動時にTodoArchiverが完全に削除する
+        mHandler.removeCallbacks(mExpireUndo);
+        Looper.myQueue().removeIdleHandler(mPurgeIdleHandler);
+
+        // 実行中の読み込みを中断
+        cancelLoad();
+
+        // 実行待ちの処理が終わった後にDBを閉じる
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.close();
+            }
+        });
+        mDbExecutor.shutdown();
+
+        super.onDestroy();
+    }
+
+    /**
+     * dumpsys activityの出力に、DBアクセスの集計結果を含める.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        TodoDbMetrics.dump(writer, prefix);
+    }
+
+    /**
+     * DBからTodoアイテムの先頭ページをバックグラウンドで取得し、アプリケーションメイン画面に配置する.
+     * 前回の読み込みが完了していない場合は中断する.
      */
     private void fillData() {
-        // DBよりデータ取得(State=Open)
-        mTodoCursor = mDbHelper.fetchAllTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN);
+        loadPage(null);
+    }
 
-        // カーソル制御をシステムへ移譲
-        startManagingCursor(mTodoCursor);
+    /**
+     * 表示中のリストの続きのページをバックグラウンドで取得し、末尾へ追加する.
+     * 読み込み中、または全ページ読み込み済みの場合は何もしない.
+     */
+    private void loadNextPage() {
+        if (!mTodoItems.hasMore() || (mLoadFuture != null && !mLoadFuture.isDone())) {
+            return;
+        }
+        loadPage(mTodoItems.getLastItem());
+    }
 
-        // アプリケーションメイン画面に表示させたいColumn名を指定
-        String[] strFrom = new String[]{TodoDbAdapter.STR_KEY_TITLE};
+    /**
+     * 表示中の状態のTodoアイテムを、現在の並び順で指定したTodoアイテムより後ろから1ページ分
+     * バックグラウンドで取得し、リストへ反映する.
+     *
+     * @param after 前ページ最後のTodoアイテム（先頭ページの場合はnull）
+     */
+    private void loadPage(final TodoItem after) {
+        // 不要になった読み込みを中断
+        cancelLoad();
+
+        final String strState = mListState;
+        final int nSortOrder = mSortOrder;
+        final CancellationSignal signal = new CancellationSignal();
+        mLoadSignal = signal;
+        mLoadFuture = mDbExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // DBよりデータ取得(表示中のState)
+                final List<TodoItem> items;
+                try {
+                    items = mDbHelper.fetchTodoItemPage(strState, nSortOrder, after, N_PAGE_SIZE, signal);
+                } catch (OperationCanceledException e) {
+                    // 中断された場合は何もしない
+                    return;
+                }
 
-        // 表示させるViewを指定
-        int[] nTo = new int[]{android.R.id.text1};
+                // UIスレッドでリストへ反映
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 中断済みの読み込み結果は破棄
+                        if (signal.isCanceled()) {
+                            return;
+                        }
+
+                        boolean bHasMore = items.size() == N_PAGE_SIZE;
+                        if (after == null) {
+                            // スナップショットの表示をDBの内容で差し替える
+                            mTodoItems.setItems(items, bHasMore);
+                            scheduleSnapshot();
+                            if (!mFullyDrawn) {
+                                mFullyDrawn = true;
+                                reportFullyDrawn();
+                            }
+                        } else {
+                            mTodoItems.appendItems(items, bHasMore);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        // SimpleCursorAdapterインスタンス生成
-        SimpleCursorAdapter TodoItems = new SimpleCursorAdapter(
-                this,                  // Context
-                R.layout.todo_row,     // 表示先のViewGroup
-                mTodoCursor,           // DBのカーソル
-                strFrom,               // 表示させたいColumn名
-                nTo);                  // 表示先のView
+    /**
+     * リストの並び順を変更し、保存した上で先頭ページから読み込み直す.
+     * 読み込み完了までは、表示中のTodoアイテムを新しい並び順に並べ替えて表示する.
+     *
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     */
+    private void changeSortOrder(int nSortOrder) {
+        if (nSortOrder == mSortOrder) {
+            return;
+        }
+        mSortOrder = nSortOrder;
+        SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
+        editor.putInt(STR_PREF_SORT_ORDER, nSortOrder);
+        editor.apply();
 
-        // アプリケーションメイン画面へ表示
-        setListAdapter(TodoItems);
+        mTodoItems.setSortOrder(nSortOrder);
+        invalidateOptionsMenu();
+        fillData();
+    }
 
-        // リスナー登録
-        ListView listView = getListView();
-        listView.setMultiChoiceModeListener(new Callback());
+    /**
+     * リストに表示する状態（未完了・完了済み）を変更し、保存した上で先頭ページから読み込み直す.
+     * 完了済みのTodoアイテムは、表示を切り替えた上で複数選択モードから未完了に戻せる.
+     *
+     * @param strState 表示する状態（TodoDbAdapter.STR_STATE_OPEN, STR_STATE_CLOSE）
+     */
+    private void changeListState(String strState) {
+        if (strState.equals(mListState)) {
+            return;
+        }
+        mListState = strState;
+        SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
+        editor.putString(STR_PREF_LIST_STATE, strState);
+        editor.apply();
+
+        invalidateOptionsMenu();
+        fillData();
+    }
+
+    /**
+     * 未完了のTodoアイテムを表示中かを判定する.
+     *
+     * @return 未完了を表示中の場合はtrue
+     */
+    private boolean isShowingOpen() {
+        return TodoDbAdapter.STR_STATE_OPEN.equals(mListState);
+    }
+
+    /**
+     * リスト末尾付近までスクロールした際に、次のページを読み込むリスナー.
+     */
+    private class PageScrollListener implements AbsListView.OnScrollListener {
+
+        @Override
+        public void onScrollStateChanged(AbsListView view, int nScrollState) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onScroll(AbsListView view, int nFirstVisibleItem, int nVisibleItemCount, int nTotalItemCount) {
+            if (nFirstVisibleItem + nVisibleItemCount >= nTotalItemCount - N_PAGE_THRESHOLD) {
+                loadNextPage();
+            }
+        }
+    }
+
+    /**
+     * Todoアイテムの変更通知を受け、変更のあった行のみをリストへ反映するリスナー.
+     * 変更を行ったスレッドから呼び出されるため、DBアクセスとリスト更新は各スレッドへ振り分ける.
+     */
+    private class ChangeListener implements TodoChangeNotifier.Listener {
+
+        @Override
+        public void onTodoItemsChanged(final int nChange, final long[] nPrimaryKeys) {
+            if (nChange == TodoChangeNotifier.N_CHANGE_DELETE) {
+                // 削除された行をリストから取り除く
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mTodoItems.removeItems(nPrimaryKeys);
+                        scheduleSnapshot();
+                    }
+                });
+                return;
+            }
+
+            // 登録・更新された行のみDBから再取得（内容は編集画面で読み込むため取得しない）
+            try {
+                mDbExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final List<TodoItem> items = mDbHelper.fetchListItems(nPrimaryKeys);
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mTodoItems.upsertItems(items, mListState);
+                                scheduleSnapshot();
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Activity破棄後に届いた通知は無視する
+            }
+        }
+    }
+
+    /**
+     * リストのスナップショットの保存を予約する. 予約済みの場合は待ち時間を延長する.
+     */
+    private void scheduleSnapshot() {
+        mHandler.removeCallbacks(mSaveSnapshot);
+        mHandler.postDelayed(mSaveSnapshot, N_SNAPSHOT_DELAY_MS);
+        mSnapshotPending = true;
+    }
+
+    /**
+     * 表示中のリストの先頭ページを、バックグラウンドでスナップショットとして保存する.
+     * スナップショットは起動時の未完了の表示用のため、完了済みを表示中は保存しない.
+     */
+    private void saveSnapshot() {
+        mSnapshotPending = false;
+        if (!isShowingOpen()) {
+            return;
+        }
+        final List<TodoItem> items = mTodoItems.getItems(N_PAGE_SIZE);
+        final boolean bHasMore = mTodoItems.getCount() > N_PAGE_SIZE || mTodoItems.hasMore();
+        final int nSortOrder = mTodoItems.getSortOrder();
+        final File file = getSnapshotFile();
+        try {
+            mDbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        TodoListSnapshot.write(file, items, nSortOrder, N_PAGE_SIZE, bHasMore);
+                    } catch (IOException e) {
+                        // 次回の起動はDBからの読み込みを待つだけのため、ログのみ出力
+                        Log.w(STR_CLASS_NAME, "スナップショットの保存に失敗", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Activity破棄後は保存しない
+        }
+    }
+
+    /**
+     * リストのスナップショットのファイルを取得.
+     *
+     * @return スナップショットのファイル
+     */
+    private File getSnapshotFile() {
+        return new File(getFilesDir(), STR_SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * 実行中の読み込みを中断する.
+     */
+    private void cancelLoad() {
+        if (mLoadSignal != null) {
+            mLoadSignal.cancel();
+            mLoadSignal = null;
+        }
+        if (mLoadFuture != null) {
+            mLoadFuture.cancel(false);
+            mLoadFuture = null;
+        }
     }
 
     /**
      * Todoアイテムを長押しした際に起動する複数選択モードのリスナー.
+     * 選択したTodoアイテムの完了・未完了への変更、削除をまとめて実行する.
      * @author 清兼
      */
     private class Callback implements ListView.MultiChoiceModeListener {
@@ -112,38 +517,61 @@ public class TodoApp extends ListActivity {
         @Override
         public boolean onCreateActionMode(ActionMode mode, Menu menu) {
             // アクションモード初期化処理
+            getMenuInflater().inflate(R.menu.todo_list_action, menu);
             return true;
         }
 
         @Override
         public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
             // アクションアイテム選択時
+            final long[] nPrimaryKeys = getCheckedPrimaryKeys();
+            switch (item.getItemId()) {
+                case R.id.action_close:
+                    updateTodoItemsState(nPrimaryKeys, TodoDbAdapter.STR_STATE_CLOSE);
+                    break;
+
+                case R.id.action_reopen:
+                    updateTodoItemsState(nPrimaryKeys, TodoDbAdapter.STR_STATE_OPEN);
+                    break;
+
+                case R.id.action_delete:
+                    deleteTodoItems(nPrimaryKeys);
+                    break;
+
+                default:
+                    return false;
+            }
+
+            // 変更後のリストは変更通知で反映される
+            mode.finish();
             return true;
         }
 
         @Override
         public void onDestroyActionMode(ActionMode mode) {
-            // 決定ボタン押下時
-            final int checkedCount = getListView().getCheckedItemCount();
-            SparseBooleanArray list = getListView().getCheckedItemPositions();
-            String str = "";
-            /*
-            for(int i=0;i<GENRES.length;i++){
-                boolean checked = list.get(i);
-                if (checked == true){
-                    str = str+GENRES[i] + " ";
-                }
-            }
-
-            Intent intent = new Intent(getApplicationContext(), ResultDisp.class);
-            intent.putExtra("checked_list", str);
-            startActivity(intent);
-            */
+            // 選択状態はListViewが解除する
         }
 
         @Override
         public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
             // アクションモード表示事前処理
+            // 選択中のTodoアイテムの状態に応じて、変更できる操作のみを表示
+            boolean bHasOpen = false;
+            boolean bHasClose = false;
+            SparseBooleanArray checked = getListView().getCheckedItemPositions();
+            for (int nIndex = 0; nIndex < checked.size(); nIndex++) {
+                if (!checked.valueAt(nIndex)) {
+                    continue;
+                }
+                String strState = mTodoItems.getItem(checked.keyAt(nIndex)).getState();
+                if (TodoDbAdapter.STR_STATE_CLOSE.equals(strState)) {
+                    bHasClose = true;
+                } else {
+                    bHasOpen = true;
+                }
+            }
+            menu.findItem(R.id.action_close).setVisible(bHasOpen);
+            menu.findItem(R.id.action_reopen).setVisible(bHasClose);
             return true;
         }
 
@@ -151,9 +579,173 @@ public class TodoApp extends ListActivity {
         public void onItemCheckedStateChanged(ActionMode mode,
                                               int position, long id, boolean checked) {
             // アクションモード時のアイテムの選択状態変更時
+            mode.setTitle(getString(R.string.selected_count, getListView().getCheckedItemCount()));
+            mode.invalidate();
+        }
+    }
+
+    /**
+     * 選択中のTodoアイテムのPrimaryKeyを取得.
+     *
+     * @return 選択中のTodoアイテムのPrimaryKey
+     */
+    private long[] getCheckedPrimaryKeys() {
+        SparseBooleanArray checked = getListView().getCheckedItemPositions();
+        long[] nPrimaryKeys = new long[getListView().getCheckedItemCount()];
+        int nCount = 0;
+        for (int nIndex = 0; nIndex < checked.size() && nCount < nPrimaryKeys.length; nIndex++) {
+            if (checked.valueAt(nIndex)) {
+                nPrimaryKeys[nCount++] = mTodoItems.getItemId(checked.keyAt(nIndex));
+            }
+        }
+        return (nCount == nPrimaryKeys.length) ? nPrimaryKeys : Arrays.copyOf(nPrimaryKeys, nCount);
+    }
+
+    /**
+     * Todoアイテムの状態をバックグラウンドでまとめて更新する（1回のUPDATE文）.
+     *
+     * @param nPrimaryKeys 更新対象のPrimaryKey
+     * @param strState Todo状態
+     */
+    private void updateTodoItemsState(final long[] nPrimaryKeys, final String strState) {
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.updateTodoItemsState(nPrimaryKeys, strState);
+            }
+        });
+    }
+
+    /**
+     * Todoアイテムをバックグラウンドでまとめて削除する（1回のUPDATE文で削除済みにする）.
+     * 一定時間（R.integer.delete_undo_seconds）はメニューから元に戻せ、経過後にアイドル時に完全に削除する.
+     *
+     * @param nPrimaryKeys 削除対象のPrimaryKey
+     */
+    private void deleteTodoItems(final long[] nPrimaryKeys) {
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.deleteNote(nPrimaryKeys);
+            }
+        });
+
+        // 元に戻せるのは直前の削除のみ（それ以前の削除は、この削除の期限と共に完全に削除する）
+        mUndoKeys = nPrimaryKeys;
+        mHandler.removeCallbacks(mExpireUndo);
+        mHandler.postDelayed(mExpireUndo, mUndoWindowMs);
+        invalidateOptionsMenu();
+        Toast.makeText(this, getString(R.string.deleted_count, nPrimaryKeys.length), Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * 直前に削除したTodoアイテムをバックグラウンドで元に戻す.
+     * 元に戻したTodoアイテムは変更通知によりリストへ反映される.
+     */
+    private void undeleteTodoItems() {
+        final long[] nPrimaryKeys = mUndoKeys;
+        if (nPrimaryKeys == null) {
             return;
         }
+        mUndoKeys = null;
+        mHandler.removeCallbacks(mExpireUndo);
+        invalidateOptionsMenu();
+
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.undeleteTodoItems(nPrimaryKeys);
+            }
+        });
     }
+
+    /**
+     * 元に戻せる時間を過ぎた削除済みTodoアイテムの完全な削除を、UIスレッドのアイドル時に予約する.
+     */
+    private void schedulePurge() {
+        if (!mPurgeScheduled) {
+            mPurgeScheduled = true;
+            Looper.myQueue().addIdleHandler(mPurgeIdleHandler);
+        }
+    }
+
+    /**
+     * 削除済みTodoアイテムを1バッチ分バックグラウンドで完全に削除する.
+     * 対象が残っている場合は、次のアイドル時に続きを削除する.
+     */
+    private void purgeDeletedTodoItems() {
+        final long nDeletedBefore = System.currentTimeMillis() - mUndoWindowMs;
+        final int nBatchSize = getResources().getInteger(R.integer.purge_batch_size);
+        try {
+            mDbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mDbHelper.purgeDeletedTodoItems(nDeletedBefore, nBatchSize) >= nBatchSize) {
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                schedulePurge();
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Activity破棄後は次回起動時に削除する
+        }
+    }
+
+    /**
+     * 全Todoアイテムをバックグラウンドでファイルへエクスポート、またはファイルからインポートする.
+     * ファイルはアプリ専用の外部ストレージに置き、形式は設定（R.string.transfer_format）に従う.
+     * インポートしたTodoアイテムは変更通知によりリストへ反映される.
+     *
+     * @param bExport エクスポートする場合はtrue、インポートする場合はfalse
+     */
+    private void transferTodoItems(final boolean bExport) {
+        String strExtension = getString(R.string.transfer_format);
+        final int nFormat = TodoTransfer.STR_EXTENSIONS[TodoTransfer.N_FORMAT_CSV].equals(strExtension)
+                ? TodoTransfer.N_FORMAT_CSV : TodoTransfer.N_FORMAT_JSON_LINES;
+        final File file = new File(getExternalFilesDir(null), STR_TRANSFER_FILE_NAME + TodoTransfer.STR_EXTENSIONS[nFormat]);
+
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String strMessage;
+                try {
+                    if (bExport) {
+                        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                        try {
+                            int nCount = TodoTransfer.exportTo(mDbHelper, writer, nFormat);
+                            strMessage = getString(R.string.transfer_exported, nCount, file.getPath());
+                        } finally {
+                            writer.close();
+                        }
+                    } else {
+                        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                        try {
+                            int nCount = TodoTransfer.importFrom(
+                                    reader, nFormat, mDbHelper, Runtime.getRuntime().availableProcessors());
+                            strMessage = getString(R.string.transfer_imported, nCount);
+                        } finally {
+                            reader.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    strMessage = getString(R.string.transfer_failed, e.getMessage());
+                }
+
+                final String strResult = strMessage;
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(TodoApp.this, strResult, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * メニューボタンを押したときに表示されるアイテムを生成する
      *
@@ -170,6 +762,40 @@ public class TodoApp extends ListActivity {
                 0,                      // アイテムの順序（0は優先度なし）
                 R.string.menu_insert);       // メニューに表示する文字列
 
+        // エクスポート・インポート
+        menu.add(0, N_EXPORT_ID, 0, R.string.menu_export);
+        menu.add(0, N_IMPORT_ID, 0, R.string.menu_import);
+
+        // 削除を元に戻す（削除直後のみ表示）
+        menu.add(0, N_UNDO_ID, 0, R.string.menu_undo).setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+
+        // 並べ替え（いずれか1つを選択）
+        SubMenu sortMenu = menu.addSubMenu(0, N_SORT_ID, 0, R.string.menu_sort);
+        sortMenu.add(N_SORT_GROUP_ID, N_SORT_CREATED_ID, 0, R.string.sort_created);
+        sortMenu.add(N_SORT_GROUP_ID, N_SORT_DUE_DATE_ID, 0, R.string.sort_due_date);
+        sortMenu.add(N_SORT_GROUP_ID, N_SORT_TITLE_ID, 0, R.string.sort_title);
+        sortMenu.setGroupCheckable(N_SORT_GROUP_ID, true, true);
+
+        // 表示する状態（いずれか1つを選択）
+        SubMenu stateMenu = menu.addSubMenu(0, N_STATE_ID, 0, R.string.menu_state);
+        stateMenu.add(N_STATE_GROUP_ID, N_STATE_OPEN_ID, 0, R.string.state_open);
+        stateMenu.add(N_STATE_GROUP_ID, N_STATE_CLOSE_ID, 0, R.string.state_close);
+        stateMenu.setGroupCheckable(N_STATE_GROUP_ID, true, true);
+
+        return true;
+    }
+
+    /**
+     * 元に戻せる削除がある場合のみ、元に戻すメニューを表示する. 現在の並び順と表示する状態を選択状態にする.
+     *
+     * @param menu メニューインスタンス
+     */
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        menu.findItem(N_UNDO_ID).setVisible(mUndoKeys != null);
+        menu.findItem(N_SORT_CREATED_ID + mSortOrder).setChecked(true);
+        menu.findItem(isShowingOpen() ? N_STATE_OPEN_ID : N_STATE_CLOSE_ID).setChecked(true);
         return true;
     }
 
@@ -195,6 +821,38 @@ public class TodoApp extends ListActivity {
                 createTodoItem();
                 break;
 
+            // エクスポート・インポート
+            case N_EXPORT_ID:
+                transferTodoItems(true);
+                break;
+            case N_IMPORT_ID:
+                transferTodoItems(false);
+                break;
+
+            // 削除を元に戻す
+            case N_UNDO_ID:
+                undeleteTodoItems();
+                break;
+
+            // 並べ替え
+            case N_SORT_CREATED_ID:
+                changeSortOrder(TodoItem.N_SORT_CREATED);
+                break;
+            case N_SORT_DUE_DATE_ID:
+                changeSortOrder(TodoItem.N_SORT_DUE_DATE);
+                break;
+            case N_SORT_TITLE_ID:
+                changeSortOrder(TodoItem.N_SORT_TITLE);
+                break;
+
+            // 表示する状態
+            case N_STATE_OPEN_ID:
+                changeListState(TodoDbAdapter.STR_STATE_OPEN);
+                break;
+            case N_STATE_CLOSE_ID:
+                changeListState(TodoDbAdapter.STR_STATE_CLOSE);
+                break;
+
             default:
                 // Nothing to do
                 break;
@@ -246,10 +904,9 @@ public class TodoApp extends ListActivity {
                 AdapterContextMenuInfo info = (AdapterContextMenuInfo) item.getMenuInfo();
 
                 // 対象のTodoアイテムのidを引き渡し、削除を実施
-//               mDbHelper.deleteNote(info.id);
+                deleteTodoItems(new long[]{info.id});
 
-                // 削除後のTodoアイテムリストを表示
-                fillData();
+                // 削除後のTodoアイテムリストは変更通知で反映される
                 break;
 
             default:
@@ -321,8 +978,7 @@ public class TodoApp extends ListActivity {
         {
             case CState.N_ACTIVITY_CREATE:  // Throw
             case CState.N_ACTIVITY_EDIT:
-                // 最新のTodoアイテムリストを表示
-                fillData();
+                // 変更のあったTodoアイテムは変更通知で反映されるため、再読み込みは不要
                 break;
 
             default:
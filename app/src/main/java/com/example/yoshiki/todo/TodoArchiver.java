@@ -0,0 +1,144 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.SQLException;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * 完了から一定期間（R.integer.archive_after_days）が経過したTodoアイテムを、
+ * バックグラウンドでアーカイブへ移し、空いたページをDBファイルから解放するクラス.
+ * 合わせて、前回までに元に戻さなかった削除済みTodoアイテムを完全に削除し、件数の集計がtodoItemと一致するかを確認する.
+ * プロセスで1回のみ、優先度の低いスレッドで実行する. 保存方式がSQLite以外の場合は何もしない.
+ * @author 清兼
+ */
+public final class TodoArchiver {
+
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoArchiver";
+
+    /**
+     * 1日のミリ秒数
+     */
+    private static final long N_MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * バッチ間の待ち時間（ミリ秒）. 画面側の書き込みを長く待たせないよう、バッチ毎にDBを明け渡す
+     */
+    private static final long N_BATCH_INTERVAL_MS = 100;
+
+    /**
+     * 1回のincremental vacuumで解放する最大ページ数
+     */
+    private static final int N_VACUUM_PAGES = 256;
+
+    /**
+     * 実行済みかどうか
+     */
+    private static boolean sStarted;
+
+    private TodoArchiver()
+    {
+    }
+
+    /**
+     * アーカイブをバックグラウンドで開始する（プロセスで2回目以降の呼び出しは何もしない）.
+     *
+     * @param context Context
+     */
+    public static synchronized void start(Context context)
+    {
+        if (sStarted) {
+            return;
+        }
+        sStarted = true;
+
+        TodoRepository repository = TodoRepositoryFactory.create(context.getApplicationContext());
+        if (!(repository instanceof TodoDbAdapter)) {
+            return;
+        }
+        final TodoDbAdapter dbHelper = (TodoDbAdapter) repository;
+
+        Resources resources = context.getResources();
+        final long nClosedBefore = System.currentTimeMillis()
+                - resources.getInteger(R.integer.archive_after_days) * N_MILLIS_PER_DAY;
+        final int nBatchSize = resources.getInteger(R.integer.archive_batch_size);
+        final long nDeletedBefore = System.currentTimeMillis()
+                - resources.getInteger(R.integer.delete_undo_seconds) * 1000L;
+        final int nPurgeBatchSize = resources.getInteger(R.integer.purge_batch_size);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                archive(dbHelper, nClosedBefore, nBatchSize, nDeletedBefore, nPurgeBatchSize);
+            }
+        }, STR_CLASS_NAME);
+        thread.start();
+    }
+
+    /**
+     * 対象がなくなるまでバッチ単位でアーカイブへ移し、削除済みTodoアイテムを完全に削除して
+     * 空きページを解放した後、件数の集計を確認する.
+     *
+     * @param dbHelper DBアクセスクラス（未open）
+     * @param nClosedBefore 完了日時の上限（エポックミリ秒）
+     * @param nBatchSize 1トランザクションで移す最大件数
+     * @param nDeletedBefore 削除日時の上限（エポックミリ秒）
+     * @param nPurgeBatchSize 1トランザクションで完全に削除する最大件数
+     */
+    static void archive(
+            TodoDbAdapter dbHelper,
+            long nClosedBefore,
+            int nBatchSize,
+            long nDeletedBefore,
+            int nPurgeBatchSize)
+    {
+        dbHelper.open();
+        try {
+            // アーカイブへ移す
+            int nArchived = 0;
+            int nCount;
+            while ((nCount = dbHelper.archiveClosedTodoItems(nClosedBefore, nBatchSize)) > 0) {
+                nArchived += nCount;
+                Thread.sleep(N_BATCH_INTERVAL_MS);
+            }
+
+            // 元に戻さなかった削除済みTodoアイテムを完全に削除する
+            int nPurged = 0;
+            while ((nCount = dbHelper.purgeDeletedTodoItems(nDeletedBefore, nPurgeBatchSize)) > 0) {
+                nPurged += nCount;
+                Thread.sleep(N_BATCH_INTERVAL_MS);
+            }
+
+            // 既存のDBは初回のみVACUUMでINCREMENTALへ切り替える（切り替え後は空きページが残らない）
+            int nReclaimed = 0;
+            if (!dbHelper.enableIncrementalVacuum()) {
+                while ((nCount = dbHelper.reclaimFreePages(N_VACUUM_PAGES)) > 0) {
+                    nReclaimed += nCount;
+                    Thread.sleep(N_BATCH_INTERVAL_MS);
+                }
+            }
+
+            // ログ出力
+            Log.i(STR_CLASS_NAME, "アーカイブ " + nArchived + "件, 完全に削除 " + nPurged + "件, 解放 "
+                    + nReclaimed + "ページ");
+
+            // 件数の集計がずれていれば作り直す
+            if (!dbHelper.checkStats()) {
+                Log.w(STR_CLASS_NAME, "件数の集計が一致しないため再作成");
+                dbHelper.rebuildStats();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            // 他の接続が使用中などの場合は、次回の起動時に再実行する
+            Log.w(STR_CLASS_NAME, "アーカイブを中断", e);
+        } finally {
+            dbHelper.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.yoshiki.todo;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Todoアイテムの変更（登録・更新・削除）をリスナーへ通知するクラス.
+ * DBアクセスクラスのインスタンスは画面毎に生成されるため、リスナーはプロセス全体で共有する.
+ * @author 清兼
+ */
+public final class TodoChangeNotifier {
+
+    /**
+     * 変更種別定義
+     */
+    public static final int N_CHANGE_INSERT = 0;    // 登録
+    public static final int N_CHANGE_UPDATE = 1;    // 更新
+    public static final int N_CHANGE_DELETE = 2;    // 削除
+
+    /**
+     * Todoアイテムの変更を受け取るリスナー.
+     */
+    public interface Listener {
+
+        /**
+         * Todoアイテムが変更された際に、変更を行ったスレッドから呼び出される.
+         *
+         * @param nChange 変更種別
+         * @param nPrimaryKeys 変更されたTodoアイテムのPrimaryKey
+         */
+        void onTodoItemsChanged(int nChange, long[] nPrimaryKeys);
+    }
+
+    /**
+     * 登録済みのリスナー
+     */
+    private static final CopyOnWriteArrayList<Listener> sListeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    private TodoChangeNotifier()
+    {
+    }
+
+    /**
+     * リスナーを登録する.
+     *
+     * @param listener 登録するリスナー
+     */
+    public static void registerListener(Listener listener)
+    {
+        sListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * リスナーを解除する.
+     *
+     * @param listener 解除するリスナー
+     */
+    public static void unregisterListener(Listener listener)
+    {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * 登録済みの全リスナーへ変更を通知する.
+     *
+     * @param nChange 変更種別
+     * @param nPrimaryKeys 変更されたTodoアイテムのPrimaryKey
+     */
+    public static void notifyChanged(int nChange, long[] nPrimaryKeys)
+    {
+        // 変更なし
+        if (nPrimaryKeys.length == 0) {
+            return;
+        }
+
+        for (Listener listener : sListeners) {
+            listener.onTodoItemsChanged(nChange, nPrimaryKeys);
+        }
+    }
+}
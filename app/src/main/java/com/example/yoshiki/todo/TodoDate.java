@@ -15,10 +15,7 @@ public class TodoDate extends Activity {
     /**
      * キー値定義
      */
-    public static final String STR_KEY_DATE   = "date";    // Intentから日付を取得
-    public static final String STR_KEY_YEAR   = "year";    // Intentへ年を保存
-    public static final String STR_KEY_MONTH  = "month";   // Intentへ月を保存
-    public static final String STR_KEY_DAY    = "day";     // Intentへ日を保存
+    public static final String STR_KEY_DATE   = "date";    // Intentで日付（TodoDateCodecの整数）を受け渡す
 
     /**
      * ToDoItem実施期限を設定する.
@@ -32,19 +29,19 @@ public class TodoDate extends Activity {
         // Viewの表示
         setContentView(R.layout.todo_date);
 
-        // インテントから日付を取得
+        // インテントから日付を取得（日付がない場合は本日）
         Intent i = getIntent();
-        final String strDate = i.getStringExtra(STR_KEY_DATE);
-
-        // 取得した日付を分割
-        String[] strWork = strDate.split("/", 0);
+        int nDate = i.getIntExtra(STR_KEY_DATE, TodoDateCodec.N_NO_DATE);
+        if (nDate == TodoDateCodec.N_NO_DATE) {
+            nDate = TodoDateCodec.today();
+        }
 
         // 取得した日付を設定
         final DatePicker datePicker = (DatePicker)findViewById(R.id.datePicker);
         datePicker.updateDate(
-                Integer.parseInt(strWork[0]),       // 年
-                Integer.parseInt(strWork[1]) - 1,   // 月
-                Integer.parseInt(strWork[2])        // 日
+                TodoDateCodec.getYear(nDate),       // 年
+                TodoDateCodec.getMonth(nDate) - 1,  // 月
+                TodoDateCodec.getDay(nDate)         // 日
         );
 
         //******************************************
@@ -59,9 +56,10 @@ public class TodoDate extends Activity {
             public void onClick(View v) {
                 // DatePikerの値を設定
                 Intent i = new Intent();
-                i.putExtra(STR_KEY_YEAR , String.valueOf(datePicker.getYear()));        // 年
-                i.putExtra(STR_KEY_MONTH, String.valueOf(datePicker.getMonth() + 1));   // 月
-                i.putExtra(STR_KEY_DAY  , String.valueOf(datePicker.getDayOfMonth()));  // 日
+                i.putExtra(STR_KEY_DATE, TodoDateCodec.pack(
+                        datePicker.getYear(),           // 年
+                        datePicker.getMonth() + 1,      // 月
+                        datePicker.getDayOfMonth()));   // 日
 
                 // Activityの戻りを設定
                 setResult(RESULT_OK, i);
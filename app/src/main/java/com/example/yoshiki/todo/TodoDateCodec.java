@@ -0,0 +1,267 @@
+package com.example.yoshiki.todo;
+
+import java.util.TimeZone;
+
+/**
+ * Todo実施期限の変換クラス.
+ * 日付をyyyymmddの整数（例：2015/07/13 → 20150713）として扱い、
+ * "yyyy/MM/dd"形式の文字列との変換を、作業用のオブジェクトを生成せずに行う.
+ * 整数の大小関係は日付の前後関係と一致する.
+ * @author 清兼
+ */
+public final class TodoDateCodec {
+
+    /**
+     * 日付なし（不正な日付）を表す値
+     */
+    public static final int N_NO_DATE = 0;
+
+    /**
+     * "yyyy/MM/dd"形式の文字数
+     */
+    public static final int N_FORMATTED_LENGTH = 10;
+
+    /**
+     * 日付の区切り文字
+     */
+    private static final char CHAR_SEPARATOR = '/';
+
+    /**
+     * 1日のミリ秒数
+     */
+    private static final long N_MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private TodoDateCodec()
+    {
+    }
+
+    /**
+     * 年月日から日付を生成する.
+     *
+     * @param nYear  年（0〜9999）
+     * @param nMonth 月（1〜12）
+     * @param nDay   日（1〜月の日数）
+     * @return 日付。不正な年月日の場合はN_NO_DATE
+     */
+    public static int pack(int nYear, int nMonth, int nDay)
+    {
+        if (nYear < 0 || nYear > 9999 || nMonth < 1 || nMonth > 12 || nDay < 1 || nDay > daysInMonth(nYear, nMonth)) {
+            return N_NO_DATE;
+        }
+        return nYear * 10000 + nMonth * 100 + nDay;
+    }
+
+    /**
+     * 年を取得.
+     */
+    public static int getYear(int nDate)
+    {
+        return nDate / 10000;
+    }
+
+    /**
+     * 月（1〜12）を取得.
+     */
+    public static int getMonth(int nDate)
+    {
+        return nDate / 100 % 100;
+    }
+
+    /**
+     * 日を取得.
+     */
+    public static int getDay(int nDate)
+    {
+        return nDate % 100;
+    }
+
+    /**
+     * "yyyy/M/d"形式の文字列を日付へ変換する.
+     * 各項目の0埋めの有無と、前後の空白は問わない.
+     *
+     * @param str 日付文字列
+     * @return 日付。形式が不正な場合はN_NO_DATE
+     */
+    public static int parse(CharSequence str)
+    {
+        if (str == null) {
+            return N_NO_DATE;
+        }
+
+        // 年・月・日の順に数字を読み込む
+        int nYear = 0;
+        int nMonth = 0;
+        int nDay = 0;
+        int nField = 0;         // 読み込み中の項目（0：年、1：月、2：日）
+        int nDigits = 0;        // 読み込み中の項目の桁数
+        int nValue = 0;         // 読み込み中の項目の値
+        boolean bSpaceAfter = false;    // 数字の後に空白があったか
+        int nLength = str.length();
+        for (int nIndex = 0; nIndex <= nLength; nIndex++) {
+            char c = (nIndex < nLength) ? str.charAt(nIndex) : CHAR_SEPARATOR;
+            if (c >= '0' && c <= '9') {
+                if (bSpaceAfter || ++nDigits > 4) {
+                    return N_NO_DATE;
+                }
+                nValue = nValue * 10 + (c - '0');
+            } else if (c == ' ') {
+                bSpaceAfter = (nDigits > 0);
+            } else if (c == CHAR_SEPARATOR) {
+                if (nDigits == 0) {
+                    return N_NO_DATE;
+                }
+                switch (nField) {
+                    case 0:
+                        nYear = nValue;
+                        break;
+                    case 1:
+                        nMonth = nValue;
+                        break;
+                    case 2:
+                        nDay = nValue;
+                        break;
+                    default:
+                        return N_NO_DATE;
+                }
+                nField++;
+                nDigits = 0;
+                nValue = 0;
+                bSpaceAfter = false;
+            } else {
+                return N_NO_DATE;
+            }
+        }
+        return (nField == 3) ? pack(nYear, nMonth, nDay) : N_NO_DATE;
+    }
+
+    /**
+     * 日付を"yyyy/MM/dd"形式で書き込む.
+     *
+     * @param nDate 日付
+     * @param dst 書き込み先（N_FORMATTED_LENGTH文字以上の空きが必要）
+     * @param nOffset 書き込み開始位置
+     * @return 書き込んだ文字数
+     */
+    public static int format(int nDate, char[] dst, int nOffset)
+    {
+        int nYear = getYear(nDate);
+        int nMonth = getMonth(nDate);
+        int nDay = getDay(nDate);
+        dst[nOffset]     = (char) ('0' + nYear / 1000);
+        dst[nOffset + 1] = (char) ('0' + nYear / 100 % 10);
+        dst[nOffset + 2] = (char) ('0' + nYear / 10 % 10);
+        dst[nOffset + 3] = (char) ('0' + nYear % 10);
+        dst[nOffset + 4] = CHAR_SEPARATOR;
+        dst[nOffset + 5] = (char) ('0' + nMonth / 10);
+        dst[nOffset + 6] = (char) ('0' + nMonth % 10);
+        dst[nOffset + 7] = CHAR_SEPARATOR;
+        dst[nOffset + 8] = (char) ('0' + nDay / 10);
+        dst[nOffset + 9] = (char) ('0' + nDay % 10);
+        return N_FORMATTED_LENGTH;
+    }
+
+    /**
+     * 日付を"yyyy/MM/dd"形式の文字列へ変換する（生成するのは戻り値の文字列のみ）.
+     *
+     * @param nDate 日付
+     * @return 日付文字列
+     */
+    public static String format(int nDate)
+    {
+        char[] chars = new char[N_FORMATTED_LENGTH];
+        format(nDate, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 1970/01/01からの日数を日付へ変換する.
+     *
+     * @param nEpochDay 1970/01/01からの日数
+     * @return 日付
+     */
+    public static int fromEpochDay(long nEpochDay)
+    {
+        // 3月始まりの400年周期で計算する（うるう日を周期の末尾に置く）
+        long nDays = nEpochDay + 719468;
+        long nEra = floorDiv(nDays, 146097);
+        long nDayOfEra = nDays - nEra * 146097;
+        long nYearOfEra = (nDayOfEra - nDayOfEra / 1460 + nDayOfEra / 36524 - nDayOfEra / 146096) / 365;
+        long nDayOfYear = nDayOfEra - (365 * nYearOfEra + nYearOfEra / 4 - nYearOfEra / 100);
+        long nMonthIndex = (5 * nDayOfYear + 2) / 153;
+        int nDay = (int) (nDayOfYear - (153 * nMonthIndex + 2) / 5 + 1);
+        int nMonth = (int) (nMonthIndex < 10 ? nMonthIndex + 3 : nMonthIndex - 9);
+        int nYear = (int) (nYearOfEra + nEra * 400 + (nMonth <= 2 ? 1 : 0));
+        return pack(nYear, nMonth, nDay);
+    }
+
+    /**
+     * 日付を1970/01/01からの日数へ変換する.
+     *
+     * @param nDate 日付
+     * @return 1970/01/01からの日数
+     */
+    public static long toEpochDay(int nDate)
+    {
+        long nYear = getYear(nDate);
+        int nMonth = getMonth(nDate);
+        if (nMonth <= 2) {
+            nYear--;
+        }
+        long nEra = floorDiv(nYear, 400);
+        long nYearOfEra = nYear - nEra * 400;
+        long nDayOfYear = (153 * (nMonth > 2 ? nMonth - 3 : nMonth + 9) + 2) / 5 + getDay(nDate) - 1;
+        long nDayOfEra = nYearOfEra * 365 + nYearOfEra / 4 - nYearOfEra / 100 + nDayOfYear;
+        return nEra * 146097 + nDayOfEra - 719468;
+    }
+
+    /**
+     * 指定時刻の、指定タイムゾーンでの日付を取得.
+     *
+     * @param nTimeMillis 時刻（エポックミリ秒）
+     * @param timeZone タイムゾーン
+     * @return 日付
+     */
+    public static int fromMillis(long nTimeMillis, TimeZone timeZone)
+    {
+        long nLocalMillis = nTimeMillis + timeZone.getOffset(nTimeMillis);
+        return fromEpochDay(floorDiv(nLocalMillis, N_MILLIS_PER_DAY));
+    }
+
+    /**
+     * 端末のタイムゾーンでの本日の日付を取得.
+     *
+     * @return 日付
+     */
+    public static int today()
+    {
+        return fromMillis(System.currentTimeMillis(), TimeZone.getDefault());
+    }
+
+    /**
+     * 負の数を切り捨てる除算（Math.floorDivはAPI 24以降のため）.
+     */
+    private static long floorDiv(long nDividend, long nDivisor)
+    {
+        long nQuotient = nDividend / nDivisor;
+        return (nDividend % nDivisor < 0) ? nQuotient - 1 : nQuotient;
+    }
+
+    /**
+     * 月の日数を取得.
+     */
+    private static int daysInMonth(int nYear, int nMonth)
+    {
+        switch (nMonth) {
+            case 2:
+                boolean bLeap = (nYear % 4 == 0) && (nYear % 100 != 0 || nYear % 400 == 0);
+                return bLeap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
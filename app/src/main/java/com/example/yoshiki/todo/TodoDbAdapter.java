@@ -3,17 +3,33 @@ package com.example.yoshiki.todo;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MergeCursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Matrix;
+import android.os.CancellationSignal;
 import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * DBアクセスクラス
+ * DBアクセスクラス（SQLiteを保存先とするTodoRepository）
  * @author 清兼
  */
-public class    TodoDbAdapter {
+public class    TodoDbAdapter implements TodoRepository {
 
     /**
      * クラス名定義
@@ -25,7 +41,10 @@ public class    TodoDbAdapter {
      */
     private static final String STR_DATABASE_NAME   = "todo";         // DB名
     private static final String STR_DATABASE_TABLE  = "todoItem";     // テーブル名
-    private static final int    N_DATABASE_VERSION  = 1;              // バージョン
+    private static final String STR_SEARCH_TABLE    = "todoSearch";   // 全文検索用テーブル名
+    private static final String STR_ARCHIVE_TABLE   = "todoItemArchive";      // アーカイブ用テーブル名
+    private static final String STR_ARCHIVE_SEARCH_TABLE = "todoArchiveSearch"; // アーカイブの全文検索用テーブル名
+    private static final int    N_DATABASE_VERSION  = 9;              // バージョン
 
     /**
      * Column定義
@@ -35,14 +54,37 @@ public class    TodoDbAdapter {
     public static final String STR_KEY_BODY     = "body";   // Todoアイテムの内容
     public static final String STR_KEY_DATE     = "date";   // Todo実施期限
     public static final String STR_KEY_STATE    = "state";  // Todo状態
+    private static final String STR_KEY_CLOSED_AT = "closed_at";    // 完了日時（エポック秒、未完了はnull）
+    private static final String STR_KEY_DELETED_AT = "deleted_at";  // 削除日時（エポック秒、削除済みのみ）
     private static final String[] STR_TARGET_COLUMNS =
         {STR_KEY_PRIMARY, STR_KEY_TITLE, STR_KEY_BODY, STR_KEY_DATE, STR_KEY_STATE};    // DBから取得するColumn名一覧
+    public static final String[] STR_LIST_COLUMNS =
+        {STR_KEY_PRIMARY, STR_KEY_TITLE};   // リスト表示用に取得するColumn名一覧（内容は読み込まない）
+    private static final String[] STR_LIST_STATE_COLUMNS =
+        {STR_KEY_PRIMARY, STR_KEY_TITLE, STR_KEY_DATE, STR_KEY_STATE};  // リスト表示用に取得するColumn名一覧（期限・State付き）
+    private static final String[] STR_DUE_COLUMNS =
+        {STR_KEY_PRIMARY, STR_KEY_DATE, STR_KEY_STATE};     // 期限の取得用のColumn名一覧（索引のみで取得できる）
 
     /**
      * Todoアイテムの状態定義
      */
     public static final String STR_STATE_OPEN   = "open";   // Todoアイテムが未完了
     public static final String STR_STATE_CLOSE  = "close";  // Todoアイテムが完了
+    private static final String STR_STATE_DELETED = "deleted";  // Todoアイテムが削除済み（完全に削除するまでの墓標）
+
+    /**
+     * 削除済みのTodoアイテムを除く条件（v8で追加）
+     *  一覧・期限・集計はStateの等価比較で取得するため、索引の時点で削除済みは含まれない.
+     *  PrimaryKeyでの取得・更新では、取得した行のStateのみを確認する.
+     */
+    private static final String STR_WHERE_NOT_DELETED = STR_KEY_STATE + " <> '" + STR_STATE_DELETED + "'";
+
+    /**
+     * 全文検索の結果から削除済みのTodoアイテムを除く条件（v8で追加）
+     *  削除済みの_idはtodoItem_stateの索引から1回だけ取得される.
+     */
+    private static final String STR_WHERE_NOT_DELETED_DOCID =
+            "docid NOT IN (SELECT _id FROM todoItem WHERE state = '" + STR_STATE_DELETED + "')";
 
     /**
      * TABLE Create用構文定義
@@ -58,10 +100,409 @@ public class    TodoDbAdapter {
                     + "title text not null, body text not null, date text not null, state text not null);";
 
     /**
-     * TABLE Drop用構文定義
-     *  テーブル名：todoItem
+     * INDEX Create用構文定義
+     *  一覧表示時のState検索用（v2で追加）
+     */
+    private static final String DATABASE_CREATE_STATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS todoItem_state ON todoItem (state);";
+
+    /**
+     * INDEX Create用構文定義
+     *  State毎の期限順の取得用（v5で追加）. 同じ期限は_id順に並べるため、_idまで含める
+     */
+    private static final String DATABASE_CREATE_STATE_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS todoItem_state_date ON todoItem (state, date, _id);";
+
+    /**
+     * INDEX Create用構文定義
+     *  State毎のタイトル順の取得用（v9で追加）. 並べ替えと同じく大文字・小文字を区別しない順序で索引する
+     */
+    private static final String DATABASE_CREATE_STATE_TITLE_INDEX =
+            "CREATE INDEX IF NOT EXISTS todoItem_state_title ON todoItem (state, title COLLATE NOCASE, _id);";
+
+    /**
+     * 並び順毎の並べ替えのキー（TodoItem.N_SORT_*の順. 登録順は_idのみ）.
+     *  todoItem_state, todoItem_state_date, todoItem_state_titleの順序と一致させ、並べ替えを行わない
+     */
+    private static final String[] STR_SORT_KEYS =
+        {null, STR_KEY_DATE, STR_KEY_TITLE + " COLLATE NOCASE"};
+
+    /**
+     * 全文検索用TABLE Create用構文定義（v4で追加）
+     *  todoItemのtitle, bodyを索引するFTS4テーブル。内容はtodoItemを参照し、索引のみを保持する.
+     */
+    private static final String DATABASE_CREATE_SEARCH =
+            "CREATE VIRTUAL TABLE todoSearch USING fts4(content=\"todoItem\", title, body);";
+
+    /**
+     * 全文検索用テーブルをtodoItemと同期するトリガー定義（v4で追加）
+     *  title, body以外の更新では索引を書き換えない.
+     */
+    private static final String[] DATABASE_CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER todoItem_search_bd BEFORE DELETE ON todoItem BEGIN "
+                    + "DELETE FROM todoSearch WHERE docid = old._id; END;",
+            "CREATE TRIGGER todoItem_search_bu BEFORE UPDATE OF title, body ON todoItem BEGIN "
+                    + "DELETE FROM todoSearch WHERE docid = old._id; END;",
+            "CREATE TRIGGER todoItem_search_au AFTER UPDATE OF title, body ON todoItem BEGIN "
+                    + "INSERT INTO todoSearch (docid, title, body) VALUES (new._id, new.title, new.body); END;",
+            "CREATE TRIGGER todoItem_search_ai AFTER INSERT ON todoItem BEGIN "
+                    + "INSERT INTO todoSearch (docid, title, body) VALUES (new._id, new.title, new.body); END;",
+    };
+
+    /**
+     * 完了日時をStateと同期するトリガー定義（v6で追加）
+     *  完了状態で登録された場合と、完了へ変わった場合に現在日時を記録し、未完了へ戻った場合は消去する.
+     */
+    private static final String[] DATABASE_CREATE_CLOSED_TRIGGERS = {
+            "CREATE TRIGGER todoItem_closed_ai AFTER INSERT ON todoItem "
+                    + "WHEN new.state = 'close' AND new.closed_at IS NULL BEGIN "
+                    + "UPDATE todoItem SET closed_at = CAST(strftime('%s', 'now') AS INTEGER) WHERE _id = new._id; END;",
+            "CREATE TRIGGER todoItem_closed_au AFTER UPDATE OF state ON todoItem "
+                    + "WHEN new.state IS NOT old.state BEGIN "
+                    + "UPDATE todoItem SET closed_at = CASE WHEN new.state = 'close' "
+                    + "THEN CAST(strftime('%s', 'now') AS INTEGER) END WHERE _id = new._id; END;",
+    };
+
+    /**
+     * 完了日時をStateと同期するトリガー定義（v8で置き換え）
+     *  削除・元に戻す操作ではStateが一時的に変わるのみのため、完了日時を書き換えない.
+     */
+    private static final String DATABASE_CREATE_CLOSED_AU_TRIGGER =
+            "CREATE TRIGGER todoItem_closed_au AFTER UPDATE OF state ON todoItem "
+                    + "WHEN new.state IS NOT old.state AND new.state <> 'deleted' AND old.state <> 'deleted' BEGIN "
+                    + "UPDATE todoItem SET closed_at = CASE WHEN new.state = 'close' "
+                    + "THEN CAST(strftime('%s', 'now') AS INTEGER) END WHERE _id = new._id; END;";
+
+    /**
+     * 削除済みにするUPDATE構文定義（v8で追加）
+     *  削除前のStateを退避し、Stateを削除済みにする. 既に削除済みの行は書き換えない.
+     */
+    private static final String DATABASE_SOFT_DELETE =
+            "UPDATE todoItem SET deleted_state = state, state = 'deleted', deleted_at = ? "
+                    + "WHERE state <> 'deleted' AND ";
+
+    /**
+     * 削除済みを元に戻すUPDATE構文定義（v8で追加）
+     */
+    private static final String DATABASE_UNDELETE =
+            "UPDATE todoItem SET state = deleted_state, deleted_state = NULL, deleted_at = NULL "
+                    + "WHERE state = 'deleted' AND ";
+
+    /**
+     * INDEX Create用構文定義
+     *  アーカイブ対象（完了日時の古い完了済みTodoアイテム）の取得用（v6で追加）
+     */
+    private static final String DATABASE_CREATE_STATE_CLOSED_INDEX =
+            "CREATE INDEX IF NOT EXISTS todoItem_state_closed ON todoItem (state, closed_at);";
+
+    /**
+     * アーカイブ用TABLE Create用構文定義（v6で追加）
+     *  todoItemのColumnに、アーカイブした日時（エポック秒）を加えたもの.
+     *  _idはtodoItemでの値を引き継ぎ、復元時もそのまま戻す.
+     */
+    private static final String DATABASE_CREATE_ARCHIVE =
+            "CREATE TABLE todoItemArchive (_id integer primary key, "
+                    + "title text not null, body text not null, date text not null, state text not null, "
+                    + "closed_at integer, archived_at integer not null);";
+
+    /**
+     * アーカイブの全文検索用TABLE Create用構文定義（v6で追加）
+     */
+    private static final String DATABASE_CREATE_ARCHIVE_SEARCH =
+            "CREATE VIRTUAL TABLE todoArchiveSearch USING fts4(content=\"todoItemArchive\", title, body);";
+
+    /**
+     * アーカイブの全文検索用テーブルを同期するトリガー定義（v6で追加）
+     *  アーカイブは登録と削除（復元）のみで、更新はしない.
+     */
+    private static final String[] DATABASE_CREATE_ARCHIVE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER todoItemArchive_search_bd BEFORE DELETE ON todoItemArchive BEGIN "
+                    + "DELETE FROM todoArchiveSearch WHERE docid = old._id; END;",
+            "CREATE TRIGGER todoItemArchive_search_ai AFTER INSERT ON todoItemArchive BEGIN "
+                    + "INSERT INTO todoArchiveSearch (docid, title, body) VALUES (new._id, new.title, new.body); END;",
+    };
+
+    /**
+     * 件数集計用TABLE Create用構文定義（v7で追加）
+     *  1行のみのテーブル. 期限切れの件数はoverdue_before（"yyyy/MM/dd"形式）より前の期限を数えたもので、
+     *  日付が変わった後の最初の取得時に、期限毎の件数（todoDueCount）から差分のみを加算して進める.
+     */
+    private static final String DATABASE_CREATE_STATS =
+            "CREATE TABLE todoStats (_id integer primary key check (_id = 0), "
+                    + "open integer not null, closed integer not null, "
+                    + "overdue integer not null, overdue_before text not null);";
+
+    /**
+     * 期限毎の未完了件数のTABLE Create用構文定義（v7で追加）
+     *  件数が0になった期限の行は削除する.
+     */
+    private static final String DATABASE_CREATE_DUE_COUNT =
+            "CREATE TABLE todoDueCount (date text primary key, count integer not null);";
+
+    /**
+     * 件数集計をtodoItemと同期するトリガー定義（v7で追加）
+     *  State・期限以外の更新では集計を書き換えない.
+     */
+    private static final String[] DATABASE_CREATE_STATS_TRIGGERS = {
+            "CREATE TRIGGER todoItem_stats_ai AFTER INSERT ON todoItem BEGIN "
+                    + "UPDATE todoStats SET open = open + (new.state = 'open'), "
+                    + "closed = closed + (new.state = 'close'), "
+                    + "overdue = overdue + (new.state = 'open' AND new.date < overdue_before); END;",
+            "CREATE TRIGGER todoItem_stats_ad AFTER DELETE ON todoItem BEGIN "
+                    + "UPDATE todoStats SET open = open - (old.state = 'open'), "
+                    + "closed = closed - (old.state = 'close'), "
+                    + "overdue = overdue - (old.state = 'open' AND old.date < overdue_before); END;",
+            "CREATE TRIGGER todoItem_stats_au AFTER UPDATE OF state, date ON todoItem "
+                    + "WHEN new.state IS NOT old.state OR new.date IS NOT old.date BEGIN "
+                    + "UPDATE todoStats SET open = open - (old.state = 'open') + (new.state = 'open'), "
+                    + "closed = closed - (old.state = 'close') + (new.state = 'close'), "
+                    + "overdue = overdue - (old.state = 'open' AND old.date < overdue_before) "
+                    + "+ (new.state = 'open' AND new.date < overdue_before); END;",
+            "CREATE TRIGGER todoItem_due_ai AFTER INSERT ON todoItem WHEN new.state = 'open' BEGIN "
+                    + "INSERT OR IGNORE INTO todoDueCount (date, count) VALUES (new.date, 0); "
+                    + "UPDATE todoDueCount SET count = count + 1 WHERE date = new.date; END;",
+            "CREATE TRIGGER todoItem_due_ad AFTER DELETE ON todoItem WHEN old.state = 'open' BEGIN "
+                    + "UPDATE todoDueCount SET count = count - 1 WHERE date = old.date; "
+                    + "DELETE FROM todoDueCount WHERE date = old.date AND count = 0; END;",
+            "CREATE TRIGGER todoItem_due_au AFTER UPDATE OF state, date ON todoItem "
+                    + "WHEN (new.state IS NOT old.state OR new.date IS NOT old.date) "
+                    + "AND (old.state = 'open' OR new.state = 'open') BEGIN "
+                    + "UPDATE todoDueCount SET count = count - 1 WHERE old.state = 'open' AND date = old.date; "
+                    + "DELETE FROM todoDueCount WHERE date = old.date AND count = 0; "
+                    + "INSERT OR IGNORE INTO todoDueCount (date, count) SELECT new.date, 0 WHERE new.state = 'open'; "
+                    + "UPDATE todoDueCount SET count = count + 1 WHERE new.state = 'open' AND date = new.date; END;",
+    };
+
+    /**
+     * 期限切れの件数を指定日（?1）の前日までに進めるUPDATE構文定義.
+     *  前回の境界から指定日までの期限の件数を加算する（時刻が戻された場合は減算する）.
+     */
+    private static final String DATABASE_ADVANCE_OVERDUE =
+            "UPDATE todoStats SET overdue = overdue "
+                    + "+ IFNULL((SELECT SUM(count) FROM todoDueCount "
+                    + "WHERE date >= todoStats.overdue_before AND date < ?1), 0) "
+                    + "- IFNULL((SELECT SUM(count) FROM todoDueCount "
+                    + "WHERE date >= ?1 AND date < todoStats.overdue_before), 0), "
+                    + "overdue_before = ?1";
+
+    /**
+     * 検索結果の順位付けでの、Column毎の重み（title, bodyの順）
+     */
+    private static final double[] N_SEARCH_WEIGHTS = {4.0, 1.0};
+
+    /**
+     * 移行処理で1トランザクションあたりに書き換える最大行数
      */
-    private static final String DATABASE_DROP = "DROP TABLE IF EXISTS todoItem";
+    private static final int N_MIGRATION_BATCH_SIZE = 500;
+
+    /**
+     * DBスキーマの移行ステップ（バージョンの昇順）
+     *  v1：初期スキーマ（DATABASE_CREATE）
+     */
+    private static final TodoDbMigration[] MIGRATIONS = {
+
+        // v2: State検索用のインデックスを追加
+        new TodoDbMigration(2) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL(DATABASE_CREATE_STATE_INDEX);
+            }
+        },
+
+        // v3: Todo実施期限を"yyyy/MM/dd"形式（0埋め）に統一し、文字列順を日付順と一致させる
+        new TodoDbMigration(3) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                SQLiteStatement update = db.compileStatement("UPDATE todoItem SET date = ? WHERE _id = ?");
+                try {
+                    long nLastKey = 0;
+                    while (true) {
+                        // _idをキーに一定件数ずつ読み込む
+                        Cursor cursor = db.rawQuery(
+                                "SELECT _id, date FROM todoItem WHERE _id > ? ORDER BY _id LIMIT "
+                                        + N_MIGRATION_BATCH_SIZE,
+                                new String[]{String.valueOf(nLastKey)});
+                        int nCount = cursor.getCount();
+                        try {
+                            while (cursor.moveToNext()) {
+                                nLastKey = cursor.getLong(0);
+                                String strDate = cursor.getString(1);
+                                String strNormalized = normalizeDate(strDate);
+                                if (!strNormalized.equals(strDate)) {
+                                    update.bindString(1, strNormalized);
+                                    update.bindLong(2, nLastKey);
+                                    update.executeUpdateDelete();
+                                }
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+
+                        // 最終バッチ
+                        if (nCount < N_MIGRATION_BATCH_SIZE) {
+                            break;
+                        }
+
+                        // 長時間DBをロックしないよう、バッチ毎にコミット
+                        commitBatch(db);
+                    }
+                } finally {
+                    update.close();
+                }
+            }
+        },
+
+        // v4: title, bodyの全文検索用テーブルを追加し、既存のTodoアイテムを索引する
+        new TodoDbMigration(4) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                // 途中から再実行された場合に備え、索引は作り直す
+                db.execSQL("DROP TABLE IF EXISTS todoSearch");
+                db.execSQL(DATABASE_CREATE_SEARCH);
+
+                long nLastKey = 0;
+                while (true) {
+                    // 次のバッチの最後の_idを取得
+                    Cursor cursor = db.rawQuery(
+                            "SELECT MAX(_id), COUNT(*) FROM (SELECT _id FROM todoItem WHERE _id > ? ORDER BY _id LIMIT "
+                                    + N_MIGRATION_BATCH_SIZE + ")",
+                            new String[]{String.valueOf(nLastKey)});
+                    long nBatchLastKey;
+                    int nCount;
+                    try {
+                        cursor.moveToFirst();
+                        nBatchLastKey = cursor.getLong(0);
+                        nCount = cursor.getInt(1);
+                    } finally {
+                        cursor.close();
+                    }
+
+                    // バッチ分を索引
+                    if (nCount > 0) {
+                        db.execSQL("INSERT INTO todoSearch (docid, title, body) "
+                                        + "SELECT _id, title, body FROM todoItem WHERE _id > ? AND _id <= ?",
+                                new Object[]{nLastKey, nBatchLastKey});
+                        nLastKey = nBatchLastKey;
+                    }
+
+                    // 最終バッチ
+                    if (nCount < N_MIGRATION_BATCH_SIZE) {
+                        break;
+                    }
+                    commitBatch(db);
+                }
+
+                // 以降はトリガーで同期する
+                for (String strTrigger : DATABASE_CREATE_SEARCH_TRIGGERS) {
+                    db.execSQL(strTrigger);
+                }
+            }
+        },
+
+        // v5: State毎に期限順で取得するためのインデックスを追加
+        new TodoDbMigration(5) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL(DATABASE_CREATE_STATE_DATE_INDEX);
+            }
+        },
+
+        // v6: 完了日時を記録し、古い完了済みTodoアイテムを移すアーカイブ用テーブルを追加する.
+        //     ALTER TABLEは再実行できないため、途中でコミットせず1トランザクションで適用する
+        new TodoDbMigration(6) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE todoItem ADD COLUMN closed_at integer");
+
+                // 既存の完了済みTodoアイテムは、移行した日時に完了したものとする
+                db.execSQL("UPDATE todoItem SET closed_at = CAST(strftime('%s', 'now') AS INTEGER) "
+                        + "WHERE state = 'close'");
+                for (String strTrigger : DATABASE_CREATE_CLOSED_TRIGGERS) {
+                    db.execSQL(strTrigger);
+                }
+                db.execSQL(DATABASE_CREATE_STATE_CLOSED_INDEX);
+
+                db.execSQL(DATABASE_CREATE_ARCHIVE);
+                db.execSQL(DATABASE_CREATE_ARCHIVE_SEARCH);
+                for (String strTrigger : DATABASE_CREATE_ARCHIVE_SEARCH_TRIGGERS) {
+                    db.execSQL(strTrigger);
+                }
+            }
+        },
+
+        // v7: 未完了・完了・期限切れの件数を、COUNT(*)で数え直さずに取得するための集計テーブルを追加する
+        new TodoDbMigration(7) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL(DATABASE_CREATE_STATS);
+                db.execSQL(DATABASE_CREATE_DUE_COUNT);
+                rebuildStats(db, TodoDateCodec.format(TodoDateCodec.today()));
+
+                // 以降はトリガーで同期する
+                for (String strTrigger : DATABASE_CREATE_STATS_TRIGGERS) {
+                    db.execSQL(strTrigger);
+                }
+            }
+        },
+
+        // v8: 削除を「削除済み」へのState変更とし、元に戻せるようにする（完全な削除はバックグラウンドで行う）.
+        //     削除済みはStateの索引・集計トリガーから自然に除かれる. ALTER TABLEを含むため1トランザクションで適用する
+        new TodoDbMigration(8) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL("ALTER TABLE todoItem ADD COLUMN deleted_state text");
+                db.execSQL("ALTER TABLE todoItem ADD COLUMN deleted_at integer");
+                db.execSQL("DROP TRIGGER todoItem_closed_au");
+                db.execSQL(DATABASE_CREATE_CLOSED_AU_TRIGGER);
+            }
+        },
+
+        // v9: State毎にタイトル順で取得するためのインデックスを追加
+        new TodoDbMigration(9) {
+            @Override
+            protected void migrate(SQLiteDatabase db) {
+                db.execSQL(DATABASE_CREATE_STATE_TITLE_INDEX);
+            }
+        },
+    };
+
+    /**
+     * PRAGMA auto_vacuumの値（INCREMENTAL）
+     */
+    private static final long N_AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * "_id IN (...)"の1文に含めるPrimaryKeyの最大数
+     */
+    private static final int N_IN_CHUNK_SIZE = 500;
+
+    /**
+     * Todoアイテムキャッシュの最大件数
+     */
+    private static final int N_ITEM_CACHE_SIZE = 64;
+
+    /**
+     * PrimaryKeyをキーとしたTodoアイテムのLRUキャッシュ.
+     * DBアクセスクラスのインスタンスは画面毎に生成されるため、プロセス全体で共有する.
+     */
+    private static final LruCache<Long, TodoItem> sItemCache = new LruCache<Long, TodoItem>(N_ITEM_CACHE_SIZE);
+
+    /**
+     * キャッシュ無効化の世代番号（無効化の度に加算）
+     */
+    private static final AtomicLong sCacheGeneration = new AtomicLong();
+
+    /**
+     * プロセス内で共有するDatabaseHelper（キーはDBファイルのパス）.
+     * 同じDBファイルへの接続を1つのSQLiteDatabaseにまとめ、WALで読み込みと書き込みを並行させる.
+     */
+    private static final Map<String, DatabaseHelper> sDbHelpers = new HashMap<String, DatabaseHelper>();
+
+    /**
+     * 一括登録用のINSERT構文定義
+     */
+    private static final String DATABASE_INSERT =
+            "INSERT INTO todoItem (title, body, date, state) VALUES (?, ?, ?, ?)";
 
     /**
      * メンバ変数定義
@@ -69,6 +510,7 @@ public class    TodoDbAdapter {
     private DatabaseHelper mDbHelper;       // DatabaseHelperインスタンス
     private SQLiteDatabase mDb;             // DBハンドリング用のインスタンス
     private final Context mCtx;             // Contextインスタンス
+    private SQLiteStatement mInsertStmt;    // 一括登録用のコンパイル済みINSERT文
 
     /**
      * コンストラクタ
@@ -82,17 +524,25 @@ public class    TodoDbAdapter {
 
     /**
      * DBを生成し、メンバへインスタンスを保存.
+     * DatabaseHelperはプロセス内で共有し、最初のopen()でのみDBを開く.
      *
      * @return TodoDbAdapterインスタンス 清）なんでリターン必要？いらなくない？
      * @throws SQLException
      */
+    @Override
     public TodoDbAdapter open() throws SQLException
     {
-        // DatabaseHelperのインスタンス生成
-        mDbHelper = new DatabaseHelper(mCtx);
+        // 共有のDatabaseHelperを取得
+        mDbHelper = acquireHelper(mCtx);
 
         // データベースハンドリング用のインスタンスを取得
-        mDb = mDbHelper.getWritableDatabase();
+        try {
+            mDb = mDbHelper.getWritableDatabase();
+        } catch (SQLException e) {
+            releaseHelper(mDbHelper);
+            mDbHelper = null;
+            throw e;
+        }
 
         // TodoDbAdapterのインスタンスをリターン
         return this;
@@ -100,11 +550,63 @@ public class    TodoDbAdapter {
 
     /**
      * DBのclose.
-     *
+     * 共有のDatabaseHelperは、全てのTodoDbAdapterが閉じた時点で閉じる.
      */
+    @Override
     public void close()
     {
-        mDbHelper.close();
+        if (mDbHelper == null) {
+            return;
+        }
+
+        // コンパイル済みのINSERT文を解放
+        if (mInsertStmt != null) {
+            mInsertStmt.close();
+            mInsertStmt = null;
+        }
+
+        releaseHelper(mDbHelper);
+        mDbHelper = null;
+        mDb = null;
+    }
+
+    /**
+     * DBファイル毎の共有DatabaseHelperを取得し、参照数を加算する.
+     *
+     * @param ctx コンテキスト
+     * @return 共有のDatabaseHelper
+     */
+    private static DatabaseHelper acquireHelper(Context ctx)
+    {
+        String strPath = ctx.getDatabasePath(STR_DATABASE_NAME).getPath();
+        synchronized (sDbHelpers) {
+            DatabaseHelper helper = sDbHelpers.get(strPath);
+            if (helper == null) {
+                // Activityを保持し続けないよう、同じDBファイルを指す場合はApplicationのContextを使う
+                Context appContext = ctx.getApplicationContext();
+                boolean bSameFile = appContext != null
+                        && strPath.equals(appContext.getDatabasePath(STR_DATABASE_NAME).getPath());
+                helper = new DatabaseHelper(bSameFile ? appContext : ctx, strPath);
+                sDbHelpers.put(strPath, helper);
+            }
+            helper.mRefCount++;
+            return helper;
+        }
+    }
+
+    /**
+     * 共有DatabaseHelperの参照数を減算し、参照がなくなった場合は閉じる.
+     *
+     * @param helper 共有のDatabaseHelper
+     */
+    private static void releaseHelper(DatabaseHelper helper)
+    {
+        synchronized (sDbHelpers) {
+            if (--helper.mRefCount == 0) {
+                sDbHelpers.remove(helper.mPath);
+                helper.close();
+            }
+        }
     }
 
 
@@ -117,12 +619,15 @@ public class    TodoDbAdapter {
      * @param strState Todo状態
      * @return _id or -1 if failed
      */
+    @Override
     public long createTodoItem(
             String strTitle,
             String strBody,
             String strDate,
             String strState)
     {
+        long nStart = TodoDbMetrics.start();
+
         // インスタンス生成
         ContentValues initialValues = setColumn(
                 strTitle,    // Todoアイテムのタイトル
@@ -132,10 +637,62 @@ public class    TodoDbAdapter {
         );
 
         // DBへ保存
-        return mDb.insert(
+        long nPrimaryKey = mDb.insert(
                 STR_DATABASE_TABLE,     // テーブル名
                 null,                   // null値の格納が許可されていないカラムに代わりに利用される値
                 initialValues);         // DBへ保存する情報
+
+        // 変更を通知
+        if (nPrimaryKey > 0) {
+            invalidateCache(nPrimaryKey);
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, new long[]{nPrimaryKey});
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_CREATE, nStart, (nPrimaryKey > 0) ? 1 : 0);
+        return nPrimaryKey;
+    }
+
+    /**
+     * 複数のTodoアイテムを1トランザクションでDBへ保存する.
+     * コンパイル済みのINSERT文を使い回し、ContentValuesを介さずに値をバインドする.
+     *
+     * @param items 保存するTodoアイテム（PrimaryKeyは無視される）
+     * @return 採番された_id（itemsと同じ順序）
+     */
+    @Override
+    public long[] createTodoItems(List<TodoItem> items)
+    {
+        long nStart = TodoDbMetrics.start();
+        long[] nPrimaryKeys = new long[items.size()];
+
+        // INSERT文は初回のみコンパイル
+        if (mInsertStmt == null) {
+            mInsertStmt = mDb.compileStatement(DATABASE_INSERT);
+        }
+
+        mDb.beginTransaction();
+        try {
+            for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+                TodoItem item = items.get(nIndex);
+
+                // 値をバインドしてDBへ保存
+                mInsertStmt.bindString(1, item.getTitle());   // Todoアイテムのタイトル
+                mInsertStmt.bindString(2, item.getBody());    // Todoアイテムの内容
+                mInsertStmt.bindString(3, item.getDate());    // Todo実施期限
+                mInsertStmt.bindString(4, item.getState());   // Todo状態
+                nPrimaryKeys[nIndex] = mInsertStmt.executeInsert();
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        // 変更を通知
+        invalidateCache(nPrimaryKeys);
+        TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_CREATE_BATCH, nStart, nPrimaryKeys.length);
+        return nPrimaryKeys;
     }
 
     /**
@@ -144,17 +701,29 @@ public class    TodoDbAdapter {
      * @return 取得した全TodoアイテムのDBカーソル
      */
     public Cursor fetchAllTodoItems()
+    {
+        return fetchAllTodoItems(STR_TARGET_COLUMNS);
+    }
+
+    /**
+     * DBからTodoアイテム情報を全て取得（取得対象のColumnを指定）.
+     * 削除済みのTodoアイテムは含まない.
+     *
+     * @param strColumns 取得対象のColumn
+     * @return 取得した全TodoアイテムのDBカーソル
+     */
+    public Cursor fetchAllTodoItems(String[] strColumns)
     {
         // 全Todoアイテム取得
         return mDb.query(
                 STR_DATABASE_TABLE,     // テーブル名
-                STR_TARGET_COLUMNS,     // 取得対象のColumn
-                null, null,             // 取得するレコードの条件
+                strColumns,             // 取得対象のColumn
+                STR_WHERE_NOT_DELETED, null,    // 取得するレコードの条件
                 null, null, null);      // groupby, Having, orderby, limit句
     }
 
     /**
-     * DBからStateが合致するToDoアイテムを全て取得.
+     * DBからStateが合致するToDoアイテムを全て_id順に取得.
      *
      * @param strState 取得対象のState
      * @return Cursor 取得したTodoアイテムのDBカーソル
@@ -163,15 +732,57 @@ public class    TodoDbAdapter {
     public Cursor fetchAllTodoItemsByState(
             String strState) throws SQLException
     {
-        String strWhere = "state like ?";
+        return fetchAllTodoItemsByState(STR_TARGET_COLUMNS, strState, null);
+    }
+
+    /**
+     * DBからStateが合致するToDoアイテムを全て_id順に取得（取得対象のColumnを指定、キャンセル可能）.
+     * バックグラウンドスレッドからの呼び出しを想定.
+     *
+     * @param strColumns 取得対象のColumn
+     * @param strState 取得対象のState
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return Cursor 取得したTodoアイテムのDBカーソル
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    public Cursor fetchAllTodoItemsByState(
+            String[] strColumns,
+            String strState,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        return fetchAllTodoItemsByState(strColumns, strState, TodoItem.N_SORT_CREATED, cancellationSignal);
+    }
 
+    /**
+     * DBからStateが合致するToDoアイテムを、指定した並び順で全て取得（キャンセル可能）.
+     * 並び順毎のインデックスを順に読むため、並べ替え（TEMP B-TREE）を行わない.
+     *
+     * @param strColumns 取得対象のColumn
+     * @param strState 取得対象のState
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return Cursor 取得したTodoアイテムのDBカーソル
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    public Cursor fetchAllTodoItemsByState(
+            String[] strColumns,
+            String strState,
+            int nSortOrder,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
         // Stateが合致するTodoアイテムを取得
         Cursor mCursor = mDb.query(
+                false,                               // 重複行を削除しない
                 STR_DATABASE_TABLE,                  // テーブル名
-                STR_TARGET_COLUMNS,                  // 取得対象のColumn
-                "state like ?",                      // 取得するレコードの条件
+                strColumns,                          // 取得対象のColumn
+                STR_KEY_STATE + " = ?",              // 取得するレコードの条件（インデックスを使う等価比較）
                 new String[]{strState},
-                null, null, null, null);       // groupby, Having, orderby, limit句
+                null, null,                          // groupby, Having句
+                getSortOrderBy(nSortOrder),          // orderby句
+                null,                                // limit句
+                cancellationSignal);                 // クエリ中断用のシグナル
 
         // Todoアイテムの取得に成功した場合
         if (mCursor != null) {
@@ -183,8 +794,93 @@ public class    TodoDbAdapter {
         return mCursor;
     }
 
+    /**
+     * DBからStateが合致するToDoアイテムを、_id順に1ページ分取得（キーセットページング）.
+     * 前ページ最後の_idより後ろをインデックスで直接探すため、ページ位置に依らず一定のコストで取得できる.
+     *
+     * @param strColumns 取得対象のColumn
+     * @param strState 取得対象のState
+     * @param nAfterKey 前ページ最後の_id（先頭ページの場合は0）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return Cursor 取得したTodoアイテムのDBカーソル
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    public Cursor fetchTodoItemPageByState(
+            String[] strColumns,
+            String strState,
+            long nAfterKey,
+            int nPageSize,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        TodoItem after = (nAfterKey == 0) ? null : new TodoItem(nAfterKey, null, null, null, strState);
+        return fetchTodoItemPageByState(
+                strColumns, strState, TodoItem.N_SORT_CREATED, after, nPageSize, cancellationSignal);
+    }
+
+    /**
+     * DBからStateが合致するToDoアイテムを、指定した並び順で1ページ分取得（キーセットページング）.
+     * 前ページ最後のTodoアイテムの並べ替えのキーと_idより後ろを、並び順毎のインデックスで直接探す.
+     *
+     * @param strColumns 取得対象のColumn
+     * @param strState 取得対象のState
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @param after 前ページ最後のTodoアイテム（先頭ページの場合はnull. 期限順は期限、タイトル順はタイトルが必要）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return Cursor 取得したTodoアイテムのDBカーソル
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    public Cursor fetchTodoItemPageByState(
+            String[] strColumns,
+            String strState,
+            int nSortOrder,
+            TodoItem after,
+            int nPageSize,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        String strSortKey = getSortKey(nSortOrder);
+        String strSelection;
+        String[] strSelectionArgs;
+        if (after == null) {
+            strSelection = STR_KEY_STATE + " = ?";
+            strSelectionArgs = new String[]{strState};
+        } else if (strSortKey == null) {
+            strSelection = STR_KEY_STATE + " = ? AND " + STR_KEY_PRIMARY + " > ?";
+            strSelectionArgs = new String[]{strState, String.valueOf(after.getPrimaryKey())};
+        } else {
+            // (キー, _id) > (前ページ最後のキー, _id). 行値の比較はSQLite 3.15未満で使えないため展開する
+            String strAfterKey = (nSortOrder == TodoItem.N_SORT_DUE_DATE) ? after.getDate() : after.getTitle();
+            strSelection = STR_KEY_STATE + " = ? AND " + strSortKey + " >= ? AND ("
+                    + strSortKey + " > ? OR " + STR_KEY_PRIMARY + " > ?)";
+            strSelectionArgs = new String[]{
+                    strState, strAfterKey, strAfterKey, String.valueOf(after.getPrimaryKey())};
+        }
+
+        Cursor mCursor = mDb.query(
+                false,                                          // 重複行を削除しない
+                STR_DATABASE_TABLE,                             // テーブル名
+                strColumns,                                     // 取得対象のColumn
+                strSelection,                                   // 取得するレコードの条件
+                strSelectionArgs,
+                null, null,                                     // groupby, Having句
+                getSortOrderBy(nSortOrder),                     // orderby句
+                String.valueOf(nPageSize),                      // limit句
+                cancellationSignal);                            // クエリ中断用のシグナル
+
+        // カーソルウィンドウを埋めておく
+        if (mCursor != null) {
+            mCursor.moveToFirst();
+        }
+
+        return mCursor;
+    }
+
     /**
      * DBからPrimaryKeyで指定されたToDoアイテムを取得.
+     * 削除済みのTodoアイテムは取得しない.
      *
      * @param nPrimaryKey 取得対象のPrimaryKey
      * @return Cursor 取得したTodoアイテムのDBカーソル
@@ -195,10 +891,10 @@ public class    TodoDbAdapter {
     {
         // PrimaryKeyで指定されたTodoアイテムを取得
         Cursor mCursor = mDb.query(
-                true,                                // 検索結果から重複する行を削除
+                false,                               // PrimaryKey検索のため重複行の削除は不要
                 STR_DATABASE_TABLE,                  // テーブル名
                 STR_TARGET_COLUMNS,                  // 取得対象のColumn
-                STR_KEY_PRIMARY + "=" + nPrimaryKey, // 取得するレコードの条件
+                STR_KEY_PRIMARY + "=" + nPrimaryKey + " AND " + STR_WHERE_NOT_DELETED, // 取得するレコードの条件
                 null, null, null, null, null);       // groupby, Having, orderby, limit句
 
         // Todoアイテムの取得に成功した場合
@@ -212,96 +908,1090 @@ public class    TodoDbAdapter {
     }
 
     /**
-     * PrimaryKeyで指定されたTodoアイテムをDBから削除.
+     * PrimaryKeyで指定されたToDoアイテムを取得.
+     * キャッシュにあればDBへはアクセスしない.
      *
-     * @param  nPrimaryKey 削除対象のPrimaryKey
-     * @return true if deleted, false otherwise
+     * @param nPrimaryKey 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム。存在しない場合はnull
+     * @throws SQLException if note could not be found/retrieved
      */
-    public boolean deleteNote(long nPrimaryKey[])
+    @Override
+    public TodoItem fetchTodoItem(
+            long nPrimaryKey) throws SQLException
     {
-        // 配列のサイズを取得
-        long nArraySize = nPrimaryKey.length;
+        long nStart = TodoDbMetrics.start();
 
-        // DBから削除
-        for(int nIndex = 0; nIndex < nArraySize; nIndex++)
-        {
-            // Todoアイテムの削除
-            mDb.delete(
-                    STR_DATABASE_TABLE,                         // テーブル名
-                    STR_KEY_PRIMARY + "=" + nPrimaryKey[nIndex],// 削除の対象となるレコードを特定にするための条件（WHERE句）
-                    null);                                      // 不明
+        // キャッシュから取得
+        TodoItem item = sItemCache.get(nPrimaryKey);
+        if (item != null) {
+            TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, 1);
+            return item;
         }
 
-        return true;
+        // 読み込み中に更新された場合は、古い内容をキャッシュしない
+        long nGeneration = sCacheGeneration.get();
+
+        // DBから取得
+        Cursor cursor = fetchToDoItemByPrimaryKey(nPrimaryKey);
+        try {
+            if (cursor.getCount() == 0) {
+                TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, 0);
+                return null;
+            }
+            item = toTodoItem(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        if (nGeneration == sCacheGeneration.get()) {
+            sItemCache.put(nPrimaryKey, item);
+        }
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, 1);
+        return item;
     }
 
     /**
-     * Todoアイテムを編集した場合に、DBの内容をアップデートする.
+     * 複数のPrimaryKeyで指定されたTodoアイテムを取得.
      *
-     * @param nPrimaryKey アップデート対象のPrimaryKey
-     * @param strTitle Todoアイテムのタイトル
-     * @param strBody Todoアイテムの内容
-     * @param strDate Todo実施期限
-     * @param strState Todo状態
-     * @return true if the note was successfully updated, false otherwise
+     * @param nPrimaryKeys 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム（_id順）。存在しないものは含まない
+     * @throws SQLException if note could not be found/retrieved
      */
-    public boolean updateTodoItem(
-            long   nPrimaryKey,
-            String strTitle,
-            String strBody,
-            String strDate,
-            String strState)
+    @Override
+    public List<TodoItem> fetchTodoItems(
+            long[] nPrimaryKeys) throws SQLException
     {
-        // インスタンス生成
-        ContentValues args = setColumn(
-                strTitle,    // Todoアイテムのタイトル
-                strBody,     // Todoアイテムの内容
-                strDate,     // Todo実施期限
-                strState     // Todo状態
-        );
-
-        // DBの内容をアップデート
-        return mDb.update(
-                STR_DATABASE_TABLE,                             // テーブル名
-                args,                                           // アップデートする内容
-                STR_KEY_PRIMARY + "=" + nPrimaryKey, null) > 0; // アップデート対象のPrimaryKey
+        if (nPrimaryKeys.length == 0) {
+            return new ArrayList<TodoItem>();
+        }
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(fetchTodoItemsByPrimaryKeys(STR_TARGET_COLUMNS, nPrimaryKeys));
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, items.size());
+        return items;
     }
 
     /**
-     * DB Createクラス
+     * 複数のPrimaryKeyで指定されたTodoアイテムを、リスト表示用に取得.
+     * _id, title, date, stateのみを取得し、内容（body）は読み込まない.
      *
-     * @author 清兼
+     * @param nPrimaryKeys 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム（_id順）。存在しないものは含まない
+     * @throws SQLException if note could not be found/retrieved
      */
-    private static class DatabaseHelper extends SQLiteOpenHelper {
-
-        /**
-         * コンストラクタ
-         *
-         * @param context   コンテキスト
-         */
-        DatabaseHelper(Context context)
-        {
-            super(  context,                // コンテキスト
-                    STR_DATABASE_NAME,      // DB名
-                    null,                   // ?
-                    N_DATABASE_VERSION);    // バージョン
+    @Override
+    public List<TodoItem> fetchListItems(
+            long[] nPrimaryKeys) throws SQLException
+    {
+        if (nPrimaryKeys.length == 0) {
+            return new ArrayList<TodoItem>();
         }
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(fetchTodoItemsByPrimaryKeys(STR_LIST_STATE_COLUMNS, nPrimaryKeys));
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, items.size());
+        return items;
+    }
 
-        /**
-         * DB Create.
-         * DBが存在しない状態でDBをOpenしようとする場合に起動.
-         *
-         * @param db    新規作成したDBインスタンス
-         */
-        @Override
+    /**
+     * Stateが合致するTodoアイテムを全て取得.
+     *
+     * @param strState 取得対象のState
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    @Override
+    public List<TodoItem> fetchTodoItemsByState(
+            String strState,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(
+                fetchAllTodoItemsByState(STR_TARGET_COLUMNS, strState, cancellationSignal));
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * Stateが合致するTodoアイテムを、_id順に1ページ分取得.
+     * リスト表示用に、_id, title, date, stateのみを取得する.
+     *
+     * @param strState 取得対象のState
+     * @param nAfterKey 前ページ最後の_id（先頭ページの場合は0）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム（_id順）
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    @Override
+    public List<TodoItem> fetchTodoItemPage(
+            String strState,
+            long nAfterKey,
+            int nPageSize,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(fetchTodoItemPageByState(
+                STR_LIST_STATE_COLUMNS, strState, nAfterKey, nPageSize, cancellationSignal));
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * Stateが合致するTodoアイテムを、指定した並び順で1ページ分取得.
+     * リスト表示用に、_id, title, date, stateのみを取得する.
+     *
+     * @param strState 取得対象のState
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @param after 前ページ最後のTodoアイテム（先頭ページの場合はnull）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal クエリ中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム（並び順）
+     * @throws SQLException if note could not be found/retrieved
+     * @throws android.os.OperationCanceledException クエリが中断された場合
+     */
+    @Override
+    public List<TodoItem> fetchTodoItemPage(
+            String strState,
+            int nSortOrder,
+            TodoItem after,
+            int nPageSize,
+            CancellationSignal cancellationSignal) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(fetchTodoItemPageByState(
+                STR_LIST_STATE_COLUMNS, strState, nSortOrder, after, nPageSize, cancellationSignal));
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * 全てのTodoアイテムを、_id順に全Column分取得.
+     * _idの範囲検索のみのため、取得済みの件数によらず一定の時間で取得できる.
+     * 削除済みのTodoアイテムは含まない.
+     *
+     * @param nAfterKey 前回取得した最後の_id（先頭から取得する場合は0）
+     * @param nLimit 最大取得件数
+     * @return 取得したTodoアイテム（_id順）
+     * @throws SQLException if note could not be found/retrieved
+     */
+    @Override
+    public List<TodoItem> fetchTodoItemsAfter(
+            long nAfterKey,
+            int nLimit) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(mDb.query(
+                STR_DATABASE_TABLE,                                     // テーブル名
+                STR_TARGET_COLUMNS,                                     // 取得対象のColumn
+                STR_KEY_PRIMARY + " > ? AND " + STR_WHERE_NOT_DELETED,  // 取得するレコードの条件
+                new String[]{String.valueOf(nAfterKey)},
+                null, null,                                             // groupby, Having句
+                STR_KEY_PRIMARY,                                        // orderby句
+                String.valueOf(nLimit)));                               // limit句
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * Stateが合致し、期限が指定日以降のTodoアイテムを、期限の早い順に取得.
+     * (state, date)のインデックスのみを参照し、並べ替えを行わない.
+     *
+     * @param strState 取得対象のState
+     * @param strFromDate 期限の下限（"yyyy/MM/dd"形式、この日を含む）
+     * @param nLimit 最大取得件数
+     * @return 取得したTodoアイテム（期限, _id順）。_id, date, stateのみを含む
+     * @throws SQLException if note could not be found/retrieved
+     */
+    @Override
+    public List<TodoItem> fetchTodoItemsByDueDate(
+            String strState,
+            String strFromDate,
+            int nLimit) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(mDb.query(
+                STR_DATABASE_TABLE,                                     // テーブル名
+                STR_DUE_COLUMNS,                                        // 取得対象のColumn
+                STR_KEY_STATE + " = ? AND " + STR_KEY_DATE + " >= ?",   // 取得するレコードの条件
+                new String[]{strState, strFromDate},
+                null, null,                                             // groupby, Having句
+                STR_KEY_DATE + ", " + STR_KEY_PRIMARY,                  // orderby句
+                String.valueOf(nLimit)));                               // limit句
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * タイトルと内容を全文検索し、一致度の高い順にTodoアイテムを取得.
+     * 入力の各単語を前方一致で検索し、全ての単語を含むTodoアイテムを対象とする.
+     *
+     * @param strQuery 検索文字列（空白区切り）
+     * @param nLimit 最大取得件数
+     * @return 検索結果（一致度の高い順）
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public List<TodoItem> searchTodoItems(
+            String strQuery,
+            int nLimit) throws SQLException
+    {
+        return searchTodoItems(STR_SEARCH_TABLE, STR_DATABASE_TABLE, STR_WHERE_NOT_DELETED_DOCID, strQuery, nLimit);
+    }
+
+    /**
+     * アーカイブしたTodoアイテムのタイトルと内容を全文検索し、一致度の高い順に取得.
+     * 検索条件は{@link #searchTodoItems(String, int)}と同じ.
+     *
+     * @param strQuery 検索文字列（空白区切り）
+     * @param nLimit 最大取得件数
+     * @return 検索結果（一致度の高い順）
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public List<TodoItem> searchArchivedTodoItems(
+            String strQuery,
+            int nLimit) throws SQLException
+    {
+        return searchTodoItems(STR_ARCHIVE_SEARCH_TABLE, STR_ARCHIVE_TABLE, null, strQuery, nLimit);
+    }
+
+    /**
+     * 指定した全文検索用テーブルを検索し、一致度の高い順にTodoアイテムを取得.
+     *
+     * @param strSearchTable 全文検索用テーブル名
+     * @param strTable Todoアイテムのテーブル名
+     * @param strFilter 一致した行を絞り込む条件（不要な場合はnull）
+     * @param strQuery 検索文字列（空白区切り）
+     * @param nLimit 最大取得件数
+     * @return 検索結果（一致度の高い順）
+     */
+    private List<TodoItem> searchTodoItems(
+            String strSearchTable,
+            String strTable,
+            String strFilter,
+            String strQuery,
+            int nLimit)
+    {
+        List<TodoItem> result = new ArrayList<TodoItem>();
+
+        // 検索条件を生成
+        String strMatch = buildMatchQuery(strQuery);
+        if (strMatch == null || nLimit <= 0) {
+            return result;
+        }
+
+        long nStart = TodoDbMetrics.start();
+
+        // 一致したTodoアイテムの一致度を算出し、上位nLimit件を残す
+        PriorityQueue<SearchHit> hits = new PriorityQueue<SearchHit>(nLimit + 1);
+        Cursor cursor = mDb.rawQuery(
+                "SELECT docid, matchinfo(" + strSearchTable + ", 'pcx') FROM " + strSearchTable
+                        + " WHERE " + strSearchTable + " MATCH ?"
+                        + ((strFilter != null) ? " AND " + strFilter : ""),
+                new String[]{strMatch});
+        try {
+            while (cursor.moveToNext()) {
+                hits.add(new SearchHit(cursor.getLong(0), scoreMatchInfo(cursor.getBlob(1))));
+                if (hits.size() > nLimit) {
+                    // 最も一致度の低いものを除く
+                    hits.poll();
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // 一致度の高い順に並べる
+        long[] nPrimaryKeys = new long[hits.size()];
+        for (int nIndex = nPrimaryKeys.length - 1; nIndex >= 0; nIndex--) {
+            nPrimaryKeys[nIndex] = hits.poll().mPrimaryKey;
+        }
+        if (nPrimaryKeys.length == 0) {
+            TodoDbMetrics.record(TodoDbMetrics.N_OP_SEARCH, nStart, 0);
+            return result;
+        }
+
+        // Todoアイテムを取得し、一致度の順に並べ替える
+        LongSparseArray<TodoItem> items = new LongSparseArray<TodoItem>(nPrimaryKeys.length);
+        for (TodoItem item : toTodoItems(fetchTodoItemsByPrimaryKeys(strTable, STR_TARGET_COLUMNS, nPrimaryKeys))) {
+            items.put(item.getPrimaryKey(), item);
+        }
+        for (long nPrimaryKey : nPrimaryKeys) {
+            TodoItem item = items.get(nPrimaryKey);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_SEARCH, nStart, result.size());
+        return result;
+    }
+
+    /**
+     * 検索文字列から、各単語を前方一致で検索するFTSのMATCH条件を生成する.
+     * FTSの構文として解釈される記号は区切り文字として扱う.
+     *
+     * @param strQuery 検索文字列
+     * @return MATCH条件。検索する単語がない場合はnull
+     */
+    static String buildMatchQuery(String strQuery)
+    {
+        StringBuilder sb = new StringBuilder(strQuery.length() + 8);
+        boolean bInToken = false;
+        for (int nIndex = 0; nIndex < strQuery.length(); nIndex++) {
+            char c = strQuery.charAt(nIndex);
+
+            // 英数字と非ASCII文字のみを単語として扱う
+            if (Character.isLetterOrDigit(c) || c >= 0x80 && !Character.isWhitespace(c)) {
+                if (!bInToken && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(c);
+                bInToken = true;
+            } else if (bInToken) {
+                sb.append('*');
+                bInToken = false;
+            }
+        }
+        if (bInToken) {
+            sb.append('*');
+        }
+        return (sb.length() == 0) ? null : sb.toString();
+    }
+
+    /**
+     * matchinfo(…, 'pcx')の結果から一致度を算出する.
+     * 各単語について、Column毎の一致数を全体での一致数で割ったものを、Columnの重み付きで合計する.
+     *
+     * @param matchInfo matchinfoの結果（32bit整数の配列）
+     * @return 一致度
+     */
+    private static double scoreMatchInfo(byte[] matchInfo)
+    {
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int nPhrases = info.get(0);
+        int nColumns = info.get(1);
+        double nScore = 0;
+        for (int nPhrase = 0; nPhrase < nPhrases; nPhrase++) {
+            for (int nColumn = 0; nColumn < nColumns; nColumn++) {
+                int nBase = 2 + (nPhrase * nColumns + nColumn) * 3;
+                int nHitsInRow = info.get(nBase);
+                int nHitsInAll = info.get(nBase + 1);
+                if (nHitsInRow > 0) {
+                    nScore += N_SEARCH_WEIGHTS[nColumn] * nHitsInRow / nHitsInAll;
+                }
+            }
+        }
+        return nScore;
+    }
+
+    /**
+     * 全文検索の一致結果（一致度の低い順に並ぶ）
+     */
+    private static class SearchHit implements Comparable<SearchHit> {
+        private final long mPrimaryKey;     // PrimaryKey
+        private final double mScore;        // 一致度
+
+        SearchHit(long nPrimaryKey, double nScore)
+        {
+            this.mPrimaryKey = nPrimaryKey;
+            this.mScore = nScore;
+        }
+
+        @Override
+        public int compareTo(SearchHit other)
+        {
+            int nResult = Double.compare(mScore, other.mScore);
+            // 同じ一致度の場合は新しいTodoアイテムを優先
+            return (nResult != 0) ? nResult : (mPrimaryKey < other.mPrimaryKey ? -1 : (mPrimaryKey == other.mPrimaryKey ? 0 : 1));
+        }
+    }
+
+    /**
+     * Todoアイテムキャッシュのヒット数を取得.
+     *
+     * @return ヒット数
+     */
+    public static int getCacheHitCount()
+    {
+        return sItemCache.hitCount();
+    }
+
+    /**
+     * Todoアイテムキャッシュのミス数を取得.
+     *
+     * @return ミス数
+     */
+    public static int getCacheMissCount()
+    {
+        return sItemCache.missCount();
+    }
+
+    /**
+     * 変更されたTodoアイテムをキャッシュから取り除く.
+     *
+     * @param nPrimaryKey 変更されたTodoアイテムのPrimaryKey
+     */
+    private static void invalidateCache(long... nPrimaryKey)
+    {
+        sCacheGeneration.incrementAndGet();
+        for (long nKey : nPrimaryKey) {
+            sItemCache.remove(nKey);
+        }
+    }
+
+    /**
+     * DBから複数のPrimaryKeyで指定されたToDoアイテムを取得.
+     * 変更通知を受けた行のみを再取得する場合に使用する.
+     *
+     * @param strColumns 取得対象のColumn
+     * @param nPrimaryKey 取得対象のPrimaryKey
+     * @return Cursor 取得したTodoアイテムのDBカーソル（_id順）
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public Cursor fetchTodoItemsByPrimaryKeys(
+            String[] strColumns,
+            long nPrimaryKey[]) throws SQLException
+    {
+        return fetchTodoItemsByPrimaryKeys(STR_DATABASE_TABLE, strColumns, nPrimaryKey);
+    }
+
+    /**
+     * 指定したテーブルから、複数のPrimaryKeyで指定されたToDoアイテムを取得.
+     * 削除済みのTodoアイテムは取得しない（アーカイブには削除済みは含まれない）.
+     *
+     * @param strTable テーブル名
+     * @param strColumns 取得対象のColumn
+     * @param nPrimaryKey 取得対象のPrimaryKey
+     * @return Cursor 取得したTodoアイテムのDBカーソル（_id順）
+     */
+    private Cursor fetchTodoItemsByPrimaryKeys(
+            String strTable,
+            String[] strColumns,
+            long nPrimaryKey[])
+    {
+        // 1文で扱える件数を超える場合は分割し、結果を結合する
+        Cursor[] cursors = new Cursor[(nPrimaryKey.length + N_IN_CHUNK_SIZE - 1) / N_IN_CHUNK_SIZE];
+        for (int nChunk = 0; nChunk < cursors.length; nChunk++) {
+            int nFrom = nChunk * N_IN_CHUNK_SIZE;
+            int nTo = Math.min(nFrom + N_IN_CHUNK_SIZE, nPrimaryKey.length);
+            cursors[nChunk] = mDb.query(
+                    strTable,                               // テーブル名
+                    strColumns,                             // 取得対象のColumn
+                    buildInClause(nPrimaryKey, nFrom, nTo) + " AND " + STR_WHERE_NOT_DELETED,  // 取得するレコードの条件
+                    null,
+                    null, null, STR_KEY_PRIMARY);           // groupby, Having, orderby句
+        }
+
+        if (cursors.length == 1) {
+            return cursors[0];
+        }
+        return new MergeCursor(cursors);
+    }
+
+    /**
+     * PrimaryKeyで指定されたTodoアイテムを削除済みにする.
+     * 行は残したままStateのみを書き換えるため、{@link #undeleteTodoItems(long[])}で元に戻せる.
+     * 全文検索の索引も書き換えず、行と共に{@link #purgeDeletedTodoItems(long, int)}で削除する.
+     * 全件を1トランザクションで処理し、"UPDATE ... WHERE _id IN (...)"をチャンク単位で発行する.
+     *
+     * @param  nPrimaryKey 削除対象のPrimaryKey
+     * @return 実際に削除した行数
+     */
+    @Override
+    public int deleteNote(long nPrimaryKey[])
+    {
+        // 削除対象なし
+        if (nPrimaryKey == null || nPrimaryKey.length == 0) {
+            return 0;
+        }
+
+        long nStart = TodoDbMetrics.start();
+
+        // 1トランザクションで削除済みにする（ジャーナルのfsyncは1回で済む）
+        int nDeleted = executeInChunks(DATABASE_SOFT_DELETE, nPrimaryKey, System.currentTimeMillis() / 1000);
+
+        // 変更を通知
+        invalidateCache(nPrimaryKey);
+        if (nDeleted > 0) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_DELETE, nPrimaryKey);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_DELETE, nStart, nDeleted);
+        return nDeleted;
+    }
+
+    /**
+     * Todoアイテムを編集した場合に、DBの内容をアップデートする.
+     * 引数がnullのColumnはアップデートしないため、変更のあったColumnのみ指定できる.
+     *
+     * @param nPrimaryKey アップデート対象のPrimaryKey
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody Todoアイテムの内容
+     * @param strDate Todo実施期限
+     * @param strState Todo状態
+     * @return true if the note was successfully updated, false otherwise
+     */
+    @Override
+    public boolean updateTodoItem(
+            long   nPrimaryKey,
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        // インスタンス生成
+        ContentValues args = setColumn(
+                strTitle,    // Todoアイテムのタイトル
+                strBody,     // Todoアイテムの内容
+                strDate,     // Todo実施期限
+                strState     // Todo状態
+        );
+
+        // 変更なし
+        if (args.size() == 0) {
+            return false;
+        }
+
+        long nStart = TodoDbMetrics.start();
+
+        // DBの内容をアップデート（削除済みは対象外）
+        boolean bUpdated = mDb.update(
+                STR_DATABASE_TABLE,                             // テーブル名
+                args,                                           // アップデートする内容
+                STR_KEY_PRIMARY + "=" + nPrimaryKey + " AND " + STR_WHERE_NOT_DELETED, // アップデート対象のPrimaryKey
+                null) > 0;
+
+        // 変更を通知
+        invalidateCache(nPrimaryKey);
+        if (bUpdated) {
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, new long[]{nPrimaryKey});
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_UPDATE, nStart, bUpdated ? 1 : 0);
+        return bUpdated;
+    }
+
+    /**
+     * 複数のTodoアイテムの状態を1トランザクションでアップデートする.
+     * "UPDATE ... WHERE _id IN (...)"で一括更新し、既に同じ状態のTodoアイテムと削除済みのTodoアイテムは書き換えない.
+     *
+     * @param nPrimaryKeys アップデート対象のPrimaryKey
+     * @param strState Todo状態
+     * @return 状態が変わった行数
+     */
+    @Override
+    public int updateTodoItemsState(
+            long[] nPrimaryKeys,
+            String strState)
+    {
+        int nUpdated = 0;
+
+        // 更新対象なし
+        if (nPrimaryKeys == null || nPrimaryKeys.length == 0) {
+            return 0;
+        }
+
+        long nStart = TodoDbMetrics.start();
+        ContentValues args = setColumn(null, null, null, strState);
+
+        mDb.beginTransaction();
+        try {
+            for (int nFrom = 0; nFrom < nPrimaryKeys.length; nFrom += N_IN_CHUNK_SIZE) {
+                int nTo = Math.min(nFrom + N_IN_CHUNK_SIZE, nPrimaryKeys.length);
+
+                // Todo状態の更新
+                nUpdated += mDb.update(
+                        STR_DATABASE_TABLE,                                                 // テーブル名
+                        args,                                                               // アップデートする内容
+                        buildInClause(nPrimaryKeys, nFrom, nTo) + " AND " + STR_KEY_STATE + " <> ? AND "
+                                + STR_WHERE_NOT_DELETED,
+                        new String[]{strState});                                            // WHERE句の引数
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        // 変更を通知
+        if (nUpdated > 0) {
+            invalidateCache(nPrimaryKeys);
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_UPDATE, nPrimaryKeys);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_UPDATE, nStart, nUpdated);
+        return nUpdated;
+    }
+
+    /**
+     * 削除済みのTodoアイテムを、削除前の状態に戻す.
+     *
+     * @param nPrimaryKeys 対象のPrimaryKey
+     * @return 元に戻した件数（完全に削除済み、または削除されていないものは含まない）
+     */
+    @Override
+    public int undeleteTodoItems(long[] nPrimaryKeys)
+    {
+        // 対象なし
+        if (nPrimaryKeys == null || nPrimaryKeys.length == 0) {
+            return 0;
+        }
+
+        long nStart = TodoDbMetrics.start();
+        int nUndeleted = executeInChunks(DATABASE_UNDELETE, nPrimaryKeys, null);
+
+        // 一覧・通知からは登録として扱う
+        if (nUndeleted > 0) {
+            invalidateCache(nPrimaryKeys);
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_UPDATE, nStart, nUndeleted);
+        return nUndeleted;
+    }
+
+    /**
+     * 削除日時が指定日時より前の削除済みTodoアイテムを、1バッチ分DBから完全に削除する.
+     * 対象はtodoItem_stateの索引から取得し、全文検索の索引はトリガーで削除される.
+     * 長時間DBをロックしないよう、1回の呼び出しで1トランザクションのみ実行する.
+     *
+     * @param nDeletedBefore 削除日時の上限（エポックミリ秒、この日時を含まない）
+     * @param nBatchSize 1回で削除する最大件数（"_id IN (...)"の最大数まで）
+     * @return 削除した件数（nBatchSize未満であれば、対象は残っていない）
+     */
+    @Override
+    public int purgeDeletedTodoItems(
+            long nDeletedBefore,
+            int nBatchSize)
+    {
+        long nStart = TodoDbMetrics.start();
+        int nPurged = 0;
+
+        mDb.beginTransaction();
+        try {
+            // 対象のPrimaryKeyを取得
+            Cursor cursor = mDb.query(
+                    STR_DATABASE_TABLE,                                             // テーブル名
+                    new String[]{STR_KEY_PRIMARY},                                  // 取得対象のColumn
+                    STR_KEY_STATE + " = ? AND " + STR_KEY_DELETED_AT + " < ?",      // 取得するレコードの条件
+                    new String[]{STR_STATE_DELETED, String.valueOf(nDeletedBefore / 1000)},
+                    null, null, null,                                               // groupby, Having, orderby句
+                    String.valueOf(Math.min(nBatchSize, N_IN_CHUNK_SIZE)));         // limit句
+            long[] nPrimaryKeys;
+            try {
+                nPrimaryKeys = new long[cursor.getCount()];
+                for (int nIndex = 0; cursor.moveToNext(); nIndex++) {
+                    nPrimaryKeys[nIndex] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // 削除済みのまま削除する（一覧・件数の集計には含まれていないため、変更通知は不要）
+            if (nPrimaryKeys.length > 0) {
+                nPurged = mDb.delete(
+                        STR_DATABASE_TABLE,
+                        buildInClause(nPrimaryKeys, 0, nPrimaryKeys.length) + " AND " + STR_KEY_STATE + " = ?",
+                        new String[]{STR_STATE_DELETED});
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_DELETE, nStart, nPurged);
+        return nPurged;
+    }
+
+    /**
+     * "... AND "で終わるUPDATE文に"_id IN (...)"をチャンク単位で付け、1トランザクションで実行する.
+     *
+     * @param strUpdate UPDATE文（WHERE句の末尾にPrimaryKeyの条件を付ける）
+     * @param nPrimaryKeys 対象のPrimaryKey
+     * @param nArg 1番目のバインド変数の値（不要な場合はnull）
+     * @return 更新した行数
+     */
+    private int executeInChunks(
+            String strUpdate,
+            long[] nPrimaryKeys,
+            Long nArg)
+    {
+        int nUpdated = 0;
+
+        mDb.beginTransaction();
+        try {
+            for (int nFrom = 0; nFrom < nPrimaryKeys.length; nFrom += N_IN_CHUNK_SIZE) {
+                int nTo = Math.min(nFrom + N_IN_CHUNK_SIZE, nPrimaryKeys.length);
+                SQLiteStatement update = mDb.compileStatement(strUpdate + buildInClause(nPrimaryKeys, nFrom, nTo));
+                try {
+                    if (nArg != null) {
+                        update.bindLong(1, nArg);
+                    }
+                    nUpdated += update.executeUpdateDelete();
+                } finally {
+                    update.close();
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return nUpdated;
+    }
+
+    /**
+     * 完了日時が指定日時より前の完了済みTodoアイテムを、古い順に1バッチ分アーカイブへ移す.
+     * 移した行はtodoItemから削除され、全文検索はアーカイブ側の索引へ移る.
+     * 長時間DBをロックしないよう、1回の呼び出しで1トランザクションのみ実行する.
+     *
+     * @param nClosedBefore 完了日時の上限（エポックミリ秒、この日時を含まない）
+     * @param nBatchSize 1回で移す最大件数（"_id IN (...)"の最大数まで）
+     * @return 移した件数（nBatchSize未満であれば、対象は残っていない）
+     */
+    public int archiveClosedTodoItems(
+            long nClosedBefore,
+            int nBatchSize)
+    {
+        long nStart = TodoDbMetrics.start();
+        long[] nPrimaryKeys;
+
+        mDb.beginTransaction();
+        try {
+            // 対象のPrimaryKeyを完了日時の古い順に取得（todoItem_state_closedの範囲検索）
+            Cursor cursor = mDb.query(
+                    STR_DATABASE_TABLE,                                             // テーブル名
+                    new String[]{STR_KEY_PRIMARY},                                  // 取得対象のColumn
+                    STR_KEY_STATE + " = ? AND " + STR_KEY_CLOSED_AT + " < ?",       // 取得するレコードの条件
+                    new String[]{STR_STATE_CLOSE, String.valueOf(nClosedBefore / 1000)},
+                    null, null,                                                     // groupby, Having句
+                    STR_KEY_CLOSED_AT,                                              // orderby句
+                    String.valueOf(Math.min(nBatchSize, N_IN_CHUNK_SIZE)));         // limit句
+            try {
+                nPrimaryKeys = new long[cursor.getCount()];
+                for (int nIndex = 0; cursor.moveToNext(); nIndex++) {
+                    nPrimaryKeys[nIndex] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // アーカイブへ複写し、todoItemから削除
+            if (nPrimaryKeys.length > 0) {
+                String strWhere = buildInClause(nPrimaryKeys, 0, nPrimaryKeys.length);
+                mDb.execSQL("INSERT INTO " + STR_ARCHIVE_TABLE
+                                + " (_id, title, body, date, state, closed_at, archived_at) "
+                                + "SELECT _id, title, body, date, state, closed_at, ? FROM " + STR_DATABASE_TABLE
+                                + " WHERE " + strWhere,
+                        new Object[]{System.currentTimeMillis() / 1000});
+                mDb.delete(STR_DATABASE_TABLE, strWhere, null);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        // 一覧・通知からは削除として扱う
+        if (nPrimaryKeys.length > 0) {
+            invalidateCache(nPrimaryKeys);
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_DELETE, nPrimaryKeys);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_ARCHIVE, nStart, nPrimaryKeys.length);
+        return nPrimaryKeys.length;
+    }
+
+    /**
+     * アーカイブしたTodoアイテムを、指定したPrimaryKeyより後から_id順に取得.
+     *
+     * @param nAfterKey このPrimaryKeyより後から取得（先頭からは0）
+     * @param nLimit 最大取得件数
+     * @return 取得したTodoアイテム（_id順）
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public List<TodoItem> fetchArchivedTodoItemsAfter(
+            long nAfterKey,
+            int nLimit) throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        List<TodoItem> items = toTodoItems(mDb.query(
+                STR_ARCHIVE_TABLE,                          // テーブル名
+                STR_TARGET_COLUMNS,                         // 取得対象のColumn
+                STR_KEY_PRIMARY + " > ?",                   // 取得するレコードの条件
+                new String[]{String.valueOf(nAfterKey)},
+                null, null,                                 // groupby, Having句
+                STR_KEY_PRIMARY,                            // orderby句
+                String.valueOf(nLimit)));                   // limit句
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, nStart, items.size());
+        return items;
+    }
+
+    /**
+     * アーカイブしたTodoアイテムを、同じPrimaryKeyのままtodoItemへ戻す.
+     * 戻したTodoアイテムの完了日時は現在日時とし、すぐに再びアーカイブされないようにする.
+     *
+     * @param nPrimaryKeys 復元対象のPrimaryKey
+     * @return 復元した件数
+     */
+    public int restoreTodoItems(long[] nPrimaryKeys)
+    {
+        int nRestored = 0;
+
+        // 復元対象なし
+        if (nPrimaryKeys == null || nPrimaryKeys.length == 0) {
+            return 0;
+        }
+
+        long nStart = TodoDbMetrics.start();
+        long nNow = System.currentTimeMillis() / 1000;
+
+        mDb.beginTransaction();
+        try {
+            for (int nFrom = 0; nFrom < nPrimaryKeys.length; nFrom += N_IN_CHUNK_SIZE) {
+                int nTo = Math.min(nFrom + N_IN_CHUNK_SIZE, nPrimaryKeys.length);
+                String strWhere = buildInClause(nPrimaryKeys, nFrom, nTo);
+
+                // todoItemへ複写し（全文検索はトリガーで索引される）、アーカイブから削除
+                mDb.execSQL("INSERT INTO " + STR_DATABASE_TABLE + " (_id, title, body, date, state, closed_at) "
+                                + "SELECT _id, title, body, date, state, "
+                                + "CASE WHEN state = '" + STR_STATE_CLOSE + "' THEN ? END FROM " + STR_ARCHIVE_TABLE
+                                + " WHERE " + strWhere,
+                        new Object[]{nNow});
+                nRestored += mDb.delete(STR_ARCHIVE_TABLE, strWhere, null);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+
+        // 変更を通知
+        if (nRestored > 0) {
+            invalidateCache(nPrimaryKeys);
+            TodoChangeNotifier.notifyChanged(TodoChangeNotifier.N_CHANGE_INSERT, nPrimaryKeys);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_ARCHIVE, nStart, nRestored);
+        return nRestored;
+    }
+
+    /**
+     * 空きページを少しずつ解放できるよう、DBの自動バキュームをINCREMENTALに切り替える.
+     * 既存のDBへの切り替えにはVACUUM（DB全体の再構築）が必要なため、バックグラウンドで一度だけ呼び出すこと.
+     *
+     * @return 切り替えた場合はtrue（既にINCREMENTALの場合はfalse）
+     * @throws SQLException 他の接続が使用中でVACUUMできない場合
+     */
+    public boolean enableIncrementalVacuum() throws SQLException
+    {
+        if (DatabaseUtils.longForQuery(mDb, "PRAGMA auto_vacuum", null) == N_AUTO_VACUUM_INCREMENTAL) {
+            return false;
+        }
+        mDb.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        mDb.execSQL("VACUUM");
+        return true;
+    }
+
+    /**
+     * 空きページを最大nMaxPagesだけDBファイルから解放する（PRAGMA incremental_vacuum）.
+     * 自動バキュームがINCREMENTALでない場合は何もしない.
+     *
+     * @param nMaxPages 解放する最大ページ数
+     * @return 解放したページ数
+     */
+    public int reclaimFreePages(int nMaxPages)
+    {
+        long nFreePages = DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null);
+        if (nFreePages == 0) {
+            return 0;
+        }
+
+        // 1ページ解放する毎に1回ステップが進むため、execSQLではなくカーソルで最後まで進める
+        Cursor cursor = mDb.rawQuery("PRAGMA incremental_vacuum(" + nMaxPages + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                // 結果の行はない
+            }
+        } finally {
+            cursor.close();
+        }
+        return (int) (nFreePages - DatabaseUtils.longForQuery(mDb, "PRAGMA freelist_count", null));
+    }
+
+    /**
+     * Todoアイテムの件数（未完了・完了・期限切れ・本日期限）を取得.
+     * トリガーで更新される集計テーブルを読むため、件数によらず一定の時間で取得できる.
+     * 日付が変わった後の最初の呼び出しでは、期限切れの件数を経過した日数分だけ進める.
+     *
+     * @return 件数の集計
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public TodoStats getStats() throws SQLException
+    {
+        long nStart = TodoDbMetrics.start();
+        String strToday = TodoDateCodec.format(TodoDateCodec.today());
+
+        TodoStats stats = readStats(strToday);
+        if (stats == null) {
+            // 日付が変わった（1文で更新するため、同時の書き込みと競合しない）
+            mDb.execSQL(DATABASE_ADVANCE_OVERDUE, new Object[]{strToday});
+            stats = readStats(strToday);
+        }
+
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_STATS, nStart, 1);
+        return stats;
+    }
+
+    /**
+     * 集計テーブルから件数を読み込む.
+     *
+     * @param strToday 本日（"yyyy/MM/dd"形式）
+     * @return 件数の集計。期限切れの件数が本日を境界としていない場合はnull
+     */
+    private TodoStats readStats(String strToday)
+    {
+        Cursor cursor = mDb.rawQuery(
+                "SELECT open, closed, overdue, overdue_before, "
+                        + "IFNULL((SELECT count FROM todoDueCount WHERE date = ?), 0) FROM todoStats",
+                new String[]{strToday});
+        try {
+            if (!cursor.moveToFirst() || !strToday.equals(cursor.getString(3))) {
+                return null;
+            }
+            return new TodoStats(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getInt(4));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 集計テーブルの件数が、todoItemを数え直した件数と一致するか確認する.
+     * 期限毎の件数も全て比較するため、全件を走査する. 確認中は書き込みを待たせる.
+     *
+     * @return 一致する場合はtrue
+     * @throws SQLException if note could not be found/retrieved
+     */
+    public boolean checkStats() throws SQLException
+    {
+        String strToday = TodoDateCodec.format(TodoDateCodec.today());
+
+        mDb.beginTransactionNonExclusive();
+        try {
+            mDb.execSQL(DATABASE_ADVANCE_OVERDUE, new Object[]{strToday});
+            TodoStats stats = readStats(strToday);
+
+            // todoItemから数え直す
+            TodoStats counted;
+            Cursor cursor = mDb.rawQuery(
+                    "SELECT (SELECT COUNT(*) FROM todoItem WHERE state = 'open'), "
+                            + "(SELECT COUNT(*) FROM todoItem WHERE state = 'close'), "
+                            + "(SELECT COUNT(*) FROM todoItem WHERE state = 'open' AND date < ?1), "
+                            + "(SELECT COUNT(*) FROM todoItem WHERE state = 'open' AND date = ?1)",
+                    new String[]{strToday});
+            try {
+                cursor.moveToFirst();
+                counted = new TodoStats(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2), cursor.getInt(3));
+            } finally {
+                cursor.close();
+            }
+
+            // 期限毎の件数の差分
+            long nMismatched = DatabaseUtils.longForQuery(mDb,
+                    "SELECT (SELECT COUNT(*) FROM ("
+                            + "SELECT date, count FROM todoDueCount "
+                            + "EXCEPT SELECT date, COUNT(*) FROM todoItem WHERE state = 'open' GROUP BY date)) "
+                            + "+ (SELECT COUNT(*) FROM ("
+                            + "SELECT date, COUNT(*) FROM todoItem WHERE state = 'open' GROUP BY date "
+                            + "EXCEPT SELECT date, count FROM todoDueCount))",
+                    null);
+
+            mDb.setTransactionSuccessful();
+            return counted.equals(stats) && nMismatched == 0;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * 集計テーブルをtodoItemから作り直す.
+     *
+     * @throws SQLException if note could not be updated
+     */
+    public void rebuildStats() throws SQLException
+    {
+        mDb.beginTransaction();
+        try {
+            rebuildStats(mDb, TodoDateCodec.format(TodoDateCodec.today()));
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * 集計テーブルをtodoItemから作り直す（トランザクション内で呼び出すこと）.
+     *
+     * @param db DBインスタンス
+     * @param strToday 本日（"yyyy/MM/dd"形式）
+     */
+    private static void rebuildStats(SQLiteDatabase db, String strToday)
+    {
+        db.execSQL("DELETE FROM todoDueCount");
+        db.execSQL("INSERT INTO todoDueCount (date, count) "
+                + "SELECT date, COUNT(*) FROM todoItem WHERE state = 'open' GROUP BY date");
+        db.execSQL("DELETE FROM todoStats");
+        db.execSQL("INSERT INTO todoStats (_id, open, closed, overdue, overdue_before) SELECT 0, "
+                        + "IFNULL((SELECT SUM(count) FROM todoDueCount), 0), "
+                        + "(SELECT COUNT(*) FROM todoItem WHERE state = 'close'), "
+                        + "IFNULL((SELECT SUM(count) FROM todoDueCount WHERE date < ?1), 0), ?1",
+                new Object[]{strToday});
+    }
+
+    /**
+     * DB Createクラス
+     *
+     * @author 清兼
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        /**
+         * メンバ変数定義（sDbHelpersのロック内でのみ参照）
+         */
+        private final String mPath;     // DBファイルのパス
+        private int mRefCount;          // 共有しているTodoDbAdapterの数
+
+        /**
+         * コンストラクタ
+         *
+         * @param context   コンテキスト
+         * @param strPath   DBファイルのパス
+         */
+        DatabaseHelper(Context context, String strPath)
+        {
+            super(  context,                // コンテキスト
+                    STR_DATABASE_NAME,      // DB名
+                    null,                   // ?
+                    N_DATABASE_VERSION);    // バージョン
+            this.mPath = strPath;
+
+            // 書き込み中のトランザクションがあっても、他のスレッドの読み込みを待たせない
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        /**
+         * DB Create.
+         * DBが存在しない状態でDBをOpenしようとする場合に起動.
+         *
+         * @param db    新規作成したDBインスタンス
+         */
+        @Override
         public void onCreate(SQLiteDatabase db)
         {
+            // 初期スキーマを作成し、最新バージョンまで移行
             db.execSQL(DATABASE_CREATE);
+            TodoDbMigration.migrate(db, 1, N_DATABASE_VERSION, MIGRATIONS);
         }
 
         /**
          * コンストラクタで渡されたDBのバージョンと、実際に存在するDBのバージョンが異なる場合、
-         * テーブルの再構成を行う.
+         * 既存のデータを残したままテーブルの再構成を行う.
          *
          * @param db            DBインスタンス
          * @param nOldVersion    旧バージョン番号
@@ -316,18 +2006,133 @@ public class    TodoDbAdapter {
             // ログ出力
             Log.w(STR_CLASS_NAME,                      // クラス名
                     "旧DBバージョン " + nOldVersion +    // 出力文字列
-                            " 新DBバージョン " + nNewVersion + ", 旧データを全削除");
+                            " 新DBバージョン " + nNewVersion);
 
-            // テーブルの削除
-            db.execSQL(DATABASE_DROP);
+            // 未適用の移行ステップを順番に適用
+            TodoDbMigration.migrate(db, nOldVersion, nNewVersion, MIGRATIONS);
+        }
+    }
 
-            // DB Create
-            onCreate(db);
+    /**
+     * カーソルの現在行からTodoアイテムを生成する.
+     * 取得対象に含まれないColumnはnullとなる.
+     *
+     * @param cursor DBカーソル
+     * @return Todoアイテム
+     */
+    public static TodoItem toTodoItem(Cursor cursor)
+    {
+        return new TodoItem(
+                cursor.getLong(cursor.getColumnIndexOrThrow(STR_KEY_PRIMARY)),
+                getStringOrNull(cursor, STR_KEY_TITLE),     // Todoアイテムのタイトル
+                getStringOrNull(cursor, STR_KEY_BODY),      // Todoアイテムの内容
+                getStringOrNull(cursor, STR_KEY_DATE),      // Todo実施期限
+                getStringOrNull(cursor, STR_KEY_STATE));    // Todo状態
+    }
+
+    /**
+     * カーソルの全行からTodoアイテムを生成し、カーソルを閉じる.
+     *
+     * @param cursor DBカーソル
+     * @return Todoアイテム
+     */
+    public static List<TodoItem> toTodoItems(Cursor cursor)
+    {
+        try {
+            List<TodoItem> items = new ArrayList<TodoItem>(cursor.getCount());
+            if (cursor.moveToFirst()) {
+                do {
+                    items.add(toTodoItem(cursor));
+                } while (cursor.moveToNext());
+            }
+            return items;
+        } finally {
+            cursor.close();
         }
     }
 
+    /**
+     * カーソルの現在行から文字列を取得する.
+     *
+     * @param cursor DBカーソル
+     * @param strColumn Column名
+     * @return 値。Columnが取得対象に含まれない場合はnull
+     */
+    private static String getStringOrNull(Cursor cursor, String strColumn)
+    {
+        int nIndex = cursor.getColumnIndex(strColumn);
+        return (nIndex < 0) ? null : cursor.getString(nIndex);
+    }
+
+    /**
+     * "yyyy/M/d"形式の日付を"yyyy/MM/dd"形式に変換する.
+     * 形式が異なる場合は変換せずにそのまま返す.
+     *
+     * @param strDate 日付
+     * @return 変換後の日付
+     */
+    static String normalizeDate(String strDate)
+    {
+        int nDate = TodoDateCodec.parse(strDate);
+        return (nDate == TodoDateCodec.N_NO_DATE) ? strDate : TodoDateCodec.format(nDate);
+    }
+
+    /**
+     * 並び順に対応する並べ替えのキーを取得.
+     *
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @return 並べ替えのキー。登録順の場合はnull
+     * @throws IllegalArgumentException 未定義の並び順の場合
+     */
+    private static String getSortKey(int nSortOrder)
+    {
+        if (nSortOrder < 0 || nSortOrder >= STR_SORT_KEYS.length) {
+            throw new IllegalArgumentException("unknown sort order: " + nSortOrder);
+        }
+        return STR_SORT_KEYS[nSortOrder];
+    }
+
+    /**
+     * 並び順に対応するorderby句を生成する（同じキーは_id順）.
+     *
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @return orderby句
+     */
+    private static String getSortOrderBy(int nSortOrder)
+    {
+        String strSortKey = getSortKey(nSortOrder);
+        return (strSortKey == null) ? STR_KEY_PRIMARY : strSortKey + ", " + STR_KEY_PRIMARY;
+    }
+
+    /**
+     * PrimaryKey配列の指定範囲から"_id IN (...)"のWHERE句を生成する.
+     * PrimaryKeyは数値のため、バインド変数を使わずに直接埋め込む.
+     *
+     * @param nPrimaryKey PrimaryKey配列
+     * @param nFrom 開始インデックス（含む）
+     * @param nTo 終了インデックス（含まない）
+     * @return WHERE句
+     */
+    private static String buildInClause(
+            long nPrimaryKey[],
+            int nFrom,
+            int nTo)
+    {
+        StringBuilder sb = new StringBuilder(STR_KEY_PRIMARY.length() + 8 + (nTo - nFrom) * 8);
+        sb.append(STR_KEY_PRIMARY).append(" IN (");
+        for (int nIndex = nFrom; nIndex < nTo; nIndex++) {
+            if (nIndex > nFrom) {
+                sb.append(',');
+            }
+            sb.append(nPrimaryKey[nIndex]);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
     /**
      * Columnと保存する値をセットで設定する.
+     * nullの値は設定しない.
      *
      * @param strTitle Todoアイテムのタイトル
      * @param strBody Todoアイテムの内容
@@ -343,10 +2148,18 @@ public class    TodoDbAdapter {
     )
     {
         ContentValues Dst = new ContentValues();
-        Dst.put(STR_KEY_TITLE, strTitle); // Todoアイテムのタイトル
-        Dst.put(STR_KEY_BODY , strBody);  // Todoアイテムの内容
-        Dst.put(STR_KEY_DATE , strDate);  // Todo実施期限
-        Dst.put(STR_KEY_STATE, strState); // Todo状態
+        if (strTitle != null) {
+            Dst.put(STR_KEY_TITLE, strTitle); // Todoアイテムのタイトル
+        }
+        if (strBody != null) {
+            Dst.put(STR_KEY_BODY , strBody);  // Todoアイテムの内容
+        }
+        if (strDate != null) {
+            Dst.put(STR_KEY_DATE , strDate);  // Todo実施期限
+        }
+        if (strState != null) {
+            Dst.put(STR_KEY_STATE, strState); // Todo状態
+        }
         return Dst;
     }
 }
@@ -0,0 +1,281 @@
+package com.example.yoshiki.todo;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DBアクセスの操作毎の所要時間・件数を集計するクラス.
+ * 所要時間と件数は2のべき乗毎の区間のヒストグラムで保持し、閾値を超えた操作はログへ出力する.
+ * 集計はロックを使わずに行い、無効時は{@link #start()}での判定のみで計測しない.
+ *
+ * 集計結果の取得例：
+ *  adb shell dumpsys activity com.example.yoshiki.todo/.TodoApp
+ * @author 清兼
+ */
+public final class TodoDbMetrics {
+
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoDbMetrics";
+
+    /**
+     * 操作種別定義
+     */
+    public static final int N_OP_CREATE         = 0;    // 1件登録
+    public static final int N_OP_CREATE_BATCH   = 1;    // 一括登録
+    public static final int N_OP_FETCH          = 2;    // PrimaryKeyでの取得
+    public static final int N_OP_FETCH_LIST     = 3;    // Stateでの取得（全件・ページ）
+    public static final int N_OP_SEARCH         = 4;    // 全文検索
+    public static final int N_OP_UPDATE         = 5;    // 更新
+    public static final int N_OP_DELETE         = 6;    // 削除
+    public static final int N_OP_ARCHIVE        = 7;    // アーカイブへの移動・復元
+    public static final int N_OP_STATS          = 8;    // 件数の集計の取得
+
+    /**
+     * 操作名（操作種別の順）
+     */
+    private static final String[] STR_OP_NAMES = {
+            "create", "createBatch", "fetch", "fetchList", "search", "update", "delete", "archive", "stats"};
+
+    /**
+     * ヒストグラムの区間数.
+     * 区間nは[2^(n-1), 2^n)（所要時間はマイクロ秒）で、最後の区間は上限なし.
+     */
+    private static final int N_OPS              = STR_OP_NAMES.length;
+    private static final int N_LATENCY_BUCKETS  = 24;   // 〜約8秒
+    private static final int N_ROW_BUCKETS      = 18;   // 〜約13万件
+
+    /**
+     * 低速な操作としてログへ出力する閾値の初期値（ミリ秒）
+     */
+    private static final long N_DEFAULT_SLOW_THRESHOLD_MS = 100;
+
+    /**
+     * 集計設定
+     */
+    private static volatile boolean sEnabled;
+    private static volatile long sSlowThresholdNs = TimeUnit.MILLISECONDS.toNanos(N_DEFAULT_SLOW_THRESHOLD_MS);
+
+    /**
+     * 集計値（操作種別×区間の順）
+     */
+    private static final AtomicLongArray sLatencyBuckets = new AtomicLongArray(N_OPS * N_LATENCY_BUCKETS);
+    private static final AtomicLongArray sRowBuckets = new AtomicLongArray(N_OPS * N_ROW_BUCKETS);
+    private static final AtomicLongArray sCounts = new AtomicLongArray(N_OPS);
+    private static final AtomicLongArray sTotalNs = new AtomicLongArray(N_OPS);
+    private static final AtomicLongArray sMaxNs = new AtomicLongArray(N_OPS);
+    private static final AtomicLongArray sTotalRows = new AtomicLongArray(N_OPS);
+    private static final AtomicLongArray sSlowCounts = new AtomicLongArray(N_OPS);
+
+    private TodoDbMetrics()
+    {
+    }
+
+    /**
+     * 集計の有効・無効と、低速な操作の閾値を設定する.
+     *
+     * @param bEnabled 集計する場合はtrue
+     * @param nSlowThresholdMs ログへ出力する所要時間の閾値（ミリ秒）
+     */
+    public static void configure(boolean bEnabled, long nSlowThresholdMs)
+    {
+        sSlowThresholdNs = TimeUnit.MILLISECONDS.toNanos(nSlowThresholdMs);
+        sEnabled = bEnabled;
+    }
+
+    /**
+     * 集計が有効かを取得.
+     *
+     * @return 有効な場合はtrue
+     */
+    public static boolean isEnabled()
+    {
+        return sEnabled;
+    }
+
+    /**
+     * 操作の計測を開始する.
+     *
+     * @return 開始時刻（ナノ秒）。集計が無効な場合は0
+     */
+    public static long start()
+    {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 操作の所要時間と件数を集計する.
+     *
+     * @param nOp 操作種別
+     * @param nStart {@link #start()}の戻り値（0の場合は何もしない）
+     * @param nRows 操作したTodoアイテムの件数
+     */
+    public static void record(int nOp, long nStart, int nRows)
+    {
+        if (nStart == 0) {
+            return;
+        }
+        long nElapsedNs = System.nanoTime() - nStart;
+
+        sLatencyBuckets.incrementAndGet(nOp * N_LATENCY_BUCKETS
+                + bucketOf(TimeUnit.NANOSECONDS.toMicros(nElapsedNs), N_LATENCY_BUCKETS));
+        sRowBuckets.incrementAndGet(nOp * N_ROW_BUCKETS + bucketOf(nRows, N_ROW_BUCKETS));
+        sCounts.incrementAndGet(nOp);
+        sTotalNs.addAndGet(nOp, nElapsedNs);
+        sTotalRows.addAndGet(nOp, nRows);
+
+        // 最大値を更新
+        long nMax;
+        do {
+            nMax = sMaxNs.get(nOp);
+        } while (nElapsedNs > nMax && !sMaxNs.compareAndSet(nOp, nMax, nElapsedNs));
+
+        // 低速な操作をログへ出力
+        if (nElapsedNs >= sSlowThresholdNs) {
+            sSlowCounts.incrementAndGet(nOp);
+            Log.w(STR_CLASS_NAME, "slow " + STR_OP_NAMES[nOp]
+                    + " " + TimeUnit.NANOSECONDS.toMillis(nElapsedNs) + "ms rows=" + nRows);
+        }
+    }
+
+    /**
+     * 集計値を全て消去する.
+     */
+    public static void reset()
+    {
+        for (int nIndex = 0; nIndex < sLatencyBuckets.length(); nIndex++) {
+            sLatencyBuckets.set(nIndex, 0);
+        }
+        for (int nIndex = 0; nIndex < sRowBuckets.length(); nIndex++) {
+            sRowBuckets.set(nIndex, 0);
+        }
+        for (int nOp = 0; nOp < N_OPS; nOp++) {
+            sCounts.set(nOp, 0);
+            sTotalNs.set(nOp, 0);
+            sMaxNs.set(nOp, 0);
+            sTotalRows.set(nOp, 0);
+            sSlowCounts.set(nOp, 0);
+        }
+    }
+
+    /**
+     * 操作の実行回数を取得.
+     *
+     * @param nOp 操作種別
+     * @return 実行回数
+     */
+    public static long getCount(int nOp)
+    {
+        return sCounts.get(nOp);
+    }
+
+    /**
+     * 操作したTodoアイテムの合計件数を取得.
+     *
+     * @param nOp 操作種別
+     * @return 合計件数
+     */
+    public static long getTotalRows(int nOp)
+    {
+        return sTotalRows.get(nOp);
+    }
+
+    /**
+     * 閾値を超えた操作の回数を取得.
+     *
+     * @param nOp 操作種別
+     * @return 回数
+     */
+    public static long getSlowCount(int nOp)
+    {
+        return sSlowCounts.get(nOp);
+    }
+
+    /**
+     * 所要時間のパーセンタイル値を、ヒストグラムの区間の上限で近似して取得.
+     *
+     * @param nOp 操作種別
+     * @param nPercentile パーセンタイル（0〜100）
+     * @return 所要時間（マイクロ秒）。未計測の場合は0
+     */
+    public static long getLatencyPercentileMicros(int nOp, double nPercentile)
+    {
+        long nCount = 0;
+        for (int nBucket = 0; nBucket < N_LATENCY_BUCKETS; nBucket++) {
+            nCount += sLatencyBuckets.get(nOp * N_LATENCY_BUCKETS + nBucket);
+        }
+        if (nCount == 0) {
+            return 0;
+        }
+
+        long nTarget = (long) Math.ceil(nCount * nPercentile / 100);
+        long nSum = 0;
+        for (int nBucket = 0; nBucket < N_LATENCY_BUCKETS; nBucket++) {
+            nSum += sLatencyBuckets.get(nOp * N_LATENCY_BUCKETS + nBucket);
+            if (nSum >= Math.max(nTarget, 1)) {
+                return (nBucket == N_LATENCY_BUCKETS - 1)
+                        ? TimeUnit.NANOSECONDS.toMicros(sMaxNs.get(nOp)) : (1L << nBucket);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMicros(sMaxNs.get(nOp));
+    }
+
+    /**
+     * 集計結果を出力する.
+     *
+     * @param writer 出力先
+     * @param strPrefix 各行の先頭に付ける文字列
+     */
+    public static void dump(PrintWriter writer, String strPrefix)
+    {
+        writer.print(strPrefix);
+        writer.println("TodoDbMetrics enabled=" + sEnabled
+                + " slowThresholdMs=" + TimeUnit.NANOSECONDS.toMillis(sSlowThresholdNs));
+        for (int nOp = 0; nOp < N_OPS; nOp++) {
+            long nCount = sCounts.get(nOp);
+            if (nCount == 0) {
+                continue;
+            }
+            writer.print(strPrefix);
+            writer.println(String.format(Locale.US,
+                    "  %-12s count=%d avgUs=%d p50Us=%d p90Us=%d p99Us=%d maxUs=%d rows=%d slow=%d",
+                    STR_OP_NAMES[nOp], nCount,
+                    TimeUnit.NANOSECONDS.toMicros(sTotalNs.get(nOp) / nCount),
+                    getLatencyPercentileMicros(nOp, 50),
+                    getLatencyPercentileMicros(nOp, 90),
+                    getLatencyPercentileMicros(nOp, 99),
+                    TimeUnit.NANOSECONDS.toMicros(sMaxNs.get(nOp)),
+                    sTotalRows.get(nOp),
+                    sSlowCounts.get(nOp)));
+
+            // 件数のヒストグラム（0件の区間は省略）
+            StringBuilder sb = new StringBuilder(strPrefix).append("    rows");
+            for (int nBucket = 0; nBucket < N_ROW_BUCKETS; nBucket++) {
+                long nBucketCount = sRowBuckets.get(nOp * N_ROW_BUCKETS + nBucket);
+                if (nBucketCount > 0) {
+                    sb.append(" <").append(1L << nBucket).append(':').append(nBucketCount);
+                }
+            }
+            writer.println(sb.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * 値が含まれるヒストグラムの区間を求める.
+     *
+     * @param nValue 値
+     * @param nBuckets 区間数
+     * @return 区間（0〜nBuckets-1）
+     */
+    private static int bucketOf(long nValue, int nBuckets)
+    {
+        int nBucket = (nValue <= 0) ? 0 : 64 - Long.numberOfLeadingZeros(nValue);
+        return Math.min(nBucket, nBuckets - 1);
+    }
+}
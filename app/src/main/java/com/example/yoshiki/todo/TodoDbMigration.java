@@ -0,0 +1,98 @@
+package com.example.yoshiki.todo;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * DBスキーマの移行処理1ステップ分を表すクラス.
+ * ステップはバージョン順に1つずつ実行され、ステップ毎にコミットとDBバージョンの更新を行う.
+ * 途中で中断された場合は、次回のDBオープン時に未完了のステップから再開する.
+ * @author 清兼
+ */
+public abstract class TodoDbMigration {
+
+    /**
+     * クラス名定義
+     */
+    private static final String STR_CLASS_NAME = "TodoDbMigration";
+
+    /**
+     * メンバ変数定義
+     */
+    private final int mVersion;     // 本ステップ適用後のDBバージョン
+
+    /**
+     * コンストラクタ
+     *
+     * @param nVersion 本ステップ適用後のDBバージョン
+     */
+    protected TodoDbMigration(int nVersion)
+    {
+        this.mVersion = nVersion;
+    }
+
+    /**
+     * 本ステップ適用後のDBバージョンを取得.
+     *
+     * @return DBバージョン
+     */
+    public int getVersion()
+    {
+        return mVersion;
+    }
+
+    /**
+     * 移行処理を実施する.
+     * 大きなテーブルを書き換える場合は、一定件数毎に{@link #commitBatch}を呼び出すこと.
+     * その場合、途中から再実行されても結果が変わらない処理にすること.
+     *
+     * @param db DBインスタンス（トランザクション中）
+     */
+    protected abstract void migrate(SQLiteDatabase db);
+
+    /**
+     * ここまでの変更をコミットし、新しいトランザクションを開始する.
+     * SQLiteOpenHelperが開始したトランザクション内で呼び出されることを前提とする.
+     *
+     * @param db DBインスタンス（トランザクション中）
+     */
+    protected static void commitBatch(SQLiteDatabase db)
+    {
+        db.setTransactionSuccessful();
+        db.endTransaction();
+        db.beginTransaction();
+    }
+
+    /**
+     * 旧バージョンから新バージョンまで、移行ステップを順番に適用する.
+     * SQLiteOpenHelperのonCreate/onUpgradeから呼び出す.
+     *
+     * @param db DBインスタンス（トランザクション中）
+     * @param nOldVersion 旧バージョン番号
+     * @param nNewVersion 新バージョン番号
+     * @param migrations 移行ステップ（バージョンの昇順）
+     */
+    public static void migrate(
+            SQLiteDatabase db,
+            int nOldVersion,
+            int nNewVersion,
+            TodoDbMigration[] migrations)
+    {
+        for (TodoDbMigration migration : migrations) {
+            int nVersion = migration.getVersion();
+
+            // 適用済み、または対象外のステップは飛ばす
+            if (nVersion <= nOldVersion || nVersion > nNewVersion) {
+                continue;
+            }
+
+            // ログ出力
+            Log.i(STR_CLASS_NAME, "DBバージョン " + nVersion + " へ移行");
+
+            // ステップを適用し、完了したバージョンを記録してコミット
+            migration.migrate(db);
+            db.setVersion(nVersion);
+            commitBatch(db);
+        }
+    }
+}
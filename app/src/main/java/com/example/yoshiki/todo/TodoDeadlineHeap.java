@@ -0,0 +1,258 @@
+package com.example.yoshiki.todo;
+
+/**
+ * 期限の早い順にTodoアイテムを取り出す、容量固定の二分ヒープ（最小ヒープ）.
+ * 期限（TodoDateCodecの整数）とPrimaryKeyを配列で保持し、期限, PrimaryKeyの順に並べる.
+ * 容量を超えて追加した場合は最も遅い期限を取り除くため、保持件数は全体の件数によらず一定以下となる.
+ * @author 清兼
+ */
+public final class TodoDeadlineHeap {
+
+    /**
+     * メンバ変数定義
+     */
+    private final int[] mDates;     // 期限（ヒープ順）
+    private final long[] mKeys;     // PrimaryKey（mDatesと同じ位置）
+    private int mSize;              // 保持件数
+
+    /**
+     * コンストラクタ
+     *
+     * @param nCapacity 最大保持件数
+     */
+    public TodoDeadlineHeap(int nCapacity)
+    {
+        if (nCapacity <= 0) {
+            throw new IllegalArgumentException("nCapacity: " + nCapacity);
+        }
+        mDates = new int[nCapacity];
+        mKeys = new long[nCapacity];
+    }
+
+    /**
+     * 保持件数を取得.
+     */
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * 最大保持件数を取得.
+     */
+    public int capacity()
+    {
+        return mDates.length;
+    }
+
+    /**
+     * 空かを判定.
+     */
+    public boolean isEmpty()
+    {
+        return mSize == 0;
+    }
+
+    /**
+     * 全て取り除く.
+     */
+    public void clear()
+    {
+        mSize = 0;
+    }
+
+    /**
+     * 最も早い期限を取得.
+     *
+     * @return 期限
+     * @throws IllegalStateException 空の場合
+     */
+    public int peekDate()
+    {
+        checkNotEmpty();
+        return mDates[0];
+    }
+
+    /**
+     * 最も早い期限のPrimaryKeyを取得.
+     *
+     * @return PrimaryKey
+     * @throws IllegalStateException 空の場合
+     */
+    public long peekPrimaryKey()
+    {
+        checkNotEmpty();
+        return mKeys[0];
+    }
+
+    /**
+     * 最も早い期限を取り除く.
+     *
+     * @return 取り除いたPrimaryKey
+     * @throws IllegalStateException 空の場合
+     */
+    public long poll()
+    {
+        checkNotEmpty();
+        long nPrimaryKey = mKeys[0];
+        removeAt(0);
+        return nPrimaryKey;
+    }
+
+    /**
+     * Todoアイテムの期限を追加する（同じPrimaryKeyが既にある場合は呼び出し側で取り除くこと）.
+     * 容量に達している場合は、追加した中で最も遅い期限を取り除く.
+     *
+     * @param nDate 期限
+     * @param nPrimaryKey PrimaryKey
+     * @return 容量超過で要素を取り除いた（または追加しなかった）場合はtrue
+     */
+    public boolean offer(int nDate, long nPrimaryKey)
+    {
+        boolean bEvicted = false;
+        if (mSize == mDates.length) {
+            int nLast = indexOfLast();
+            if (compare(nDate, nPrimaryKey, mDates[nLast], mKeys[nLast]) >= 0) {
+                // 追加する要素が最も遅い
+                return true;
+            }
+            removeAt(nLast);
+            bEvicted = true;
+        }
+
+        mDates[mSize] = nDate;
+        mKeys[mSize] = nPrimaryKey;
+        siftUp(mSize++);
+        return bEvicted;
+    }
+
+    /**
+     * 指定したPrimaryKeyの要素を取り除く.
+     *
+     * @param nPrimaryKey PrimaryKey
+     * @return 取り除いた場合はtrue
+     */
+    public boolean remove(long nPrimaryKey)
+    {
+        for (int nIndex = 0; nIndex < mSize; nIndex++) {
+            if (mKeys[nIndex] == nPrimaryKey) {
+                removeAt(nIndex);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 最も遅い期限を取得.
+     *
+     * @return 期限
+     * @throws IllegalStateException 空の場合
+     */
+    public int lastDate()
+    {
+        checkNotEmpty();
+        return mDates[indexOfLast()];
+    }
+
+    /**
+     * 最も遅い期限のPrimaryKeyを取得.
+     *
+     * @return PrimaryKey
+     * @throws IllegalStateException 空の場合
+     */
+    public long lastPrimaryKey()
+    {
+        checkNotEmpty();
+        return mKeys[indexOfLast()];
+    }
+
+    /**
+     * 期限, PrimaryKeyの順に比較する.
+     *
+     * @return lhsが早い場合は負、同じ場合は0、遅い場合は正
+     */
+    static int compare(int nLhsDate, long nLhsKey, int nRhsDate, long nRhsKey)
+    {
+        if (nLhsDate != nRhsDate) {
+            return (nLhsDate < nRhsDate) ? -1 : 1;
+        }
+        return (nLhsKey < nRhsKey) ? -1 : (nLhsKey == nRhsKey ? 0 : 1);
+    }
+
+    /**
+     * 最も遅い要素の位置を求める（最も遅い要素は葉のいずれか）.
+     */
+    private int indexOfLast()
+    {
+        int nLast = mSize / 2;
+        for (int nIndex = nLast + 1; nIndex < mSize; nIndex++) {
+            if (compare(mDates[nIndex], mKeys[nIndex], mDates[nLast], mKeys[nLast]) > 0) {
+                nLast = nIndex;
+            }
+        }
+        return nLast;
+    }
+
+    /**
+     * 指定位置の要素を取り除き、末尾の要素で埋める.
+     */
+    private void removeAt(int nIndex)
+    {
+        mSize--;
+        if (nIndex == mSize) {
+            return;
+        }
+        mDates[nIndex] = mDates[mSize];
+        mKeys[nIndex] = mKeys[mSize];
+        siftDown(nIndex);
+        siftUp(nIndex);
+    }
+
+    private void siftUp(int nIndex)
+    {
+        int nDate = mDates[nIndex];
+        long nKey = mKeys[nIndex];
+        while (nIndex > 0) {
+            int nParent = (nIndex - 1) / 2;
+            if (compare(nDate, nKey, mDates[nParent], mKeys[nParent]) >= 0) {
+                break;
+            }
+            mDates[nIndex] = mDates[nParent];
+            mKeys[nIndex] = mKeys[nParent];
+            nIndex = nParent;
+        }
+        mDates[nIndex] = nDate;
+        mKeys[nIndex] = nKey;
+    }
+
+    private void siftDown(int nIndex)
+    {
+        int nDate = mDates[nIndex];
+        long nKey = mKeys[nIndex];
+        while (true) {
+            int nChild = nIndex * 2 + 1;
+            if (nChild >= mSize) {
+                break;
+            }
+            if (nChild + 1 < mSize && compare(mDates[nChild + 1], mKeys[nChild + 1], mDates[nChild], mKeys[nChild]) < 0) {
+                nChild++;
+            }
+            if (compare(mDates[nChild], mKeys[nChild], nDate, nKey) >= 0) {
+                break;
+            }
+            mDates[nIndex] = mDates[nChild];
+            mKeys[nIndex] = mKeys[nChild];
+            nIndex = nChild;
+        }
+        mDates[nIndex] = nDate;
+        mKeys[nIndex] = nKey;
+    }
+
+    private void checkNotEmpty()
+    {
+        if (mSize == 0) {
+            throw new IllegalStateException("empty");
+        }
+    }
+}
@@ -2,8 +2,8 @@ package com.example.yoshiki.todo;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
 import android.provider.ContactsContract;
 import android.text.method.MultiTapKeyListener;
 import android.view.View;
@@ -12,10 +12,11 @@ import android.widget.DatePicker;
 import android.widget.EditText;
 import android.text.format.Time;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * TodoItem編集用のクラス.
@@ -23,6 +24,22 @@ import java.util.Date;
  */
 public class TodoEdit extends Activity {
 
+    /**
+     * 変更をまとめてDBへ保存するまでの待ち時間（ミリ秒）
+     */
+    private static final long N_SAVE_DELAY_MS = 1000;
+
+    /**
+     * Bundleに新規作成の書き込みを依頼済みかを保存するキー
+     */
+    private static final String STR_KEY_CREATE_QUEUED = "create_queued";
+
+    /**
+     * DBへの書き込み用のバックグラウンドスレッド.
+     * Activity終了後も書き込みを完了させるため、プロセス全体で共有し、書き込み順序を保つ.
+     */
+    private static final ExecutorService sWriteExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * メンバ定義
      */
@@ -30,8 +47,23 @@ public class TodoEdit extends Activity {
     private EditText mBodyText;         // Todoアイテムの内容
     private Button mDate;               // Todo実施期限
     private Long mPrimaryKey;           // PrimaryKey
-    private TodoDbAdapter mDbHelper;    // DBアクセスクラスのインスタンス
+    private TodoRepository mDbHelper;   // Todoアイテムの保存先
     private String mState = TodoDbAdapter.STR_STATE_OPEN;    // ToDoアイテムの状態
+    private boolean mPopulated;         // Viewへの表示済みフラグ
+    private boolean mCreateQueued;      // 新規作成の書き込みを依頼済みか
+    private Future<?> mCreateFuture;    // 新規作成の書き込み（採番の完了待ち用）
+    private volatile long mWrittenKey;  // 書き込みスレッドで採番されたPrimaryKey
+    private String mSavedTitle;         // DBへ保存済み（または保存依頼済み）のタイトル
+    private String mSavedBody;          // DBへ保存済み（または保存依頼済み）の内容
+    private String mSavedDate;          // DBへ保存済み（または保存依頼済み）の実施期限
+    private String mSavedState;         // DBへ保存済み（または保存依頼済み）の状態
+    private final Handler mHandler = new Handler();         // 書き込みの遅延実行用
+    private final Runnable mSaveRunnable = new Runnable() { // 遅延実行する書き込み
+        @Override
+        public void run() {
+            saveState();
+        }
+    };
 
     /**
      * TodoItem編集画面を表示.
@@ -43,7 +75,7 @@ public class TodoEdit extends Activity {
         super.onCreate(savedInstanceState);
 
         // DBアクセスクラスのインスタンスの生成
-        mDbHelper = new TodoDbAdapter(this);
+        mDbHelper = TodoRepositoryFactory.create(this);
 
         // DBを開く
         mDbHelper.open();
@@ -66,9 +98,12 @@ public class TodoEdit extends Activity {
         //******************************************
         // Bundleから取得
         mPrimaryKey = null;
-        if (savedInstanceState != null) {
+        if (savedInstanceState != null && savedInstanceState.containsKey(TodoDbAdapter.STR_KEY_PRIMARY)) {
             mPrimaryKey = savedInstanceState.getLong(TodoDbAdapter.STR_KEY_PRIMARY);
         }
+        if (savedInstanceState != null) {
+            mCreateQueued = savedInstanceState.getBoolean(STR_KEY_CREATE_QUEUED);
+        }
 
         // Intentから取得
         if (mPrimaryKey == null) {
@@ -93,7 +128,7 @@ public class TodoEdit extends Activity {
                 Intent i = new Intent(TodoEdit.this, TodoDate.class);
 
                 // ボタンに表示している日付を設定
-                i.putExtra(TodoDate.STR_KEY_DATE, dateButton.getText());
+                i.putExtra(TodoDate.STR_KEY_DATE, TodoDateCodec.parse(dateButton.getText()));
 
                 // Activity起動
                 startActivityForResult(
@@ -128,76 +163,195 @@ public class TodoEdit extends Activity {
 
     /**
      * DBから取得した情報をViewに表示.
-     *
+     * 表示後は画面上の値を正とするため、初回のみ実施する.
      */
     private void populateFields() {
+        if (mPopulated) {
+            return;
+        }
+        mPopulated = true;
+
         // PrimaryKeyがある場合
         if (mPrimaryKey != null) {
-            // DBからTodoアイテムを取得
-            Cursor TodoItem = mDbHelper.fetchToDoItemByPrimaryKey(mPrimaryKey);
-
-            // カーソル制御をシステムへ移譲
-            startManagingCursor(TodoItem);
-
-            // Todoアイテムのインデックスを取得
-            int Title = TodoItem.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_TITLE);
-            int Date  = TodoItem.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_DATE);
-            int Body  = TodoItem.getColumnIndexOrThrow(TodoDbAdapter.STR_KEY_BODY);
+            // Todoアイテムを取得
+            TodoItem item = mDbHelper.fetchTodoItem(mPrimaryKey);
+            if (item == null) {
+                // 削除済み
+                return;
+            }
 
             // Viewへ設定
-            mTitleText.setText(TodoItem.getString(Title));
-            mDate.setText(TodoItem.getString(Date));
-            mBodyText.setText(TodoItem.getString(Body));
+            mTitleText.setText(item.getTitle());
+            mDate.setText(item.getDate());
+            mBodyText.setText(item.getBody());
+            mState = item.getState();
+            mCreateQueued = true;
 
         } else {
             // Todo実施期限に本日の日付を設定
-            DateFormat df = new SimpleDateFormat("yyyy/MM/dd");
-            Date date = new Date(System.currentTimeMillis());
-            mDate.setText(df.format(date));
+            mDate.setText(TodoDateCodec.format(TodoDateCodec.today()));
         }
+
+        // 表示した値を保存済みの値として、以降の変更を検出する
+        mSavedTitle = mTitleText.getText().toString();
+        mSavedBody  = mBodyText.getText().toString();
+        mSavedDate  = mDate.getText().toString();
+        mSavedState = mState;
     }
 
     @Override
     protected void onPause() {
         super.onPause();
 
-        // onResumeに備えて
+        // 待機中の書き込みを取り消し、すぐに保存する
+        mHandler.removeCallbacks(mSaveRunnable);
         saveState();
     }
 
+    @Override
+    protected void onDestroy() {
+        // 書き込み待ちの保存が終わった後に閉じる
+        final TodoRepository repository = mDbHelper;
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                repository.close();
+            }
+        });
+
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         populateFields();
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        // 待機中の書き込みがあれば、先に依頼する
+        mHandler.removeCallbacks(mSaveRunnable);
+        saveState();
+
+        // 新規作成の採番がUIスレッドへ届いていない場合は、書き込みスレッドでの採番を待つ
+        // （PrimaryKeyを保存しないと、再生成後の編集で同じTodoアイテムを再度作成してしまう）
+        Long primaryKey = mPrimaryKey;
+        if (primaryKey == null && mCreateFuture != null) {
+            awaitCreate();
+            if (mWrittenKey > 0) {
+                primaryKey = mWrittenKey;
+            }
+        }
+
+        // 作成済みのTodoアイテムを再表示できるよう、PrimaryKeyを保存
+        if (primaryKey != null) {
+            outState.putLong(TodoDbAdapter.STR_KEY_PRIMARY, primaryKey);
+        }
+        outState.putBoolean(STR_KEY_CREATE_QUEUED, mCreateQueued);
+    }
+
     /**
-     * TodoItemの内容をDBへ保存.
-     *
+     * 依頼済みの新規作成の書き込みが完了するまで待つ.
+     * 書き込みスレッドは依頼順に処理するため、待つのは作成とそれ以前の書き込みのみ.
+     */
+    private void awaitCreate() {
+        try {
+            mCreateFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 作成に失敗した場合は、PrimaryKeyを保存しない
+        }
+    }
+
+    /**
+     * 一定時間後にTodoItemの内容をDBへ保存する.
+     * 待ち時間中に再度呼ばれた場合は、書き込みを1回にまとめる.
+     */
+    private void scheduleSaveState() {
+        mHandler.removeCallbacks(mSaveRunnable);
+        mHandler.postDelayed(mSaveRunnable, N_SAVE_DELAY_MS);
+    }
+
+    /**
+     * TodoItemの変更されたColumnのみをバックグラウンドでDBへ保存.
+     * 変更がない場合、および何も入力していない新規Todoアイテムは保存しない.
      */
     private void saveState() {
+        // 表示前は保存対象なし
+        if (!mPopulated) {
+            return;
+        }
+
         // DBへ保存対象のデータを取得
-        String title = mTitleText.getText().toString();
-        String date = mDate.getText().toString();
-        String body = mBodyText.getText().toString();
+        final String title = mTitleText.getText().toString();
+        final String date = mDate.getText().toString();
+        final String body = mBodyText.getText().toString();
+        final String state = mState;
+
+        // 変更のあったColumnのみ抽出（変更なしはnull）
+        final String changedTitle = title.equals(mSavedTitle) ? null : title;
+        final String changedBody  = body.equals(mSavedBody)   ? null : body;
+        final String changedDate  = date.equals(mSavedDate)   ? null : date;
+        final String changedState = state.equals(mSavedState) ? null : state;
+        if (changedTitle == null && changedBody == null && changedDate == null && changedState == null) {
+            return;
+        }
 
-        // PrimaryKeyがない場合は
-        if (mPrimaryKey == null) {
-            long id = mDbHelper.createTodoItem(
-                    title,
-                    body,
-                    date,
-                    mState);
-            if (id > 0) {
-                mPrimaryKey = id;
+        // 何も入力していない新規Todoアイテムは保存しない
+        if (!mCreateQueued && title.length() == 0 && body.length() == 0) {
+            return;
+        }
+
+        // 保存済みの値を更新
+        mSavedTitle = title;
+        mSavedBody  = body;
+        mSavedDate  = date;
+        mSavedState = state;
+
+        // PrimaryKeyがない場合は新規作成
+        final boolean bCreate = !mCreateQueued;
+        mCreateQueued = true;
+        final Long primaryKey = mPrimaryKey;
+
+        // 書き込みはバックグラウンドで順番に実施
+        Runnable write = new Runnable() {
+            @Override
+            public void run() {
+                if (bCreate) {
+                    final long id = mDbHelper.createTodoItem(
+                            title,
+                            body,
+                            date,
+                            state);
+                    if (id > 0) {
+                        // UIスレッドでPrimaryKeyを保持
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                mPrimaryKey = id;
+                            }
+                        });
+                        mWrittenKey = id;
+                    }
+                } else {
+                    mDbHelper.updateTodoItem(
+                            (primaryKey != null) ? primaryKey : mWrittenKey,
+                            changedTitle,
+                            changedBody,
+                            changedDate,
+                            changedState);
+                }
             }
+        };
+        if (bCreate) {
+            // 状態の保存時に採番を待てるよう、完了を保持
+            mCreateFuture = sWriteExecutor.submit(write);
         } else {
-            mDbHelper.updateTodoItem(
-                    mPrimaryKey,
-                    title,
-                    body,
-                    date,
-                    mState);
+            sWriteExecutor.execute(write);
         }
     }
 
@@ -213,13 +367,14 @@ public class TodoEdit extends Activity {
         {
             case CState.N_ACTIVITY_DATE:
 
-                if (data != null) {
-                    mDate.setText(
-                            data.getStringExtra(TodoDate.STR_KEY_YEAR)  + "/" +
-                            data.getStringExtra(TodoDate.STR_KEY_MONTH) + "/" +
-                            data.getStringExtra(TodoDate.STR_KEY_DAY)
-                    );
-                    saveState();
+                int nDate = (data != null)
+                        ? data.getIntExtra(TodoDate.STR_KEY_DATE, TodoDateCodec.N_NO_DATE) : TodoDateCodec.N_NO_DATE;
+                if (nDate != TodoDateCodec.N_NO_DATE) {
+                    // DB上の日付の並び順を保つため、"yyyy/MM/dd"形式で設定
+                    mDate.setText(TodoDateCodec.format(nDate));
+
+                    // 続けて編集される場合に備え、書き込みはまとめて行う
+                    scheduleSaveState();
                 }
                 break;
 
@@ -229,4 +384,3 @@ public class TodoEdit extends Activity {
         }
     }
 }
-
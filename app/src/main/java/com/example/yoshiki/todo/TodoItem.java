@@ -0,0 +1,189 @@
+package com.example.yoshiki.todo;
+
+import java.util.Comparator;
+
+/**
+ * Todoアイテム1件分の情報を保持するクラス.
+ * @author 清兼
+ */
+public class TodoItem {
+
+    /**
+     * PrimaryKey未採番を表す値
+     */
+    public static final long N_NO_PRIMARY_KEY = -1;
+
+    /**
+     * 並び順定義
+     */
+    public static final int N_SORT_CREATED  = 0;    // 登録順（_id順）
+    public static final int N_SORT_DUE_DATE = 1;    // 期限の早い順
+    public static final int N_SORT_TITLE    = 2;    // タイトル順（英字の大文字・小文字を区別しない）
+
+    /**
+     * PrimaryKeyの順に並べる比較
+     */
+    public static final Comparator<TodoItem> CREATED_ORDER = new Comparator<TodoItem>() {
+        @Override
+        public int compare(TodoItem lhs, TodoItem rhs) {
+            return comparePrimaryKeys(lhs, rhs);
+        }
+    };
+
+    /**
+     * 期限, PrimaryKeyの順に並べる比較（期限は"yyyy/MM/dd"形式のため文字列順で比較できる）
+     */
+    public static final Comparator<TodoItem> DUE_DATE_ORDER = new Comparator<TodoItem>() {
+        @Override
+        public int compare(TodoItem lhs, TodoItem rhs) {
+            int nResult = lhs.mDate.compareTo(rhs.mDate);
+            if (nResult != 0) {
+                return nResult;
+            }
+            return comparePrimaryKeys(lhs, rhs);
+        }
+    };
+
+    /**
+     * タイトル, PrimaryKeyの順に並べる比較.
+     * SQLiteの"COLLATE NOCASE"と同じ順序とするため、ASCIIの英大文字のみを小文字とみなし、
+     * それ以外はコードポイント順（UTF-8のバイト順と同じ）で比較する.
+     */
+    public static final Comparator<TodoItem> TITLE_ORDER = new Comparator<TodoItem>() {
+        @Override
+        public int compare(TodoItem lhs, TodoItem rhs) {
+            int nResult = compareTitles(lhs.mTitle, rhs.mTitle);
+            if (nResult != 0) {
+                return nResult;
+            }
+            return comparePrimaryKeys(lhs, rhs);
+        }
+    };
+
+    /**
+     * メンバ変数定義
+     */
+    private final long   mPrimaryKey;   // PrimaryKey
+    private final String mTitle;        // Todoアイテムのタイトル
+    private final String mBody;         // Todoアイテムの内容
+    private final String mDate;         // Todo実施期限
+    private final String mState;        // Todo状態
+
+    /**
+     * コンストラクタ（PrimaryKey未採番）
+     *
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody  Todoアイテムの内容
+     * @param strDate  Todo実施期限
+     * @param strState Todo状態
+     */
+    public TodoItem(
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        this(N_NO_PRIMARY_KEY, strTitle, strBody, strDate, strState);
+    }
+
+    /**
+     * コンストラクタ
+     *
+     * @param nPrimaryKey PrimaryKey
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody  Todoアイテムの内容
+     * @param strDate  Todo実施期限
+     * @param strState Todo状態
+     */
+    public TodoItem(
+            long   nPrimaryKey,
+            String strTitle,
+            String strBody,
+            String strDate,
+            String strState)
+    {
+        this.mPrimaryKey = nPrimaryKey;
+        this.mTitle      = strTitle;
+        this.mBody       = strBody;
+        this.mDate       = strDate;
+        this.mState      = strState;
+    }
+
+    public long getPrimaryKey() {
+        return mPrimaryKey;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getBody() {
+        return mBody;
+    }
+
+    public String getDate() {
+        return mDate;
+    }
+
+    public String getState() {
+        return mState;
+    }
+
+    /**
+     * 並び順に対応する比較を取得.
+     *
+     * @param nSortOrder 並び順（N_SORT_*）
+     * @return 比較
+     * @throws IllegalArgumentException 未定義の並び順の場合
+     */
+    public static Comparator<TodoItem> getComparator(int nSortOrder)
+    {
+        switch (nSortOrder) {
+            case N_SORT_CREATED:
+                return CREATED_ORDER;
+            case N_SORT_DUE_DATE:
+                return DUE_DATE_ORDER;
+            case N_SORT_TITLE:
+                return TITLE_ORDER;
+            default:
+                throw new IllegalArgumentException("unknown sort order: " + nSortOrder);
+        }
+    }
+
+    /**
+     * PrimaryKeyを比較する.
+     */
+    private static int comparePrimaryKeys(TodoItem lhs, TodoItem rhs)
+    {
+        return (lhs.mPrimaryKey < rhs.mPrimaryKey) ? -1 : (lhs.mPrimaryKey == rhs.mPrimaryKey ? 0 : 1);
+    }
+
+    /**
+     * タイトルを"COLLATE NOCASE"と同じ順序で比較する.
+     */
+    static int compareTitles(String strLhs, String strRhs)
+    {
+        int nLhs = 0;
+        int nRhs = 0;
+        while (nLhs < strLhs.length() && nRhs < strRhs.length()) {
+            int nLhsCode = strLhs.codePointAt(nLhs);
+            int nRhsCode = strRhs.codePointAt(nRhs);
+            int nResult = toLowerAscii(nLhsCode) - toLowerAscii(nRhsCode);
+            if (nResult != 0) {
+                return nResult;
+            }
+            nLhs += Character.charCount(nLhsCode);
+            nRhs += Character.charCount(nRhsCode);
+        }
+        // 一方が他方の先頭部分と一致する場合は短い方が前
+        return (strLhs.length() - nLhs) - (strRhs.length() - nRhs);
+    }
+
+    /**
+     * ASCIIの英大文字のみを小文字へ変換する.
+     */
+    private static int toLowerAscii(int nCode)
+    {
+        return ('A' <= nCode && nCode <= 'Z') ? nCode + ('a' - 'A') : nCode;
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * アプリケーションメイン画面のTodoアイテムリスト表示用のアダプタ.
+ * Todoアイテムを並び順（登録順・期限順・タイトル順）に保持し、変更のあった行のみを差し替える.
+ * @author 清兼
+ */
+public class TodoListAdapter extends BaseAdapter {
+
+    /**
+     * メンバ変数定義
+     */
+    private final LayoutInflater mInflater;                         // Viewの生成用
+    private final ArrayList<TodoItem> mItems = new ArrayList<TodoItem>();   // 表示中のTodoアイテム（並び順）
+    private boolean mHasMore;                                       // 未読み込みのページの有無
+    private int mSortOrder = TodoItem.N_SORT_CREATED;               // 並び順（TodoItem.N_SORT_*）
+    private Comparator<TodoItem> mComparator = TodoItem.CREATED_ORDER;  // 並び順の比較
+
+    /**
+     * コンストラクタ
+     *
+     * @param context コンテキスト
+     */
+    public TodoListAdapter(Context context)
+    {
+        this.mInflater = LayoutInflater.from(context);
+    }
+
+    /**
+     * 並び順を設定する.
+     * 表示中のTodoアイテムは並べ替えるが、未読み込みのページとの境界は変わるため、先頭ページから読み込み直すこと.
+     *
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     */
+    public void setSortOrder(int nSortOrder)
+    {
+        mComparator = TodoItem.getComparator(nSortOrder);
+        mSortOrder = nSortOrder;
+        Collections.sort(mItems, mComparator);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 並び順を取得.
+     *
+     * @return 並び順（TodoItem.N_SORT_*）
+     */
+    public int getSortOrder()
+    {
+        return mSortOrder;
+    }
+
+    /**
+     * 表示するTodoアイテムを先頭ページで差し替える.
+     *
+     * @param items Todoアイテム（並び順）
+     * @param bHasMore 未読み込みのページがある場合はtrue
+     */
+    public void setItems(List<TodoItem> items, boolean bHasMore)
+    {
+        mItems.clear();
+        appendItems(items, bHasMore);
+    }
+
+    /**
+     * 次のページのTodoアイテムを末尾へ追加する.
+     *
+     * @param items Todoアイテム（並び順）
+     * @param bHasMore 未読み込みのページがある場合はtrue
+     */
+    public void appendItems(List<TodoItem> items, boolean bHasMore)
+    {
+        mItems.addAll(items);
+        mHasMore = bHasMore;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 未読み込みのページがあるかを取得.
+     *
+     * @return 未読み込みのページがある場合はtrue
+     */
+    public boolean hasMore()
+    {
+        return mHasMore;
+    }
+
+    /**
+     * 読み込み済みの最後のTodoアイテムを取得（次のページの読み込み位置）.
+     *
+     * @return Todoアイテム。読み込み済みのTodoアイテムがない場合はnull
+     */
+    public TodoItem getLastItem()
+    {
+        return mItems.isEmpty() ? null : mItems.get(mItems.size() - 1);
+    }
+
+    /**
+     * 表示中のTodoアイテムを先頭から取得（スナップショットの保存用）.
+     *
+     * @param nMaxCount 最大取得件数
+     * @return Todoアイテムの複写（並び順）
+     */
+    public List<TodoItem> getItems(int nMaxCount)
+    {
+        return new ArrayList<TodoItem>(mItems.subList(0, Math.min(nMaxCount, mItems.size())));
+    }
+
+    /**
+     * Todoアイテムを登録または更新する.
+     * 表示対象外のTodoアイテムは、表示中であればリストから取り除く.
+     *
+     * @param items 登録・更新されたTodoアイテム
+     * @param strState 表示対象のState
+     */
+    public void upsertItems(List<TodoItem> items, String strState)
+    {
+        for (TodoItem item : items) {
+            int nPosition = indexOf(item.getPrimaryKey());
+            boolean bVisible = strState.equals(item.getState());
+
+            // 期限・タイトルの変更で並び順の位置が変わるため、取り除いてから挿入し直す
+            if (nPosition >= 0) {
+                mItems.remove(nPosition);
+            }
+            if (bVisible) {
+                // 並び順の位置へ挿入
+                // 未読み込みのページに含まれる場合は、ページ読み込み時に表示される
+                int nInsert = -(Collections.binarySearch(mItems, item, mComparator) + 1);
+                if (nInsert < mItems.size() || !mHasMore || nInsert == nPosition) {
+                    mItems.add(nInsert, item);
+                }
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Todoアイテムをリストから取り除く.
+     *
+     * @param nPrimaryKeys 削除されたTodoアイテムのPrimaryKey
+     */
+    public void removeItems(long[] nPrimaryKeys)
+    {
+        Set<Long> removed = new HashSet<Long>(nPrimaryKeys.length * 2);
+        for (long nPrimaryKey : nPrimaryKeys) {
+            removed.add(nPrimaryKey);
+        }
+
+        // 1回の走査で取り除く
+        int nDst = 0;
+        for (int nSrc = 0; nSrc < mItems.size(); nSrc++) {
+            TodoItem item = mItems.get(nSrc);
+            if (!removed.contains(item.getPrimaryKey())) {
+                mItems.set(nDst++, item);
+            }
+        }
+        if (nDst == mItems.size()) {
+            // 表示中のTodoアイテムなし
+            return;
+        }
+        mItems.subList(nDst, mItems.size()).clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * PrimaryKeyから表示位置を探す.
+     * 登録順は二分探索し、それ以外の並び順は先頭から走査する.
+     *
+     * @param nPrimaryKey PrimaryKey
+     * @return 表示位置。存在しない場合は-1
+     */
+    private int indexOf(long nPrimaryKey)
+    {
+        if (mSortOrder != TodoItem.N_SORT_CREATED) {
+            for (int nIndex = 0; nIndex < mItems.size(); nIndex++) {
+                if (mItems.get(nIndex).getPrimaryKey() == nPrimaryKey) {
+                    return nIndex;
+                }
+            }
+            return -1;
+        }
+
+        int nLow = 0;
+        int nHigh = mItems.size() - 1;
+        while (nLow <= nHigh) {
+            int nMid = (nLow + nHigh) >>> 1;
+            long nMidKey = mItems.get(nMid).getPrimaryKey();
+            if (nMidKey < nPrimaryKey) {
+                nLow = nMid + 1;
+            } else if (nMidKey > nPrimaryKey) {
+                nHigh = nMid - 1;
+            } else {
+                return nMid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getCount()
+    {
+        return mItems.size();
+    }
+
+    @Override
+    public TodoItem getItem(int nPosition)
+    {
+        return mItems.get(nPosition);
+    }
+
+    @Override
+    public long getItemId(int nPosition)
+    {
+        return mItems.get(nPosition).getPrimaryKey();
+    }
+
+    /**
+     * PrimaryKeyは行が増減しても変わらないため、スクロール位置と選択状態を維持できる.
+     */
+    @Override
+    public boolean hasStableIds()
+    {
+        return true;
+    }
+
+    @Override
+    public View getView(int nPosition, View convertView, ViewGroup parent)
+    {
+        // Viewは再利用する
+        View view = convertView;
+        if (view == null) {
+            view = mInflater.inflate(R.layout.todo_row, parent, false);
+        }
+
+        // タイトルを表示
+        TextView text = (TextView) view.findViewById(android.R.id.text1);
+        text.setText(mItems.get(nPosition).getTitle());
+        return view;
+    }
+}
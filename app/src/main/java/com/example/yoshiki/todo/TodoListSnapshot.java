@@ -0,0 +1,262 @@
+package com.example.yoshiki.todo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Todoアイテムリストの先頭ページ（_id, タイトル, 期限）を、並び順とともに保存したスナップショット.
+ * 起動時はDBを開く前にファイルをメモリマップして読み込み、すぐにリストを表示する.
+ * DBからの読み込みが完了した時点で、リストはDBの内容に差し替わる.
+ *
+ * ファイル形式：
+ *  ヘッダ    int マジックナンバー, int 形式バージョン, int 件数, int フラグ, int 並び順, int 本体長, int 本体のCRC32
+ *  本体      件数分の（long _id, int タイトルのバイト長, タイトル（UTF-8）, int 期限のバイト長, 期限（UTF-8））
+ *  形式バージョンが異なるファイルは読み込まない（次回の保存で置き換わる）.
+ *  書き込みは一時ファイルへ書いた後に置き換えるため、読み込み中のファイルが書き換わることはない.
+ * @author 清兼
+ */
+public class TodoListSnapshot {
+
+    /**
+     * ファイル形式定義
+     */
+    private static final int N_MAGIC            = 0x54647353;   // "TdsS"
+    private static final int N_FORMAT_VERSION   = 2;            // v2: 並び順・期限を追加
+    private static final int N_HEADER_SIZE      = 28;           // ヘッダ長
+    private static final int N_FLAG_HAS_MORE    = 1;            // 未読み込みのページあり
+
+    /**
+     * 読み込むファイルの上限（破損したファイルで大量のメモリを確保しないため）
+     */
+    private static final int N_MAX_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * 一時ファイルの拡張子
+     */
+    private static final String STR_TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 文字コード
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * メンバ変数定義
+     */
+    private final List<TodoItem> mItems;    // Todoアイテム（並び順、_id, タイトル, 期限のみ）
+    private final int mSortOrder;           // 並び順（TodoItem.N_SORT_*）
+    private final boolean mHasMore;         // 未読み込みのページの有無
+
+    private TodoListSnapshot(List<TodoItem> items, int nSortOrder, boolean bHasMore)
+    {
+        this.mItems = items;
+        this.mSortOrder = nSortOrder;
+        this.mHasMore = bHasMore;
+    }
+
+    /**
+     * Todoアイテムを取得.
+     *
+     * @return Todoアイテム（並び順）。内容はnull、Stateは未完了
+     */
+    public List<TodoItem> getItems()
+    {
+        return mItems;
+    }
+
+    /**
+     * 保存時の並び順を取得.
+     *
+     * @return 並び順（TodoItem.N_SORT_*）
+     */
+    public int getSortOrder()
+    {
+        return mSortOrder;
+    }
+
+    /**
+     * 未読み込みのページがあるかを取得.
+     *
+     * @return 未読み込みのページがある場合はtrue
+     */
+    public boolean hasMore()
+    {
+        return mHasMore;
+    }
+
+    /**
+     * Todoアイテムリストの先頭nMaxCount件をスナップショットとして保存する.
+     *
+     * @param file 保存先
+     * @param items 表示中のTodoアイテム（並び順）
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @param nMaxCount 保存する最大件数
+     * @param bHasMore 未読み込みのページがある場合はtrue
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static void write(
+            File file,
+            List<TodoItem> items,
+            int nSortOrder,
+            int nMaxCount,
+            boolean bHasMore) throws IOException
+    {
+        int nCount = Math.min(items.size(), nMaxCount);
+
+        // タイトル・期限を変換し、本体長を求める
+        byte[][] titles = new byte[nCount][];
+        byte[][] dates = new byte[nCount][];
+        int nBodyLength = 0;
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            TodoItem item = items.get(nIndex);
+            titles[nIndex] = item.getTitle().getBytes(UTF_8);
+            dates[nIndex] = (item.getDate() == null) ? new byte[0] : item.getDate().getBytes(UTF_8);
+            nBodyLength += 8 + 4 + titles[nIndex].length + 4 + dates[nIndex].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(N_HEADER_SIZE + nBodyLength);
+        buffer.position(N_HEADER_SIZE);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            buffer.putLong(items.get(nIndex).getPrimaryKey());
+            buffer.putInt(titles[nIndex].length);
+            buffer.put(titles[nIndex]);
+            buffer.putInt(dates[nIndex].length);
+            buffer.put(dates[nIndex]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), N_HEADER_SIZE, nBodyLength);
+
+        buffer.putInt(0, N_MAGIC);
+        buffer.putInt(4, N_FORMAT_VERSION);
+        buffer.putInt(8, nCount);
+        buffer.putInt(12, (bHasMore || items.size() > nCount) ? N_FLAG_HAS_MORE : 0);
+        buffer.putInt(16, nSortOrder);
+        buffer.putInt(20, nBodyLength);
+        buffer.putInt(24, (int) crc.getValue());
+
+        // 一時ファイルへ書き込んで置き換える
+        File temp = new File(file.getPath() + STR_TEMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("rename failed: " + file);
+        }
+    }
+
+    /**
+     * スナップショットをメモリマップして読み込む.
+     *
+     * @param file 保存先
+     * @return スナップショット。存在しない、または破損している場合はnull
+     */
+    public static TodoListSnapshot read(File file)
+    {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            long nFileLength = raf.length();
+            if (nFileLength < N_HEADER_SIZE || nFileLength > N_MAX_FILE_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, nFileLength);
+            return decode(buffer);
+        } catch (IOException e) {
+            // 未作成
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    // 読み込み済みのため無視する
+                }
+            }
+        }
+    }
+
+    /**
+     * スナップショットの内容を解析する.
+     *
+     * @param buffer ファイルの内容
+     * @return スナップショット。破損している場合はnull
+     */
+    static TodoListSnapshot decode(ByteBuffer buffer)
+    {
+        if (buffer.remaining() < N_HEADER_SIZE
+                || buffer.getInt(0) != N_MAGIC
+                || buffer.getInt(4) != N_FORMAT_VERSION) {
+            return null;
+        }
+        int nCount = buffer.getInt(8);
+        int nFlags = buffer.getInt(12);
+        int nSortOrder = buffer.getInt(16);
+        int nBodyLength = buffer.getInt(20);
+        if (nCount < 0 || nBodyLength != buffer.remaining() - N_HEADER_SIZE) {
+            return null;
+        }
+
+        // 本体を1回で複写し、CRC32を確認
+        byte[] body = new byte[nBodyLength];
+        buffer.position(N_HEADER_SIZE);
+        buffer.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, nBodyLength);
+        if ((int) crc.getValue() != buffer.getInt(24)) {
+            return null;
+        }
+
+        ByteBuffer entries = ByteBuffer.wrap(body);
+        List<TodoItem> items = new ArrayList<TodoItem>(nCount);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            if (entries.remaining() < 8 + 4 + 4) {
+                return null;
+            }
+            long nPrimaryKey = entries.getLong();
+            String strTitle = getString(entries, body);
+            String strDate = (strTitle == null) ? null : getString(entries, body);
+            if (strDate == null) {
+                return null;
+            }
+            items.add(new TodoItem(nPrimaryKey, strTitle, null, strDate, TodoDbAdapter.STR_STATE_OPEN));
+        }
+        return new TodoListSnapshot(
+                Collections.unmodifiableList(items), nSortOrder, (nFlags & N_FLAG_HAS_MORE) != 0);
+    }
+
+    /**
+     * 本体の現在位置から、バイト長付きの文字列を読み込む.
+     *
+     * @param entries 本体（現在位置は文字列のバイト長）
+     * @param body 本体の配列
+     * @return 文字列。バイト長が不正な場合はnull
+     */
+    private static String getString(ByteBuffer entries, byte[] body)
+    {
+        if (entries.remaining() < 4) {
+            return null;
+        }
+        int nLength = entries.getInt();
+        if (nLength < 0 || nLength > entries.remaining()) {
+            return null;
+        }
+        String str = new String(body, entries.position(), nLength, UTF_8);
+        entries.position(entries.position() + nLength);
+        return str;
+    }
+}
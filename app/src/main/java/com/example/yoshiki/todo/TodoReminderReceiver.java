@@ -0,0 +1,29 @@
+package com.example.yoshiki.todo;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Todo実施期限の通知時刻、端末の再起動、時刻の変更を受け取るクラス.
+ * 処理はTodoRemindersのバックグラウンドスレッドで行い、完了までgoAsyncで待つ.
+ * @author 清兼
+ */
+public class TodoReminderReceiver extends BroadcastReceiver {
+
+    /**
+     * 通知時刻のアクション
+     */
+    public static final String STR_ACTION_ALARM = "com.example.yoshiki.todo.action.REMINDER_ALARM";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        TodoReminders reminders = TodoReminders.getInstance(context);
+        if (STR_ACTION_ALARM.equals(intent.getAction())) {
+            reminders.onAlarm(goAsync());
+        } else {
+            // 再起動・時刻の変更時は、期限を読み込み直して通知時刻を設定し直す
+            reminders.reload(goAsync());
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.yoshiki.todo;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Todoアイテムの実施期限の通知時刻を管理するクラス.
+ * 未完了のTodoアイテムのうち期限の早いものを{@link TodoDeadlineHeap}で保持し、最も早い期限の通知時刻のみを
+ * {@link Alarm}へ設定する.
+ *
+ * ヒープには「期限, PrimaryKeyの順で境界以下の、通知前の未完了Todoアイテム」を全て保持する.
+ * 全件を保持できない場合は境界を下げ、境界より後のTodoアイテムはヒープが減った時点で読み込み直す.
+ * そのため、Todoアイテムの件数によらずメモリ使用量と1回の変更の処理量は一定となる.
+ *
+ * Androidに依存しないため、JVM上でテストできる. スレッドセーフ.
+ * @author 清兼
+ */
+public final class TodoReminderScheduler {
+
+    /**
+     * 通知時刻の設定先.
+     */
+    public interface Alarm {
+
+        /**
+         * 通知時刻を設定する（設定済みの時刻は置き換える）.
+         *
+         * @param nTriggerAtMillis 通知時刻（エポックミリ秒）
+         */
+        void schedule(long nTriggerAtMillis);
+
+        /**
+         * 設定済みの通知時刻を取り消す.
+         */
+        void cancel();
+    }
+
+    /**
+     * 1日・1時間のミリ秒数
+     */
+    private static final long N_MILLIS_PER_DAY  = 24L * 60 * 60 * 1000;
+    private static final long N_MILLIS_PER_HOUR = 60L * 60 * 1000;
+
+    /**
+     * 通知時刻を設定していないことを表す値
+     */
+    private static final long N_NOT_SCHEDULED = -1;
+
+    /**
+     * メンバ変数定義
+     */
+    private final TodoRepository mRepository;   // Todoアイテムの読み込み元
+    private final Alarm mAlarm;                 // 通知時刻の設定先
+    private final TimeZone mTimeZone;           // 期限を解釈するタイムゾーン
+    private final int mReminderHour;            // 期限日の通知時（0〜23）
+    private final TodoDeadlineHeap mHeap;       // 通知前の期限
+    private final int mLowWaterMark;            // 読み込み直すヒープの件数
+    private boolean mComplete;                  // 通知前の全Todoアイテムをヒープに保持しているか
+    private int mHorizonDate;                   // ヒープに保持する境界（期限）
+    private long mHorizonKey;                   // ヒープに保持する境界（PrimaryKey）
+    private int mFirstDate = TodoDateCodec.N_NO_DATE;   // 通知前の最初の期限
+    private long mScheduledAt = N_NOT_SCHEDULED;        // 設定済みの通知時刻
+
+    /**
+     * コンストラクタ
+     *
+     * @param repository Todoアイテムの読み込み元（open済み）
+     * @param alarm 通知時刻の設定先
+     * @param timeZone 期限を解釈するタイムゾーン
+     * @param nCapacity ヒープに保持する最大件数
+     * @param nReminderHour 期限日の通知時（0〜23）
+     */
+    public TodoReminderScheduler(
+            TodoRepository repository,
+            Alarm alarm,
+            TimeZone timeZone,
+            int nCapacity,
+            int nReminderHour)
+    {
+        if (nReminderHour < 0 || nReminderHour > 23) {
+            throw new IllegalArgumentException("nReminderHour: " + nReminderHour);
+        }
+        mRepository = repository;
+        mAlarm = alarm;
+        mTimeZone = timeZone;
+        mReminderHour = nReminderHour;
+        mHeap = new TodoDeadlineHeap(nCapacity);
+        mLowWaterMark = nCapacity / 4;
+    }
+
+    /**
+     * 通知前の期限をDBから読み込み直し、通知時刻を設定する.
+     * 起動時・端末の再起動時・時刻の変更時に呼び出す.
+     *
+     * @param nNowMillis 現在時刻（エポックミリ秒）
+     */
+    public synchronized void reload(long nNowMillis)
+    {
+        mFirstDate = firstDateAt(nNowMillis);
+        load();
+        reschedule();
+    }
+
+    /**
+     * Todoアイテムの登録・更新を反映する.
+     *
+     * @param items 登録・更新されたTodoアイテム
+     */
+    public synchronized void onItemsChanged(List<TodoItem> items)
+    {
+        if (mFirstDate == TodoDateCodec.N_NO_DATE) {
+            // 未読み込み
+            return;
+        }
+
+        for (TodoItem item : items) {
+            long nPrimaryKey = item.getPrimaryKey();
+            mHeap.remove(nPrimaryKey);
+
+            // 通知前の未完了Todoアイテムのみ保持する
+            if (!TodoDbAdapter.STR_STATE_OPEN.equals(item.getState())) {
+                continue;
+            }
+            int nDate = TodoDateCodec.parse(item.getDate());
+            if (nDate == TodoDateCodec.N_NO_DATE || nDate < mFirstDate) {
+                continue;
+            }
+
+            // 境界より後は、読み込み直す時に取得する
+            if (!mComplete && TodoDeadlineHeap.compare(nDate, nPrimaryKey, mHorizonDate, mHorizonKey) > 0) {
+                continue;
+            }
+            if (mHeap.offer(nDate, nPrimaryKey)) {
+                // 容量を超えたため、境界をヒープ内の最も遅い期限まで下げる
+                mComplete = false;
+                mHorizonDate = mHeap.lastDate();
+                mHorizonKey = mHeap.lastPrimaryKey();
+            }
+        }
+
+        refillIfNeeded();
+        reschedule();
+    }
+
+    /**
+     * Todoアイテムの削除を反映する.
+     *
+     * @param nPrimaryKeys 削除されたTodoアイテムのPrimaryKey
+     */
+    public synchronized void onItemsDeleted(long[] nPrimaryKeys)
+    {
+        if (mFirstDate == TodoDateCodec.N_NO_DATE) {
+            // 未読み込み
+            return;
+        }
+
+        for (long nPrimaryKey : nPrimaryKeys) {
+            mHeap.remove(nPrimaryKey);
+        }
+
+        refillIfNeeded();
+        reschedule();
+    }
+
+    /**
+     * 通知時刻になった期限をDBから取得し、次の通知時刻を設定する.
+     * 1日の件数がヒープの容量を超える場合もあるため、通知対象はヒープではなくインデックスから読み込む.
+     *
+     * @param nNowMillis 現在時刻（エポックミリ秒）
+     * @param nMaxCount 取得する最大件数
+     * @return 通知するTodoアイテムのPrimaryKey（期限, PrimaryKeyの順）
+     */
+    public synchronized long[] onAlarm(long nNowMillis, int nMaxCount)
+    {
+        int nFirstDate = firstDateAt(nNowMillis);
+
+        // 前回の通知時刻から今回の通知時刻までの期限を取得.
+        // プロセス起動直後の通知では読み込み時に通知時刻を過ぎているため、少なくとも直前の通知時刻の期限を対象とする
+        int nFromDate = lastDayBefore(nFirstDate);
+        if (mFirstDate != TodoDateCodec.N_NO_DATE && mFirstDate < nFromDate) {
+            nFromDate = mFirstDate;
+        }
+        List<TodoItem> items = mRepository.fetchTodoItemsByDueDate(
+                TodoDbAdapter.STR_STATE_OPEN, TodoDateCodec.format(nFromDate), nMaxCount);
+        long[] nDueKeys = new long[items.size()];
+        int nDueCount = 0;
+        for (TodoItem item : items) {
+            int nDate = TodoDateCodec.parse(item.getDate());
+            if (nDate != TodoDateCodec.N_NO_DATE && nDate < nFirstDate) {
+                nDueKeys[nDueCount++] = item.getPrimaryKey();
+            }
+        }
+
+        // 次の通知時刻以降の期限を読み込み直す
+        mFirstDate = nFirstDate;
+        mScheduledAt = N_NOT_SCHEDULED;
+        load();
+        reschedule();
+        return Arrays.copyOf(nDueKeys, nDueCount);
+    }
+
+    /**
+     * 保持している期限の件数を取得.
+     */
+    public synchronized int size()
+    {
+        return mHeap.size();
+    }
+
+    /**
+     * 設定済みの通知時刻を取得.
+     *
+     * @return 通知時刻（エポックミリ秒）。設定していない場合は-1
+     */
+    public synchronized long getScheduledAt()
+    {
+        return mScheduledAt;
+    }
+
+    /**
+     * 期限日の通知時刻を取得.
+     *
+     * @param nDate 期限
+     * @return 通知時刻（エポックミリ秒）
+     */
+    public long triggerAt(int nDate)
+    {
+        long nLocalMillis = TodoDateCodec.toEpochDay(nDate) * N_MILLIS_PER_DAY + mReminderHour * N_MILLIS_PER_HOUR;
+        return nLocalMillis - mTimeZone.getOffset(nLocalMillis - mTimeZone.getRawOffset());
+    }
+
+    /**
+     * 指定時刻に通知前である最初の期限を取得.
+     * 本日の通知時刻を過ぎている場合は翌日となる.
+     */
+    private int firstDateAt(long nNowMillis)
+    {
+        int nToday = TodoDateCodec.fromMillis(nNowMillis, mTimeZone);
+        return (nNowMillis < triggerAt(nToday)) ? nToday : nextDay(nToday);
+    }
+
+    /**
+     * 前日を取得.
+     */
+    private static int lastDayBefore(int nDate)
+    {
+        return TodoDateCodec.fromEpochDay(TodoDateCodec.toEpochDay(nDate) - 1);
+    }
+
+    /**
+     * 翌日を取得.
+     */
+    private static int nextDay(int nDate)
+    {
+        return TodoDateCodec.fromEpochDay(TodoDateCodec.toEpochDay(nDate) + 1);
+    }
+
+    /**
+     * mFirstDate以降の期限を、期限の早い順にヒープの容量+1件読み込む.
+     * 容量を超えた場合は、読み込んだ最後の期限を境界とする.
+     */
+    private void load()
+    {
+        int nCapacity = mHeap.capacity();
+        List<TodoItem> items = mRepository.fetchTodoItemsByDueDate(
+                TodoDbAdapter.STR_STATE_OPEN, TodoDateCodec.format(mFirstDate), nCapacity + 1);
+
+        mHeap.clear();
+        mComplete = (items.size() <= nCapacity);
+        int nCount = Math.min(items.size(), nCapacity);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            TodoItem item = items.get(nIndex);
+            int nDate = TodoDateCodec.parse(item.getDate());
+            if (nDate == TodoDateCodec.N_NO_DATE) {
+                continue;
+            }
+            mHeap.offer(nDate, item.getPrimaryKey());
+            mHorizonDate = nDate;
+            mHorizonKey = item.getPrimaryKey();
+        }
+    }
+
+    /**
+     * 境界より後に期限があり、ヒープが減った場合は読み込み直す.
+     */
+    private void refillIfNeeded()
+    {
+        if (!mComplete && mHeap.size() <= mLowWaterMark) {
+            load();
+        }
+    }
+
+    /**
+     * 最も早い期限の通知時刻が変わった場合のみ、通知時刻を設定し直す.
+     */
+    private void reschedule()
+    {
+        if (mHeap.isEmpty()) {
+            if (mScheduledAt != N_NOT_SCHEDULED) {
+                mAlarm.cancel();
+                mScheduledAt = N_NOT_SCHEDULED;
+            }
+            return;
+        }
+
+        long nTriggerAt = triggerAt(mHeap.peekDate());
+        if (nTriggerAt != mScheduledAt) {
+            mAlarm.schedule(nTriggerAt);
+            mScheduledAt = nTriggerAt;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.yoshiki.todo;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Todo実施期限の通知をAndroidのAlarmManager・Notificationへ結び付けるクラス.
+ * プロセスで1つを共有し、Todoアイテムの変更通知を{@link TodoReminderScheduler}へ反映する.
+ * DBアクセスは全て専用のバックグラウンドスレッドで順番に実行する.
+ * @author 清兼
+ */
+public final class TodoReminders {
+
+    /**
+     * 期限を保持する最大件数
+     */
+    private static final int N_HEAP_CAPACITY = 64;
+
+    /**
+     * 1回の通知時刻に表示する最大件数
+     */
+    private static final int N_MAX_NOTIFICATIONS = 32;
+
+    /**
+     * 通知のPendingIntentのリクエストコード
+     */
+    private static final int N_REQUEST_ALARM = 0;
+
+    /**
+     * プロセスで共有するインスタンス
+     */
+    private static TodoReminders sInstance;
+
+    /**
+     * メンバ変数定義
+     */
+    private final Context mContext;                 // ApplicationContext
+    private final TodoRepository mDbHelper;         // Todoアイテムの読み込み元
+    private final TodoReminderScheduler mScheduler; // 通知時刻の管理
+    private final ExecutorService mDbExecutor = Executors.newSingleThreadExecutor();   // DBアクセス用のバックグラウンドスレッド
+
+    /**
+     * 共有インスタンスを取得する. 初回は期限を読み込み、変更通知の受け取りを開始する.
+     *
+     * @param context Context
+     * @return 共有インスタンス
+     */
+    public static synchronized TodoReminders getInstance(Context context)
+    {
+        if (sInstance == null) {
+            sInstance = new TodoReminders(context.getApplicationContext());
+            sInstance.start();
+        }
+        return sInstance;
+    }
+
+    private TodoReminders(Context context)
+    {
+        mContext = context;
+        mDbHelper = TodoRepositoryFactory.create(context);
+        mScheduler = new TodoReminderScheduler(
+                mDbHelper,
+                new AlarmManagerAlarm(),
+                TimeZone.getDefault(),
+                N_HEAP_CAPACITY,
+                context.getResources().getInteger(R.integer.reminder_hour));
+    }
+
+    /**
+     * DBを開いて期限を読み込み、変更通知の受け取りを開始する.
+     */
+    private void start()
+    {
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDbHelper.open();
+                mScheduler.reload(System.currentTimeMillis());
+            }
+        });
+
+        TodoChangeNotifier.registerListener(new TodoChangeNotifier.Listener() {
+            @Override
+            public void onTodoItemsChanged(final int nChange, final long[] nPrimaryKeys) {
+                mDbExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (nChange == TodoChangeNotifier.N_CHANGE_DELETE) {
+                            mScheduler.onItemsDeleted(nPrimaryKeys);
+                        } else {
+                            // 登録・更新された行のみDBから再取得
+                            mScheduler.onItemsChanged(mDbHelper.fetchTodoItems(nPrimaryKeys));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 期限を読み込み直す（端末の再起動・時刻の変更時）.
+     *
+     * @param result 完了を通知するBroadcastReceiverの結果（不要な場合はnull）
+     */
+    public void reload(final BroadcastReceiver.PendingResult result)
+    {
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mScheduler.reload(System.currentTimeMillis());
+                } finally {
+                    if (result != null) {
+                        result.finish();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 通知時刻になったTodoアイテムを通知し、次の通知時刻を設定する.
+     *
+     * @param result 完了を通知するBroadcastReceiverの結果（不要な場合はnull）
+     */
+    public void onAlarm(final BroadcastReceiver.PendingResult result)
+    {
+        mDbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long[] nDueKeys = mScheduler.onAlarm(System.currentTimeMillis(), N_MAX_NOTIFICATIONS);
+                    if (nDueKeys.length > 0) {
+                        notifyItems(mDbHelper.fetchTodoItems(nDueKeys));
+                    }
+                } finally {
+                    if (result != null) {
+                        result.finish();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Todoアイテム毎に通知を表示する（タップでTodoアイテムリストを表示）.
+     *
+     * @param items 通知するTodoアイテム
+     */
+    private void notifyItems(List<TodoItem> items)
+    {
+        NotificationManager manager =
+                (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                mContext, 0, new Intent(mContext, TodoApp.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        for (TodoItem item : items) {
+            Notification notification = new Notification.Builder(mContext)
+                    .setSmallIcon(R.drawable.icon)
+                    .setContentTitle(item.getTitle())
+                    .setContentText(mContext.getString(R.string.reminder_due, item.getDate()))
+                    .setContentIntent(contentIntent)
+                    .setAutoCancel(true)
+                    .build();
+            manager.notify((int) item.getPrimaryKey(), notification);
+        }
+    }
+
+    /**
+     * AlarmManagerへ通知時刻を設定する. 通知時刻は常に1つのみ設定する.
+     */
+    private class AlarmManagerAlarm implements TodoReminderScheduler.Alarm {
+
+        @Override
+        public void schedule(long nTriggerAtMillis) {
+            getAlarmManager().setExact(AlarmManager.RTC_WAKEUP, nTriggerAtMillis, createPendingIntent());
+        }
+
+        @Override
+        public void cancel() {
+            getAlarmManager().cancel(createPendingIntent());
+        }
+
+        private AlarmManager getAlarmManager() {
+            return (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+        }
+
+        private PendingIntent createPendingIntent() {
+            Intent intent = new Intent(mContext, TodoReminderReceiver.class)
+                    .setAction(TodoReminderReceiver.STR_ACTION_ALARM);
+            return PendingIntent.getBroadcast(mContext, N_REQUEST_ALARM, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.yoshiki.todo;
+
+import android.os.CancellationSignal;
+
+import java.util.List;
+
+/**
+ * Todoアイテムの保存先を抽象化したインターフェース.
+ * 画面クラスは本インターフェースを介してTodoアイテムを操作し、保存方式に依存しない.
+ * 登録・更新・削除の結果は{@link TodoChangeNotifier}で通知すること.
+ * @author 清兼
+ */
+public interface TodoRepository {
+
+    /**
+     * 保存先を開く.
+     *
+     * @return 本インスタンス
+     */
+    TodoRepository open();
+
+    /**
+     * 保存先を閉じる.
+     */
+    void close();
+
+    /**
+     * Todoアイテムを保存する.
+     *
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody  Todoアイテムの内容
+     * @param strDate  Todo実施期限
+     * @param strState Todo状態
+     * @return _id or -1 if failed
+     */
+    long createTodoItem(String strTitle, String strBody, String strDate, String strState);
+
+    /**
+     * 複数のTodoアイテムをまとめて保存する.
+     *
+     * @param items 保存するTodoアイテム（PrimaryKeyは無視される）
+     * @return 採番された_id（itemsと同じ順序）
+     */
+    long[] createTodoItems(List<TodoItem> items);
+
+    /**
+     * PrimaryKeyで指定されたTodoアイテムを取得.
+     *
+     * @param nPrimaryKey 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム。存在しない場合はnull
+     */
+    TodoItem fetchTodoItem(long nPrimaryKey);
+
+    /**
+     * 複数のPrimaryKeyで指定されたTodoアイテムを取得.
+     *
+     * @param nPrimaryKeys 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム（_id順）。存在しないものは含まない
+     */
+    List<TodoItem> fetchTodoItems(long[] nPrimaryKeys);
+
+    /**
+     * 複数のPrimaryKeyで指定されたTodoアイテムを、リスト表示用に取得.
+     * 内容（body）は編集画面を開く際に読み込むため含まない.
+     *
+     * @param nPrimaryKeys 取得対象のPrimaryKey
+     * @return 取得したTodoアイテム（_id順、_id, title, date, stateのみ）。存在しないものは含まない
+     */
+    List<TodoItem> fetchListItems(long[] nPrimaryKeys);
+
+    /**
+     * Stateが合致するTodoアイテムを全て取得.
+     *
+     * @param strState 取得対象のState
+     * @param cancellationSignal 取得中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム（_id順）
+     * @throws android.os.OperationCanceledException 取得が中断された場合
+     */
+    List<TodoItem> fetchTodoItemsByState(String strState, CancellationSignal cancellationSignal);
+
+    /**
+     * Stateが合致するTodoアイテムを、_id順に1ページ分取得.
+     * リスト表示用のため、内容（body）と実施期限（date）は含まない場合がある.
+     *
+     * @param strState 取得対象のState
+     * @param nAfterKey 前ページ最後の_id（先頭ページの場合は0）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal 取得中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム（_id順）
+     * @throws android.os.OperationCanceledException 取得が中断された場合
+     */
+    List<TodoItem> fetchTodoItemPage(
+            String strState, long nAfterKey, int nPageSize, CancellationSignal cancellationSignal);
+
+    /**
+     * Stateが合致するTodoアイテムを、指定した並び順で1ページ分取得.
+     * 並べ替えのキーが同じTodoアイテムは_id順とする. リスト表示用のため、内容（body）は含まない場合がある.
+     *
+     * @param strState 取得対象のState
+     * @param nSortOrder 並び順（TodoItem.N_SORT_*）
+     * @param after 前ページ最後のTodoアイテム（先頭ページの場合はnull）
+     * @param nPageSize 1ページの件数
+     * @param cancellationSignal 取得中断用のシグナル（不要な場合はnull）
+     * @return 取得したTodoアイテム（{@link TodoItem#getComparator(int)}の順）
+     * @throws android.os.OperationCanceledException 取得が中断された場合
+     */
+    List<TodoItem> fetchTodoItemPage(
+            String strState, int nSortOrder, TodoItem after, int nPageSize, CancellationSignal cancellationSignal);
+
+    /**
+     * 全てのTodoアイテムを、_id順に全Column分取得（エクスポート用）.
+     *
+     * @param nAfterKey 前回取得した最後の_id（先頭から取得する場合は0）
+     * @param nLimit 最大取得件数
+     * @return 取得したTodoアイテム（_id順）
+     */
+    List<TodoItem> fetchTodoItemsAfter(long nAfterKey, int nLimit);
+
+    /**
+     * Stateが合致し、期限が指定日以降のTodoアイテムを、期限の早い順に取得.
+     * 期限の通知用のため、タイトル（title）と内容（body）は含まない場合がある.
+     *
+     * @param strState 取得対象のState
+     * @param strFromDate 期限の下限（"yyyy/MM/dd"形式、この日を含む）
+     * @param nLimit 最大取得件数
+     * @return 取得したTodoアイテム（期限, _id順）
+     */
+    List<TodoItem> fetchTodoItemsByDueDate(String strState, String strFromDate, int nLimit);
+
+    /**
+     * Todoアイテムを更新する.
+     * 引数がnullの項目は更新しない.
+     *
+     * @param nPrimaryKey 更新対象のPrimaryKey
+     * @param strTitle Todoアイテムのタイトル
+     * @param strBody Todoアイテムの内容
+     * @param strDate Todo実施期限
+     * @param strState Todo状態
+     * @return true if the note was successfully updated, false otherwise
+     */
+    boolean updateTodoItem(long nPrimaryKey, String strTitle, String strBody, String strDate, String strState);
+
+    /**
+     * 複数のTodoアイテムの状態をまとめて更新する.
+     *
+     * @param nPrimaryKeys 更新対象のPrimaryKey
+     * @param strState Todo状態
+     * @return 状態が変わった件数
+     */
+    int updateTodoItemsState(long[] nPrimaryKeys, String strState);
+
+    /**
+     * PrimaryKeyで指定されたTodoアイテムを削除する.
+     * 削除したTodoアイテムは取得・更新の対象外となるが、
+     * {@link #purgeDeletedTodoItems(long, int)}で完全に削除するまでは{@link #undeleteTodoItems(long[])}で元に戻せる.
+     *
+     * @param nPrimaryKey 削除対象のPrimaryKey
+     * @return 実際に削除した件数
+     */
+    int deleteNote(long nPrimaryKey[]);
+
+    /**
+     * 削除したTodoアイテムを、同じPrimaryKey・削除前の内容に戻す.
+     *
+     * @param nPrimaryKeys 対象のPrimaryKey
+     * @return 元に戻した件数（完全に削除済み、または削除されていないものは含まない）
+     */
+    int undeleteTodoItems(long[] nPrimaryKeys);
+
+    /**
+     * 削除日時が指定日時より前の削除したTodoアイテムを、最大nBatchSize件だけ完全に削除する.
+     * 完全に削除したTodoアイテムは元に戻せない.
+     *
+     * @param nDeletedBefore 削除日時の上限（エポックミリ秒、この日時を含まない）
+     * @param nBatchSize 1回で削除する最大件数
+     * @return 完全に削除した件数（nBatchSize未満であれば、対象は残っていない）
+     */
+    int purgeDeletedTodoItems(long nDeletedBefore, int nBatchSize);
+}
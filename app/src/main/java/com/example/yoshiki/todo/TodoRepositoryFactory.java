@@ -0,0 +1,53 @@
+package com.example.yoshiki.todo;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * 設定（R.string.storage_engine）に従い、Todoアイテムの保存先を生成する.
+ * @author 清兼
+ */
+public final class TodoRepositoryFactory {
+
+    /**
+     * 保存方式定義
+     */
+    public static final String STR_ENGINE_SQLITE    = "sqlite";
+    public static final String STR_ENGINE_LOG       = "log";
+
+    /**
+     * 追記専用ログのファイル名
+     */
+    private static final String STR_LOG_FILE_NAME = "todo.log";
+
+    /**
+     * 追記専用ログ（同じファイルを複数のインスタンスで開かないよう、プロセスで1つを共有する）
+     */
+    private static LogTodoRepository sLogRepository;
+
+    private TodoRepositoryFactory()
+    {
+    }
+
+    /**
+     * 保存先を生成する（未open）.
+     *
+     * @param context Context
+     * @return 保存先
+     */
+    public static TodoRepository create(Context context)
+    {
+        String strEngine = context.getString(R.string.storage_engine);
+        if (STR_ENGINE_LOG.equals(strEngine)) {
+            synchronized (TodoRepositoryFactory.class) {
+                if (sLogRepository == null) {
+                    File file = new File(context.getApplicationContext().getFilesDir(), STR_LOG_FILE_NAME);
+                    sLogRepository = new LogTodoRepository(file);
+                }
+                return sLogRepository;
+            }
+        }
+        return new TodoDbAdapter(context);
+    }
+}
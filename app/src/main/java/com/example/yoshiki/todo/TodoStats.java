@@ -0,0 +1,76 @@
+package com.example.yoshiki.todo;
+
+/**
+ * Todoアイテムの件数の集計（未完了・完了・期限切れ・本日期限）を保持するクラス.
+ * 期限切れ・本日期限は未完了のTodoアイテムのみを数える.
+ * @author 清兼
+ */
+public class TodoStats {
+
+    /**
+     * メンバ変数定義
+     */
+    private final int mOpenCount;       // 未完了の件数
+    private final int mClosedCount;     // 完了の件数
+    private final int mOverdueCount;    // 期限切れ（期限が本日より前）の件数
+    private final int mDueTodayCount;   // 期限が本日の件数
+
+    /**
+     * コンストラクタ
+     *
+     * @param nOpenCount 未完了の件数
+     * @param nClosedCount 完了の件数
+     * @param nOverdueCount 期限切れの件数
+     * @param nDueTodayCount 期限が本日の件数
+     */
+    public TodoStats(
+            int nOpenCount,
+            int nClosedCount,
+            int nOverdueCount,
+            int nDueTodayCount)
+    {
+        this.mOpenCount     = nOpenCount;
+        this.mClosedCount   = nClosedCount;
+        this.mOverdueCount  = nOverdueCount;
+        this.mDueTodayCount = nDueTodayCount;
+    }
+
+    public int getOpenCount() {
+        return mOpenCount;
+    }
+
+    public int getClosedCount() {
+        return mClosedCount;
+    }
+
+    public int getOverdueCount() {
+        return mOverdueCount;
+    }
+
+    public int getDueTodayCount() {
+        return mDueTodayCount;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TodoStats)) {
+            return false;
+        }
+        TodoStats other = (TodoStats) obj;
+        return mOpenCount == other.mOpenCount
+                && mClosedCount == other.mClosedCount
+                && mOverdueCount == other.mOverdueCount
+                && mDueTodayCount == other.mDueTodayCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((mOpenCount * 31 + mClosedCount) * 31 + mOverdueCount) * 31 + mDueTodayCount;
+    }
+
+    @Override
+    public String toString() {
+        return "open=" + mOpenCount + " closed=" + mClosedCount
+                + " overdue=" + mOverdueCount + " dueToday=" + mDueTodayCount;
+    }
+}
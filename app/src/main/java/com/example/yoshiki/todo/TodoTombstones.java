@@ -0,0 +1,74 @@
+package com.example.yoshiki.todo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 削除したTodoアイテムを、完全に削除するまでメモリ上に保持するクラス（SQLite以外のTodoRepository用）.
+ * 削除した順に保持し、元に戻す場合はPrimaryKeyで、完全に削除する場合は削除日時で取り出す.
+ * 同期は呼び出し元で行うこと.
+ * @author 清兼
+ */
+class TodoTombstones {
+
+    /**
+     * メンバ変数定義
+     */
+    private final LinkedHashMap<Long, Tombstone> mTombstones = new LinkedHashMap<Long, Tombstone>();   // PrimaryKey→削除したTodoアイテム（削除順）
+
+    /**
+     * 削除したTodoアイテムを保持する.
+     *
+     * @param item 削除したTodoアイテム
+     * @param nDeletedAt 削除日時（エポックミリ秒）
+     */
+    void put(TodoItem item, long nDeletedAt)
+    {
+        mTombstones.put(item.getPrimaryKey(), new Tombstone(item, nDeletedAt));
+    }
+
+    /**
+     * 削除したTodoアイテムを取り出す（元に戻す場合）.
+     *
+     * @param nPrimaryKey PrimaryKey
+     * @return 削除したTodoアイテム。保持していない場合はnull
+     */
+    TodoItem remove(long nPrimaryKey)
+    {
+        Tombstone tombstone = mTombstones.remove(nPrimaryKey);
+        return (tombstone == null) ? null : tombstone.mItem;
+    }
+
+    /**
+     * 削除日時が指定日時より前のTodoアイテムを、最大nLimit件だけ破棄する.
+     *
+     * @param nDeletedBefore 削除日時の上限（エポックミリ秒、この日時を含まない）
+     * @param nLimit 最大件数
+     * @return 破棄した件数
+     */
+    int purge(long nDeletedBefore, int nLimit)
+    {
+        int nPurged = 0;
+        Iterator<Tombstone> iterator = mTombstones.values().iterator();
+        while (nPurged < nLimit && iterator.hasNext()) {
+            if (iterator.next().mDeletedAt < nDeletedBefore) {
+                iterator.remove();
+                nPurged++;
+            }
+        }
+        return nPurged;
+    }
+
+    /**
+     * 削除したTodoアイテムと削除日時.
+     */
+    private static class Tombstone {
+        final TodoItem mItem;
+        final long mDeletedAt;
+
+        Tombstone(TodoItem item, long nDeletedAt) {
+            mItem = item;
+            mDeletedAt = nDeletedAt;
+        }
+    }
+}
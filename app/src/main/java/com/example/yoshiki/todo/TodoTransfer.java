@@ -0,0 +1,647 @@
+package com.example.yoshiki.todo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Todoアイテムのエクスポート・インポート（JSON Lines, CSV）を行うクラス.
+ * 読み書きは一定件数毎に行うため、メモリ使用量はTodoアイテムの件数によらない.
+ *
+ * インポートは、読み込みスレッドが一定件数毎のレコードを解析スレッドへ渡し、
+ * 呼び出し元のスレッドが解析結果を読み込み順に1トランザクションずつ登録する.
+ * 解析待ちの件数には上限があり、登録が遅い場合は読み込みを待たせる.
+ * @author 清兼
+ */
+public final class TodoTransfer {
+
+    /**
+     * 形式定義
+     */
+    public static final int N_FORMAT_JSON_LINES = 0;    // 1行1オブジェクトのJSON
+    public static final int N_FORMAT_CSV        = 1;    // RFC 4180形式のCSV（1行目は見出し）
+
+    /**
+     * 形式毎のファイル拡張子（形式定義の順）
+     */
+    public static final String[] STR_EXTENSIONS = {"jsonl", "csv"};
+
+    /**
+     * 1回に読み込み・登録する件数
+     */
+    private static final int N_EXPORT_PAGE_SIZE = 500;  // エクスポートで1回に取得する件数
+    private static final int N_IMPORT_BATCH_SIZE = 1000; // インポートで1トランザクションに登録する件数
+
+    /**
+     * 解析スレッド1つあたりの、解析待ち・登録待ちのバッチ数の上限
+     */
+    private static final int N_PENDING_BATCHES_PER_THREAD = 2;
+
+    /**
+     * CSVの見出し
+     */
+    private static final String STR_CSV_HEADER = "_id,title,body,date,state";
+
+    /**
+     * 項目名（JSONのキー、CSVの列の順）
+     */
+    private static final String[] STR_FIELDS = {
+            TodoDbAdapter.STR_KEY_PRIMARY,
+            TodoDbAdapter.STR_KEY_TITLE,
+            TodoDbAdapter.STR_KEY_BODY,
+            TodoDbAdapter.STR_KEY_DATE,
+            TodoDbAdapter.STR_KEY_STATE};
+
+    private TodoTransfer()
+    {
+    }
+
+    /**
+     * 全Todoアイテムを_id順に書き出す.
+     *
+     * @param repository 書き出し元（open済み）
+     * @param writer 書き出し先（閉じない）
+     * @param nFormat 形式
+     * @return 書き出した件数
+     * @throws IOException 書き込みに失敗した場合
+     */
+    public static int exportTo(TodoRepository repository, Writer writer, int nFormat) throws IOException
+    {
+        BufferedWriter out = new BufferedWriter(writer);
+        StringBuilder sb = new StringBuilder();
+        if (nFormat == N_FORMAT_CSV) {
+            out.write(STR_CSV_HEADER);
+            out.write('\n');
+        }
+
+        int nCount = 0;
+        long nAfterKey = 0;
+        while (true) {
+            List<TodoItem> items = repository.fetchTodoItemsAfter(nAfterKey, N_EXPORT_PAGE_SIZE);
+            for (TodoItem item : items) {
+                sb.setLength(0);
+                if (nFormat == N_FORMAT_CSV) {
+                    appendCsv(sb, item);
+                } else {
+                    appendJson(sb, item);
+                }
+                sb.append('\n');
+                out.append(sb);
+            }
+            nCount += items.size();
+            if (items.size() < N_EXPORT_PAGE_SIZE) {
+                break;
+            }
+            nAfterKey = items.get(items.size() - 1).getPrimaryKey();
+        }
+        out.flush();
+        return nCount;
+    }
+
+    /**
+     * Todoアイテムを読み込み、新しいTodoアイテムとして登録する（_idは採番し直す）.
+     * 不正なレコードがあった場合は、それまでに登録したバッチを残して中断する.
+     *
+     * @param reader 読み込み元（閉じない）
+     * @param nFormat 形式
+     * @param repository 登録先（open済み、呼び出し元のスレッドからのみ書き込む）
+     * @param nThreads 解析スレッド数
+     * @return 登録した件数
+     * @throws IOException 読み込みに失敗した場合、または不正なレコードがあった場合
+     */
+    public static int importFrom(
+            Reader reader,
+            int nFormat,
+            TodoRepository repository,
+            int nThreads) throws IOException
+    {
+        ExecutorService parsers = Executors.newFixedThreadPool(nThreads);
+        BlockingQueue<Future<List<TodoItem>>> pending =
+                new ArrayBlockingQueue<Future<List<TodoItem>>>(nThreads * N_PENDING_BATCHES_PER_THREAD);
+        RecordReader recordReader = new RecordReader(reader, nFormat, parsers, pending);
+        Thread readerThread = new Thread(recordReader, "TodoTransfer-read");
+        readerThread.start();
+
+        int nCount = 0;
+        try {
+            // 解析結果を読み込み順に登録
+            while (true) {
+                Future<List<TodoItem>> future = pending.take();
+                if (future == END_OF_RECORDS) {
+                    break;
+                }
+                List<TodoItem> items = future.get();
+                repository.createTodoItems(items);
+                nCount += items.size();
+            }
+            if (recordReader.mError != null) {
+                throw recordReader.mError;
+            }
+            return nCount;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted after " + nCount + " items", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            // 中断した場合も読み込みスレッドを終了させる
+            recordReader.mCancelled = true;
+            readerThread.interrupt();
+            pending.clear();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * 読み込みの終端を表すFuture
+     */
+    private static final FutureTask<List<TodoItem>> END_OF_RECORDS =
+            new FutureTask<List<TodoItem>>(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, null);
+
+    /**
+     * 読み込み元からレコードを読み、一定件数毎に解析スレッドへ渡すRunnable.
+     * 終端にはEND_OF_RECORDSを置く.
+     */
+    private static class RecordReader implements Runnable {
+
+        private final Reader mReader;
+        private final int mFormat;
+        private final ExecutorService mParsers;
+        private final BlockingQueue<Future<List<TodoItem>>> mPending;
+        private volatile IOException mError;    // 読み込みエラー
+        private volatile boolean mCancelled;    // 登録側で中断されたか
+
+        RecordReader(
+                Reader reader,
+                int nFormat,
+                ExecutorService parsers,
+                BlockingQueue<Future<List<TodoItem>>> pending)
+        {
+            mReader = reader;
+            mFormat = nFormat;
+            mParsers = parsers;
+            mPending = pending;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    readRecords();
+                } catch (IOException e) {
+                    mError = e;
+                }
+                mPending.put(END_OF_RECORDS);
+            } catch (InterruptedException e) {
+                // 登録側で中断された
+            }
+        }
+
+        private void readRecords() throws IOException, InterruptedException {
+            BufferedReader in = new BufferedReader(mReader);
+            List<String> records = new ArrayList<String>(N_IMPORT_BATCH_SIZE);
+            int nRecord = 0;        // 読み込んだレコード数（見出しを除く）
+            int nLine = 0;          // 読み込んだ行数
+            StringBuilder sb = new StringBuilder();
+            String strLine;
+            while (!mCancelled && (strLine = in.readLine()) != null) {
+                nLine++;
+                if (mFormat == N_FORMAT_CSV) {
+                    // 引用符内の改行は、閉じるまで同じレコードとして扱う
+                    sb.append(strLine);
+                    if (countQuotes(sb) % 2 != 0) {
+                        sb.append('\n');
+                        continue;
+                    }
+                    strLine = sb.toString();
+                    sb.setLength(0);
+                    if (nLine == 1 && strLine.equals(STR_CSV_HEADER)) {
+                        continue;
+                    }
+                }
+                if (strLine.length() == 0) {
+                    continue;
+                }
+
+                records.add(strLine);
+                nRecord++;
+                if (records.size() == N_IMPORT_BATCH_SIZE) {
+                    submit(records, nRecord - records.size() + 1);
+                    records = new ArrayList<String>(N_IMPORT_BATCH_SIZE);
+                }
+            }
+            if (sb.length() > 0) {
+                throw new IOException("line " + nLine + ": unterminated quote");
+            }
+            if (!records.isEmpty()) {
+                submit(records, nRecord - records.size() + 1);
+            }
+        }
+
+        /**
+         * 解析スレッドへ渡す. 解析待ち・登録待ちが上限に達している場合は待つ.
+         */
+        private void submit(final List<String> records, final int nFirstRecord) throws InterruptedException {
+            mPending.put(mParsers.submit(new Callable<List<TodoItem>>() {
+                @Override
+                public List<TodoItem> call() throws IOException {
+                    List<TodoItem> items = new ArrayList<TodoItem>(records.size());
+                    for (int nIndex = 0; nIndex < records.size(); nIndex++) {
+                        String strRecord = records.get(nIndex);
+                        TodoItem item = (mFormat == N_FORMAT_CSV) ? parseCsv(strRecord) : parseJson(strRecord);
+                        if (item == null) {
+                            throw new IOException("record " + (nFirstRecord + nIndex) + ": invalid " + STR_EXTENSIONS[mFormat]);
+                        }
+                        items.add(item);
+                    }
+                    return items;
+                }
+            }));
+        }
+    }
+
+    /**
+     * TodoアイテムをJSONのオブジェクトとして追加する.
+     *
+     * @param sb 追加先
+     * @param item Todoアイテム
+     */
+    static void appendJson(StringBuilder sb, TodoItem item)
+    {
+        sb.append("{\"").append(STR_FIELDS[0]).append("\":").append(item.getPrimaryKey());
+        String[] strValues = valuesOf(item);
+        for (int nIndex = 1; nIndex < STR_FIELDS.length; nIndex++) {
+            sb.append(",\"").append(STR_FIELDS[nIndex]).append("\":");
+            appendJsonString(sb, strValues[nIndex]);
+        }
+        sb.append('}');
+    }
+
+    /**
+     * JSONのオブジェクト（1行）をTodoアイテムへ変換する.
+     * 値は文字列と数値のみを扱い、未知のキーは無視する.
+     *
+     * @param strRecord JSONのオブジェクト
+     * @return Todoアイテム。形式が不正、または項目が不足している場合はnull
+     */
+    static TodoItem parseJson(String strRecord)
+    {
+        String[] strValues = new String[STR_FIELDS.length];
+        StringBuilder sb = new StringBuilder();
+        int nLength = strRecord.length();
+        int nPos = skipSpaces(strRecord, 0);
+        if (nPos >= nLength || strRecord.charAt(nPos) != '{') {
+            return null;
+        }
+        nPos = skipSpaces(strRecord, nPos + 1);
+        if (nPos < nLength && strRecord.charAt(nPos) == '}') {
+            return null;
+        }
+
+        while (true) {
+            // キー
+            if (nPos >= nLength || strRecord.charAt(nPos) != '"') {
+                return null;
+            }
+            sb.setLength(0);
+            nPos = readJsonString(strRecord, nPos, sb);
+            if (nPos < 0) {
+                return null;
+            }
+            int nField = indexOfField(sb);
+            nPos = skipSpaces(strRecord, nPos);
+            if (nPos >= nLength || strRecord.charAt(nPos) != ':') {
+                return null;
+            }
+            nPos = skipSpaces(strRecord, nPos + 1);
+
+            // 値（文字列または数値）
+            sb.setLength(0);
+            if (nPos < nLength && strRecord.charAt(nPos) == '"') {
+                nPos = readJsonString(strRecord, nPos, sb);
+                if (nPos < 0) {
+                    return null;
+                }
+            } else {
+                int nStart = nPos;
+                while (nPos < nLength && "+-.0123456789eE".indexOf(strRecord.charAt(nPos)) >= 0) {
+                    nPos++;
+                }
+                if (nPos == nStart) {
+                    return null;
+                }
+                sb.append(strRecord, nStart, nPos);
+            }
+            if (nField >= 0) {
+                strValues[nField] = sb.toString();
+            }
+
+            // 次の項目
+            nPos = skipSpaces(strRecord, nPos);
+            if (nPos >= nLength) {
+                return null;
+            }
+            char c = strRecord.charAt(nPos);
+            nPos = skipSpaces(strRecord, nPos + 1);
+            if (c == '}') {
+                break;
+            }
+            if (c != ',') {
+                return null;
+            }
+        }
+        if (skipSpaces(strRecord, nPos) != nLength) {
+            return null;
+        }
+        return toTodoItem(strValues);
+    }
+
+    /**
+     * TodoアイテムをCSVの1レコードとして追加する.
+     *
+     * @param sb 追加先
+     * @param item Todoアイテム
+     */
+    static void appendCsv(StringBuilder sb, TodoItem item)
+    {
+        sb.append(item.getPrimaryKey());
+        String[] strValues = valuesOf(item);
+        for (int nIndex = 1; nIndex < STR_FIELDS.length; nIndex++) {
+            sb.append(',');
+            String strValue = strValues[nIndex];
+            boolean bQuote = false;
+            for (int nPos = 0; nPos < strValue.length() && !bQuote; nPos++) {
+                char c = strValue.charAt(nPos);
+                bQuote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+            }
+            if (!bQuote) {
+                sb.append(strValue);
+                continue;
+            }
+            sb.append('"');
+            for (int nPos = 0; nPos < strValue.length(); nPos++) {
+                char c = strValue.charAt(nPos);
+                if (c == '"') {
+                    sb.append('"');
+                }
+                sb.append(c);
+            }
+            sb.append('"');
+        }
+    }
+
+    /**
+     * CSVの1レコードをTodoアイテムへ変換する.
+     *
+     * @param strRecord CSVのレコード（引用符内の改行を含む場合がある）
+     * @return Todoアイテム。形式が不正、または列数が異なる場合はnull
+     */
+    static TodoItem parseCsv(String strRecord)
+    {
+        String[] strValues = new String[STR_FIELDS.length];
+        StringBuilder sb = new StringBuilder();
+        int nLength = strRecord.length();
+        int nPos = 0;
+        int nField = 0;
+        while (true) {
+            if (nField >= STR_FIELDS.length) {
+                return null;
+            }
+            sb.setLength(0);
+            if (nPos < nLength && strRecord.charAt(nPos) == '"') {
+                // 引用符で囲まれた値（""は"を表す）
+                nPos++;
+                while (true) {
+                    if (nPos >= nLength) {
+                        return null;
+                    }
+                    char c = strRecord.charAt(nPos++);
+                    if (c == '"') {
+                        if (nPos < nLength && strRecord.charAt(nPos) == '"') {
+                            nPos++;
+                        } else {
+                            break;
+                        }
+                    }
+                    sb.append(c);
+                }
+            } else {
+                while (nPos < nLength && strRecord.charAt(nPos) != ',') {
+                    char c = strRecord.charAt(nPos++);
+                    if (c == '"') {
+                        return null;
+                    }
+                    sb.append(c);
+                }
+            }
+            strValues[nField++] = sb.toString();
+
+            if (nPos >= nLength) {
+                break;
+            }
+            if (strRecord.charAt(nPos++) != ',') {
+                return null;
+            }
+        }
+        return (nField == STR_FIELDS.length) ? toTodoItem(strValues) : null;
+    }
+
+    /**
+     * 項目の値を取得（項目名の順、_idは含まない）.
+     */
+    private static String[] valuesOf(TodoItem item)
+    {
+        return new String[]{null, nonNull(item.getTitle()), nonNull(item.getBody()),
+                nonNull(item.getDate()), nonNull(item.getState())};
+    }
+
+    private static String nonNull(String str)
+    {
+        return (str == null) ? "" : str;
+    }
+
+    /**
+     * 読み込んだ項目の値からTodoアイテムを生成する.
+     * 期限は"yyyy/MM/dd"形式へ揃え、Stateは定義済みの値のみ受け付ける.
+     *
+     * @param strValues 項目の値（項目名の順、_idは使わない）
+     * @return Todoアイテム（PrimaryKey未採番）。項目が不足している場合はnull
+     */
+    private static TodoItem toTodoItem(String[] strValues)
+    {
+        for (int nIndex = 1; nIndex < STR_FIELDS.length; nIndex++) {
+            if (strValues[nIndex] == null) {
+                return null;
+            }
+        }
+        String strState = strValues[4];
+        if (!TodoDbAdapter.STR_STATE_OPEN.equals(strState) && !TodoDbAdapter.STR_STATE_CLOSE.equals(strState)) {
+            return null;
+        }
+        int nDate = TodoDateCodec.parse(strValues[3]);
+        String strDate = (nDate == TodoDateCodec.N_NO_DATE) ? strValues[3] : TodoDateCodec.format(nDate);
+        return new TodoItem(strValues[1], strValues[2], strDate, strState);
+    }
+
+    /**
+     * 項目名の位置を取得.
+     *
+     * @return 位置。未知の項目名の場合は-1
+     */
+    private static int indexOfField(CharSequence strName)
+    {
+        for (int nIndex = 0; nIndex < STR_FIELDS.length; nIndex++) {
+            if (STR_FIELDS[nIndex].contentEquals(strName)) {
+                return nIndex;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * JSONの文字列として、必要な文字をエスケープして追加する.
+     */
+    private static void appendJsonString(StringBuilder sb, String str)
+    {
+        sb.append('"');
+        for (int nPos = 0; nPos < str.length(); nPos++) {
+            char c = str.charAt(nPos);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append("\\u");
+                        String strHex = Integer.toHexString(c);
+                        for (int nPad = strHex.length(); nPad < 4; nPad++) {
+                            sb.append('0');
+                        }
+                        sb.append(strHex);
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * JSONの文字列を読み込み、エスケープを戻して追加する.
+     *
+     * @param str 読み込み元
+     * @param nPos 開始の引用符の位置
+     * @param sb 追加先
+     * @return 終了の引用符の次の位置。形式が不正な場合は-1
+     */
+    private static int readJsonString(String str, int nPos, StringBuilder sb)
+    {
+        int nLength = str.length();
+        nPos++;
+        while (nPos < nLength) {
+            char c = str.charAt(nPos++);
+            if (c == '"') {
+                return nPos;
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (nPos >= nLength) {
+                return -1;
+            }
+            char escaped = str.charAt(nPos++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (nPos + 4 > nLength) {
+                        return -1;
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(str.substring(nPos, nPos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        return -1;
+                    }
+                    nPos += 4;
+                    break;
+                default:
+                    return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(String str, int nPos)
+    {
+        while (nPos < str.length() && Character.isWhitespace(str.charAt(nPos))) {
+            nPos++;
+        }
+        return nPos;
+    }
+
+    /**
+     * 引用符の数を数える.
+     */
+    private static int countQuotes(CharSequence str)
+    {
+        int nCount = 0;
+        for (int nPos = 0; nPos < str.length(); nPos++) {
+            if (str.charAt(nPos) == '"') {
+                nCount++;
+            }
+        }
+        return nCount;
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.yoshiki.todo;
+
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+/**
+ * TodoRepositoryの各実装が満たすべき動作の共通テスト.
+ * JVM上のテスト（test）と端末上のテスト（androidTest）の両方から、実装毎に呼び出す.
+ * @author 清兼
+ */
+public class TodoRepositoryContract extends Assert {
+
+    /**
+     * メンバ変数定義
+     */
+    private final TodoRepository mRepository;   // テスト対象（空の状態で渡すこと）
+
+    /**
+     * コンストラクタ
+     *
+     * @param repository テスト対象（open済み、かつTodoアイテムが登録されていないこと）
+     */
+    public TodoRepositoryContract(TodoRepository repository)
+    {
+        this.mRepository = repository;
+    }
+
+    /**
+     * 登録したTodoアイテムをPrimaryKeyで取得できること.
+     */
+    public void verifyCreateAndFetch()
+    {
+        long nPrimaryKey = mRepository.createTodoItem("title", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        assertTrue(nPrimaryKey > 0);
+
+        TodoItem item = mRepository.fetchTodoItem(nPrimaryKey);
+        assertNotNull(item);
+        assertEquals(nPrimaryKey, item.getPrimaryKey());
+        assertEquals("title", item.getTitle());
+        assertEquals("body", item.getBody());
+        assertEquals("2015/07/13", item.getDate());
+        assertEquals(TodoDbAdapter.STR_STATE_OPEN, item.getState());
+
+        // 存在しないPrimaryKey
+        assertNull(mRepository.fetchTodoItem(nPrimaryKey + 1000));
+    }
+
+    /**
+     * 一括登録したTodoアイテムが、登録順に昇順のPrimaryKeyで採番されること.
+     */
+    public void verifyCreateTodoItems()
+    {
+        long[] nPrimaryKeys = createItems(5, TodoDbAdapter.STR_STATE_OPEN);
+        assertEquals(5, nPrimaryKeys.length);
+        for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+            if (nIndex > 0) {
+                assertTrue(nPrimaryKeys[nIndex] > nPrimaryKeys[nIndex - 1]);
+            }
+            assertEquals("title" + nIndex, mRepository.fetchTodoItem(nPrimaryKeys[nIndex]).getTitle());
+        }
+    }
+
+    /**
+     * 複数のPrimaryKeyで取得した場合、存在するものが_id順に重複なく返ること.
+     */
+    public void verifyFetchTodoItems()
+    {
+        long[] nPrimaryKeys = createItems(3, TodoDbAdapter.STR_STATE_OPEN);
+
+        List<TodoItem> items = mRepository.fetchTodoItems(
+                new long[]{nPrimaryKeys[2], nPrimaryKeys[0], nPrimaryKeys[2] + 1000, nPrimaryKeys[0]});
+        assertEquals(2, items.size());
+        assertEquals(nPrimaryKeys[0], items.get(0).getPrimaryKey());
+        assertEquals(nPrimaryKeys[2], items.get(1).getPrimaryKey());
+    }
+
+    /**
+     * リスト表示用に取得した場合、存在するものが_id順に重複なく返り、内容（body）を含まないこと.
+     */
+    public void verifyFetchListItems()
+    {
+        long[] nPrimaryKeys = createItems(3, TodoDbAdapter.STR_STATE_OPEN);
+
+        List<TodoItem> items = mRepository.fetchListItems(
+                new long[]{nPrimaryKeys[2], nPrimaryKeys[0], nPrimaryKeys[2] + 1000, nPrimaryKeys[0]});
+        assertEquals(2, items.size());
+        for (int nIndex = 0; nIndex < items.size(); nIndex++) {
+            TodoItem expected = mRepository.fetchTodoItem(nPrimaryKeys[nIndex * 2]);
+            TodoItem item = items.get(nIndex);
+            assertEquals(expected.getPrimaryKey(), item.getPrimaryKey());
+            assertEquals(expected.getTitle(), item.getTitle());
+            assertEquals(expected.getDate(), item.getDate());
+            assertEquals(expected.getState(), item.getState());
+            assertNull(item.getBody());
+        }
+        assertEquals(0, mRepository.fetchListItems(new long[0]).size());
+    }
+
+    /**
+     * Stateが合致するTodoアイテムのみが_id順に取得できること.
+     */
+    public void verifyFetchTodoItemsByState()
+    {
+        long[] nOpen = createItems(3, TodoDbAdapter.STR_STATE_OPEN);
+        createItems(2, TodoDbAdapter.STR_STATE_CLOSE);
+
+        List<TodoItem> items = mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null);
+        assertEquals(3, items.size());
+        for (int nIndex = 0; nIndex < nOpen.length; nIndex++) {
+            assertEquals(nOpen[nIndex], items.get(nIndex).getPrimaryKey());
+        }
+        assertEquals(2, mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_CLOSE, null).size());
+    }
+
+    /**
+     * ページを順に取得すると、Stateが合致するTodoアイテムが全て重複なく_id順に取得できること.
+     */
+    public void verifyFetchTodoItemPage()
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 25; nIndex++) {
+            String strState = (nIndex % 3 == 0) ? TodoDbAdapter.STR_STATE_CLOSE : TodoDbAdapter.STR_STATE_OPEN;
+            items.add(new TodoItem("title" + nIndex, "body", "2015/07/13", strState));
+        }
+        mRepository.createTodoItems(items);
+        List<TodoItem> expected = mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null);
+
+        List<TodoItem> paged = new ArrayList<TodoItem>();
+        long nAfterKey = 0;
+        while (true) {
+            List<TodoItem> page = mRepository.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, nAfterKey, 4, null);
+            assertTrue(page.size() <= 4);
+            paged.addAll(page);
+            if (page.size() < 4) {
+                break;
+            }
+            nAfterKey = page.get(page.size() - 1).getPrimaryKey();
+        }
+
+        assertEquals(expected.size(), paged.size());
+        for (int nIndex = 0; nIndex < expected.size(); nIndex++) {
+            assertEquals(expected.get(nIndex).getPrimaryKey(), paged.get(nIndex).getPrimaryKey());
+            assertEquals(expected.get(nIndex).getTitle(), paged.get(nIndex).getTitle());
+            assertEquals(TodoDbAdapter.STR_STATE_OPEN, paged.get(nIndex).getState());
+        }
+    }
+
+    /**
+     * 並び順を指定してページを順に取得すると、Stateが合致するTodoアイテムが全て重複なく
+     * TodoItem.getComparatorの順に取得できること（タイトル順は英字の大文字・小文字を区別しない）.
+     */
+    public void verifySortedPages()
+    {
+        String[] strTitles = {"b", "A", "a", "_x", "B", "Äpfel", "äpfel", "日本", "\uFF21", "\uD83D\uDE00", "", "ab"};
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < strTitles.length * 2; nIndex++) {
+            String strState = (nIndex % 5 == 4) ? TodoDbAdapter.STR_STATE_CLOSE : TodoDbAdapter.STR_STATE_OPEN;
+            String strDate = "2015/07/" + (10 + nIndex % 5);
+            items.add(new TodoItem(strTitles[nIndex % strTitles.length], "body", strDate, strState));
+        }
+        mRepository.createTodoItems(items);
+
+        int[] nSortOrders = {TodoItem.N_SORT_CREATED, TodoItem.N_SORT_DUE_DATE, TodoItem.N_SORT_TITLE};
+        for (int nSortOrder : nSortOrders) {
+            List<TodoItem> expected = mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null);
+            Collections.sort(expected, TodoItem.getComparator(nSortOrder));
+
+            List<TodoItem> paged = new ArrayList<TodoItem>();
+            TodoItem after = null;
+            while (true) {
+                List<TodoItem> page = mRepository.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, nSortOrder, after, 3, null);
+                assertTrue(page.size() <= 3);
+                paged.addAll(page);
+                if (page.size() < 3) {
+                    break;
+                }
+                after = page.get(page.size() - 1);
+            }
+
+            assertEquals(expected.size(), paged.size());
+            for (int nIndex = 0; nIndex < expected.size(); nIndex++) {
+                String strMessage = "sort=" + nSortOrder + " index=" + nIndex;
+                assertEquals(strMessage, expected.get(nIndex).getPrimaryKey(), paged.get(nIndex).getPrimaryKey());
+                assertEquals(strMessage, expected.get(nIndex).getTitle(), paged.get(nIndex).getTitle());
+                assertEquals(strMessage, expected.get(nIndex).getDate(), paged.get(nIndex).getDate());
+            }
+        }
+
+        // 英字の大文字・小文字のみが異なるタイトルは同じ順位とし、_id順に並ぶ
+        List<String> titles = new ArrayList<String>();
+        for (TodoItem item : mRepository.fetchTodoItemPage(
+                TodoDbAdapter.STR_STATE_OPEN, TodoItem.N_SORT_TITLE, null, Integer.MAX_VALUE, null)) {
+            if (item.getTitle().equalsIgnoreCase("a")) {
+                titles.add(item.getTitle());
+            }
+        }
+        assertEquals(Arrays.asList("A", "a", "A"), titles);
+    }
+
+    /**
+     * 中断済みのシグナルを渡すと、State・ページ単位の取得がOperationCanceledExceptionで中断されること.
+     * CancellationSignalはAndroidのクラスのため、端末上のテストからのみ呼び出す.
+     */
+    public void verifyCanceledFetch()
+    {
+        createItems(5, TodoDbAdapter.STR_STATE_OPEN);
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        try {
+            mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, signal);
+            fail("fetchTodoItemsByState was not canceled");
+        } catch (OperationCanceledException e) {
+            // 期待通り
+        }
+        try {
+            mRepository.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, 0, 3, signal);
+            fail("fetchTodoItemPage was not canceled");
+        } catch (OperationCanceledException e) {
+            // 期待通り
+        }
+        try {
+            mRepository.fetchTodoItemPage(TodoDbAdapter.STR_STATE_OPEN, TodoItem.N_SORT_TITLE, null, 3, signal);
+            fail("sorted fetchTodoItemPage was not canceled");
+        } catch (OperationCanceledException e) {
+            // 期待通り
+        }
+
+        // 中断しないシグナルでは全件取得できる
+        assertEquals(5, mRepository.fetchTodoItemPage(
+                TodoDbAdapter.STR_STATE_OPEN, 0, 10, new CancellationSignal()).size());
+    }
+
+    /**
+     * 順に取得すると、Stateによらず全Todoアイテムが全Column分、重複なく_id順に取得できること.
+     */
+    public void verifyFetchTodoItemsAfter()
+    {
+        long[] nOpenKeys = createItems(5, TodoDbAdapter.STR_STATE_OPEN);
+        long[] nCloseKeys = createItems(3, TodoDbAdapter.STR_STATE_CLOSE);
+
+        List<TodoItem> all = new ArrayList<TodoItem>();
+        long nAfterKey = 0;
+        while (true) {
+            List<TodoItem> items = mRepository.fetchTodoItemsAfter(nAfterKey, 3);
+            assertTrue(items.size() <= 3);
+            all.addAll(items);
+            if (items.size() < 3) {
+                break;
+            }
+            nAfterKey = items.get(items.size() - 1).getPrimaryKey();
+        }
+
+        assertEquals(8, all.size());
+        assertEquals(nOpenKeys[0], all.get(0).getPrimaryKey());
+        assertEquals(nCloseKeys[2], all.get(7).getPrimaryKey());
+        TodoItem item = all.get(5);
+        assertEquals("title0", item.getTitle());
+        assertEquals("body0", item.getBody());
+        assertEquals("2015/07/13", item.getDate());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+    }
+
+    /**
+     * 指定日以降のStateが合致するTodoアイテムが、期限, _idの順に指定件数まで取得できること.
+     */
+    public void verifyFetchTodoItemsByDueDate()
+    {
+        long[] nPrimaryKeys = mRepository.createTodoItems(Arrays.asList(
+                new TodoItem("a", "body", "2015/07/20", TodoDbAdapter.STR_STATE_OPEN),
+                new TodoItem("b", "body", "2015/07/12", TodoDbAdapter.STR_STATE_OPEN),
+                new TodoItem("c", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN),
+                new TodoItem("d", "body", "2015/07/14", TodoDbAdapter.STR_STATE_CLOSE),
+                new TodoItem("e", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN)));
+
+        List<TodoItem> items = mRepository.fetchTodoItemsByDueDate(TodoDbAdapter.STR_STATE_OPEN, "2015/07/13", 10);
+        assertEquals(3, items.size());
+        assertEquals(nPrimaryKeys[2], items.get(0).getPrimaryKey());
+        assertEquals(nPrimaryKeys[4], items.get(1).getPrimaryKey());
+        assertEquals(nPrimaryKeys[0], items.get(2).getPrimaryKey());
+
+        // 件数の上限
+        items = mRepository.fetchTodoItemsByDueDate(TodoDbAdapter.STR_STATE_OPEN, "2015/07/01", 2);
+        assertEquals(2, items.size());
+        assertEquals(nPrimaryKeys[1], items.get(0).getPrimaryKey());
+        assertEquals(nPrimaryKeys[2], items.get(1).getPrimaryKey());
+
+        assertEquals(0, mRepository.fetchTodoItemsByDueDate(TodoDbAdapter.STR_STATE_OPEN, "2015/07/21", 10).size());
+    }
+
+    /**
+     * nullを指定した項目は更新されず、存在しないTodoアイテムの更新は失敗すること.
+     */
+    public void verifyUpdateTodoItem()
+    {
+        long nPrimaryKey = mRepository.createTodoItem("title", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+
+        assertTrue(mRepository.updateTodoItem(nPrimaryKey, "new title", null, null, TodoDbAdapter.STR_STATE_CLOSE));
+        TodoItem item = mRepository.fetchTodoItem(nPrimaryKey);
+        assertEquals("new title", item.getTitle());
+        assertEquals("body", item.getBody());
+        assertEquals("2015/07/13", item.getDate());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+
+        assertFalse(mRepository.updateTodoItem(nPrimaryKey + 1000, "title", "body", "2015/07/13",
+                TodoDbAdapter.STR_STATE_OPEN));
+    }
+
+    /**
+     * 状態を一括更新すると、状態が変わった件数が返り、他の項目は変わらないこと.
+     */
+    public void verifyUpdateTodoItemsState()
+    {
+        long[] nPrimaryKeys = createItems(4, TodoDbAdapter.STR_STATE_OPEN);
+        mRepository.updateTodoItem(nPrimaryKeys[0], null, null, null, TodoDbAdapter.STR_STATE_CLOSE);
+
+        // 既に完了済みの1件と存在しない1件は数えない
+        assertEquals(2, mRepository.updateTodoItemsState(
+                new long[]{nPrimaryKeys[0], nPrimaryKeys[1], nPrimaryKeys[2], nPrimaryKeys[3] + 1000},
+                TodoDbAdapter.STR_STATE_CLOSE));
+        assertEquals(1, mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null).size());
+        TodoItem item = mRepository.fetchTodoItem(nPrimaryKeys[1]);
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+        assertEquals("title1", item.getTitle());
+        assertEquals("body1", item.getBody());
+
+        // 未完了に戻す
+        assertEquals(3, mRepository.updateTodoItemsState(nPrimaryKeys, TodoDbAdapter.STR_STATE_OPEN));
+        assertEquals(4, mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null).size());
+        assertEquals(0, mRepository.updateTodoItemsState(new long[0], TodoDbAdapter.STR_STATE_OPEN));
+    }
+
+    /**
+     * 削除した件数が返り、削除したTodoアイテムは取得できないこと.
+     */
+    public void verifyDeleteNote()
+    {
+        long[] nPrimaryKeys = createItems(4, TodoDbAdapter.STR_STATE_OPEN);
+
+        assertEquals(2, mRepository.deleteNote(new long[]{nPrimaryKeys[1], nPrimaryKeys[3], nPrimaryKeys[3] + 1000}));
+        assertNull(mRepository.fetchTodoItem(nPrimaryKeys[1]));
+        assertNull(mRepository.fetchTodoItem(nPrimaryKeys[3]));
+        assertNotNull(mRepository.fetchTodoItem(nPrimaryKeys[0]));
+        assertEquals(2, mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null).size());
+        assertEquals(0, mRepository.deleteNote(new long[]{nPrimaryKeys[1]}));
+    }
+
+    /**
+     * 削除したTodoアイテムが、完全に削除するまでは同じPrimaryKey・内容で元に戻せること.
+     */
+    public void verifyUndeleteAndPurge()
+    {
+        long[] nPrimaryKeys = createItems(4, TodoDbAdapter.STR_STATE_OPEN);
+        mRepository.updateTodoItemsState(new long[]{nPrimaryKeys[2]}, TodoDbAdapter.STR_STATE_CLOSE);
+        assertEquals(2, mRepository.deleteNote(new long[]{nPrimaryKeys[1], nPrimaryKeys[2]}));
+
+        // 削除したTodoアイテムは取得・更新できない
+        assertEquals(2, mRepository.fetchTodoItemsAfter(0, 100).size());
+        assertEquals(2, mRepository.fetchTodoItems(nPrimaryKeys).size());
+        assertFalse(mRepository.updateTodoItem(nPrimaryKeys[1], "new title", null, null, null));
+        assertEquals(0, mRepository.updateTodoItemsState(new long[]{nPrimaryKeys[1]}, TodoDbAdapter.STR_STATE_CLOSE));
+
+        // 削除していないもの・存在しないものは数えない
+        assertEquals(1, mRepository.undeleteTodoItems(new long[]{nPrimaryKeys[2], nPrimaryKeys[3], nPrimaryKeys[3] + 1000}));
+        TodoItem item = mRepository.fetchTodoItem(nPrimaryKeys[2]);
+        assertNotNull(item);
+        assertEquals("title2", item.getTitle());
+        assertEquals("body2", item.getBody());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+        assertEquals(0, mRepository.undeleteTodoItems(new long[]{nPrimaryKeys[2]}));
+
+        // _id順の位置に戻る
+        List<TodoItem> items = mRepository.fetchTodoItemsAfter(0, 100);
+        assertEquals(3, items.size());
+        assertEquals(nPrimaryKeys[2], items.get(1).getPrimaryKey());
+
+        // 削除日時が上限以降のものは完全に削除しない
+        assertEquals(0, mRepository.purgeDeletedTodoItems(0, 100));
+        long nDeletedBefore = System.currentTimeMillis() + 1000;
+        assertEquals(1, mRepository.purgeDeletedTodoItems(nDeletedBefore, 100));
+        assertEquals(0, mRepository.purgeDeletedTodoItems(nDeletedBefore, 100));
+        assertEquals(0, mRepository.undeleteTodoItems(new long[]{nPrimaryKeys[1]}));
+        assertNull(mRepository.fetchTodoItem(nPrimaryKeys[1]));
+    }
+
+    /**
+     * 登録・更新・削除が変更通知されること.
+     */
+    public void verifyChangeNotification()
+    {
+        final List<String> events = new ArrayList<String>();
+        TodoChangeNotifier.Listener listener = new TodoChangeNotifier.Listener() {
+            @Override
+            public void onTodoItemsChanged(int nChange, long[] nPrimaryKeys) {
+                events.add(nChange + ":" + Arrays.toString(nPrimaryKeys));
+            }
+        };
+
+        TodoChangeNotifier.registerListener(listener);
+        try {
+            long nPrimaryKey = mRepository.createTodoItem("title", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+            mRepository.updateTodoItem(nPrimaryKey, "new title", null, null, null);
+            mRepository.deleteNote(new long[]{nPrimaryKey});
+
+            assertEquals(Arrays.asList(
+                    TodoChangeNotifier.N_CHANGE_INSERT + ":[" + nPrimaryKey + "]",
+                    TodoChangeNotifier.N_CHANGE_UPDATE + ":[" + nPrimaryKey + "]",
+                    TodoChangeNotifier.N_CHANGE_DELETE + ":[" + nPrimaryKey + "]"), events);
+        } finally {
+            TodoChangeNotifier.unregisterListener(listener);
+        }
+    }
+
+    /**
+     * テスト用のTodoアイテムを一括登録する.
+     *
+     * @param nCount 登録件数
+     * @param strState Todo状態
+     * @return 採番されたPrimaryKey
+     */
+    private long[] createItems(int nCount, String strState)
+    {
+        List<TodoItem> items = new ArrayList<TodoItem>(nCount);
+        for (int nIndex = 0; nIndex < nCount; nIndex++) {
+            items.add(new TodoItem("title" + nIndex, "body" + nIndex, "2015/07/13", strState));
+        }
+        return mRepository.createTodoItems(items);
+    }
+}
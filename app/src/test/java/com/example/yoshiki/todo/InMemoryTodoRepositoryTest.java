@@ -0,0 +1,77 @@
+package com.example.yoshiki.todo;
+
+import junit.framework.TestCase;
+
+/**
+ * InMemoryTodoRepositoryのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class InMemoryTodoRepositoryTest extends TestCase {
+
+    /**
+     * メンバ変数定義
+     */
+    private TodoRepositoryContract mContract;   // 共通テスト
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContract = new TodoRepositoryContract(new InMemoryTodoRepository().open());
+    }
+
+    public void testCreateAndFetch() {
+        mContract.verifyCreateAndFetch();
+    }
+
+    public void testCreateTodoItems() {
+        mContract.verifyCreateTodoItems();
+    }
+
+    public void testFetchTodoItems() {
+        mContract.verifyFetchTodoItems();
+    }
+
+    public void testFetchListItems() {
+        mContract.verifyFetchListItems();
+    }
+
+    public void testFetchTodoItemsByState() {
+        mContract.verifyFetchTodoItemsByState();
+    }
+
+    public void testFetchTodoItemPage() {
+        mContract.verifyFetchTodoItemPage();
+    }
+
+    public void testSortedPages() {
+        mContract.verifySortedPages();
+    }
+
+    public void testFetchTodoItemsAfter() {
+        mContract.verifyFetchTodoItemsAfter();
+    }
+
+    public void testFetchTodoItemsByDueDate() {
+        mContract.verifyFetchTodoItemsByDueDate();
+    }
+
+    public void testUpdateTodoItem() {
+        mContract.verifyUpdateTodoItem();
+    }
+
+    public void testUpdateTodoItemsState() {
+        mContract.verifyUpdateTodoItemsState();
+    }
+
+    public void testDeleteNote() {
+        mContract.verifyDeleteNote();
+    }
+
+    public void testUndeleteAndPurge() {
+        mContract.verifyUndeleteAndPurge();
+    }
+
+    public void testChangeNotification() {
+        mContract.verifyChangeNotification();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.yoshiki.todo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * LogTodoRepositoryのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class LogTodoRepositoryTest extends TestCase {
+
+    /**
+     * メンバ変数定義
+     */
+    private File mFile;                         // テスト用のログファイル
+    private LogTodoRepository mRepository;      // テスト対象
+    private TodoRepositoryContract mContract;   // 共通テスト
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("todo", ".log");
+        mFile.delete();
+        mRepository = new LogTodoRepository(mFile).open();
+        mContract = new TodoRepositoryContract(mRepository);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRepository.close();
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testCreateAndFetch() {
+        mContract.verifyCreateAndFetch();
+    }
+
+    public void testCreateTodoItems() {
+        mContract.verifyCreateTodoItems();
+    }
+
+    public void testFetchTodoItems() {
+        mContract.verifyFetchTodoItems();
+    }
+
+    public void testFetchListItems() {
+        mContract.verifyFetchListItems();
+    }
+
+    public void testFetchTodoItemsByState() {
+        mContract.verifyFetchTodoItemsByState();
+    }
+
+    public void testFetchTodoItemPage() {
+        mContract.verifyFetchTodoItemPage();
+    }
+
+    public void testSortedPages() {
+        mContract.verifySortedPages();
+    }
+
+    public void testFetchTodoItemsAfter() {
+        mContract.verifyFetchTodoItemsAfter();
+    }
+
+    public void testFetchTodoItemsByDueDate() {
+        mContract.verifyFetchTodoItemsByDueDate();
+    }
+
+    public void testUpdateTodoItem() {
+        mContract.verifyUpdateTodoItem();
+    }
+
+    public void testUpdateTodoItemsState() {
+        mContract.verifyUpdateTodoItemsState();
+    }
+
+    public void testDeleteNote() {
+        mContract.verifyDeleteNote();
+    }
+
+    public void testUndeleteAndPurge() {
+        mContract.verifyUndeleteAndPurge();
+    }
+
+    public void testChangeNotification() {
+        mContract.verifyChangeNotification();
+    }
+
+    /**
+     * 開き直すと、ログから登録・更新・削除後の状態が復元され、削除済みの_idが再利用されないこと.
+     */
+    public void testReopenRestoresIndex() {
+        long nKept = mRepository.createTodoItem("title", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        long nDeleted = mRepository.createTodoItem("日本語", "body", "2015/07/14", TodoDbAdapter.STR_STATE_OPEN);
+        mRepository.updateTodoItem(nKept, "new title", null, null, TodoDbAdapter.STR_STATE_CLOSE);
+        mRepository.deleteNote(new long[]{nDeleted});
+
+        mRepository.close();
+        mRepository = new LogTodoRepository(mFile).open();
+
+        TodoItem item = mRepository.fetchTodoItem(nKept);
+        assertEquals("new title", item.getTitle());
+        assertEquals("body", item.getBody());
+        assertEquals(TodoDbAdapter.STR_STATE_CLOSE, item.getState());
+        assertNull(mRepository.fetchTodoItem(nDeleted));
+        assertTrue(mRepository.createTodoItem("title", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN) > nDeleted);
+    }
+
+    /**
+     * 更新を繰り返すと無効なレコードが詰め直され、内容は変わらないこと.
+     */
+    public void testCompaction() throws Exception {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 100; nIndex++) {
+            items.add(new TodoItem("title" + nIndex, "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        }
+        long[] nPrimaryKeys = mRepository.createTodoItems(items);
+
+        // 同じTodoアイテムを繰り返し更新し、ログを伸ばす
+        for (int nRound = 0; nRound < 100; nRound++) {
+            for (long nPrimaryKey : nPrimaryKeys) {
+                mRepository.updateTodoItem(nPrimaryKey, "title" + nPrimaryKey + "-" + nRound, null, null, null);
+            }
+        }
+        mRepository.awaitCompaction();
+        assertTrue(mRepository.getLogSize() < 256 * 1024);
+        assertFalse(new File(mFile.getPath() + ".compact").exists());
+
+        mRepository.close();
+        mRepository = new LogTodoRepository(mFile).open();
+        assertEquals(100, mRepository.fetchTodoItemsByState(TodoDbAdapter.STR_STATE_OPEN, null).size());
+        for (long nPrimaryKey : nPrimaryKeys) {
+            assertEquals("title" + nPrimaryKey + "-99", mRepository.fetchTodoItem(nPrimaryKey).getTitle());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.yoshiki.todo;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoDateCodecのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class TodoDateCodecTest extends TestCase {
+
+    /**
+     * 0埋めの有無・前後の空白によらず変換でき、不正な形式はN_NO_DATEとなること.
+     */
+    public void testParse() {
+        assertEquals(20150713, TodoDateCodec.parse("2015/07/13"));
+        assertEquals(20150102, TodoDateCodec.parse("2015/1/2"));
+        assertEquals(20150102, TodoDateCodec.parse(" 2015 / 1 / 2 "));
+        assertEquals(20160229, TodoDateCodec.parse("2016/02/29"));
+
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse(null));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse(""));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015/07"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015/07/13/1"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015//13"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015/0a/13"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("20 15/07/13"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015/13/01"));
+        assertEquals(TodoDateCodec.N_NO_DATE, TodoDateCodec.parse("2015/02/29"));
+    }
+
+    /**
+     * "yyyy/MM/dd"形式へ変換されること.
+     */
+    public void testFormat() {
+        assertEquals("2015/07/13", TodoDateCodec.format(20150713));
+        assertEquals("0999/01/02", TodoDateCodec.format(9990102));
+
+        char[] chars = "date=..........!".toCharArray();
+        assertEquals(10, TodoDateCodec.format(20151231, chars, 5));
+        assertEquals("date=2015/12/31!", new String(chars));
+    }
+
+    /**
+     * 整数の大小関係が日付の前後関係と一致すること.
+     */
+    public void testOrdering() {
+        assertTrue(TodoDateCodec.parse("2015/7/13") < TodoDateCodec.parse("2015/10/1"));
+        assertTrue(TodoDateCodec.parse("2014/12/31") < TodoDateCodec.parse("2015/1/1"));
+    }
+
+    /**
+     * 1970/01/01からの日数との変換が、GregorianCalendarの計算と一致すること.
+     */
+    public void testEpochDay() {
+        assertEquals(19700101, TodoDateCodec.fromEpochDay(0));
+        assertEquals(19691231, TodoDateCodec.fromEpochDay(-1));
+
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(1900, Calendar.JANUARY, 1);
+        long nFirst = calendar.getTimeInMillis() / (24L * 60 * 60 * 1000);
+        for (long nEpochDay = nFirst; nEpochDay < nFirst + 200 * 366; nEpochDay++) {
+            int nDate = TodoDateCodec.fromEpochDay(nEpochDay);
+            assertEquals(calendar.get(Calendar.YEAR), TodoDateCodec.getYear(nDate));
+            assertEquals(calendar.get(Calendar.MONTH) + 1, TodoDateCodec.getMonth(nDate));
+            assertEquals(calendar.get(Calendar.DAY_OF_MONTH), TodoDateCodec.getDay(nDate));
+            assertEquals(nEpochDay, TodoDateCodec.toEpochDay(nDate));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    /**
+     * タイムゾーンのオフセットを考慮して日付を求めること.
+     */
+    public void testFromMillis() {
+        // 2015/07/13 15:00 UTC は、東京では2015/07/14
+        long nMillis = TodoDateCodec.toEpochDay(20150713) * 24L * 60 * 60 * 1000 + 15L * 60 * 60 * 1000;
+        assertEquals(20150713, TodoDateCodec.fromMillis(nMillis, TimeZone.getTimeZone("UTC")));
+        assertEquals(20150714, TodoDateCodec.fromMillis(nMillis, TimeZone.getTimeZone("Asia/Tokyo")));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.yoshiki.todo;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoDbMetricsのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class TodoDbMetricsTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TodoDbMetrics.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TodoDbMetrics.configure(false, 100);
+        TodoDbMetrics.reset();
+        super.tearDown();
+    }
+
+    /**
+     * 無効時は計測せず、集計値も変わらないこと.
+     */
+    public void testDisabled() {
+        TodoDbMetrics.configure(false, 100);
+
+        long nStart = TodoDbMetrics.start();
+        assertEquals(0, nStart);
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH, nStart, 10);
+        assertEquals(0, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_FETCH));
+    }
+
+    /**
+     * 有効時は操作毎に回数と件数が集計されること.
+     */
+    public void testRecord() {
+        TodoDbMetrics.configure(true, 100000);
+
+        for (int nIndex = 0; nIndex < 10; nIndex++) {
+            TodoDbMetrics.record(TodoDbMetrics.N_OP_FETCH_LIST, TodoDbMetrics.start(), 50);
+        }
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_DELETE, TodoDbMetrics.start(), 3);
+
+        assertEquals(10, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_FETCH_LIST));
+        assertEquals(500, TodoDbMetrics.getTotalRows(TodoDbMetrics.N_OP_FETCH_LIST));
+        assertEquals(1, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_DELETE));
+        assertEquals(0, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_CREATE));
+        assertEquals(0, TodoDbMetrics.getSlowCount(TodoDbMetrics.N_OP_FETCH_LIST));
+
+        TodoDbMetrics.reset();
+        assertEquals(0, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_FETCH_LIST));
+    }
+
+    /**
+     * 閾値を超えた操作が低速として数えられること.
+     */
+    public void testSlowOperation() throws InterruptedException {
+        TodoDbMetrics.configure(true, 5);
+
+        long nStart = TodoDbMetrics.start();
+        Thread.sleep(10);
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_UPDATE, nStart, 1);
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_UPDATE, TodoDbMetrics.start(), 1);
+
+        assertEquals(2, TodoDbMetrics.getCount(TodoDbMetrics.N_OP_UPDATE));
+        assertEquals(1, TodoDbMetrics.getSlowCount(TodoDbMetrics.N_OP_UPDATE));
+    }
+
+    /**
+     * パーセンタイル値が、計測値を含むヒストグラムの区間の上限となること.
+     */
+    public void testLatencyPercentile() throws InterruptedException {
+        TodoDbMetrics.configure(true, 100000);
+        assertEquals(0, TodoDbMetrics.getLatencyPercentileMicros(TodoDbMetrics.N_OP_SEARCH, 50));
+
+        long nStart = TodoDbMetrics.start();
+        Thread.sleep(20);
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_SEARCH, nStart, 1);
+
+        // 20ms以上、かつ区間の上限（2のべき乗）は実測の2倍未満
+        long nP50 = TodoDbMetrics.getLatencyPercentileMicros(TodoDbMetrics.N_OP_SEARCH, 50);
+        assertTrue(nP50 >= 20000);
+        assertEquals(0, nP50 & (nP50 - 1));
+    }
+
+    /**
+     * 集計結果の出力に、実行した操作のみが含まれること.
+     */
+    public void testDump() {
+        TodoDbMetrics.configure(true, 100000);
+        TodoDbMetrics.record(TodoDbMetrics.N_OP_CREATE, TodoDbMetrics.start(), 1);
+
+        StringWriter out = new StringWriter();
+        TodoDbMetrics.dump(new PrintWriter(out), "");
+        String strDump = out.toString();
+        assertTrue(strDump.contains("create "));
+        assertTrue(strDump.contains("count=1"));
+        assertFalse(strDump.contains("search"));
+    }
+}
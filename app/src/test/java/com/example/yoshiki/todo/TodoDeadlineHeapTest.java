@@ -0,0 +1,136 @@
+package com.example.yoshiki.todo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoDeadlineHeapのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class TodoDeadlineHeapTest extends TestCase {
+
+    /**
+     * 期限, PrimaryKeyの順に取り出されること.
+     */
+    public void testPollOrder() {
+        TodoDeadlineHeap heap = new TodoDeadlineHeap(8);
+        heap.offer(20150720, 1);
+        heap.offer(20150713, 3);
+        heap.offer(20150713, 2);
+        heap.offer(20150801, 4);
+
+        assertEquals(4, heap.size());
+        assertEquals(20150713, heap.peekDate());
+        assertEquals(2, heap.peekPrimaryKey());
+        assertEquals(2, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(1, heap.poll());
+        assertEquals(4, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    /**
+     * 容量を超えると最も遅い期限が取り除かれ、件数が容量を超えないこと.
+     */
+    public void testEvictsLatest() {
+        TodoDeadlineHeap heap = new TodoDeadlineHeap(3);
+        assertFalse(heap.offer(20150710, 1));
+        assertFalse(heap.offer(20150720, 2));
+        assertFalse(heap.offer(20150715, 3));
+
+        // 最も遅い期限は追加されない
+        assertTrue(heap.offer(20150730, 4));
+        assertEquals(3, heap.size());
+        assertEquals(20150720, heap.lastDate());
+
+        // 最も遅い期限が取り除かれる
+        assertTrue(heap.offer(20150711, 5));
+        assertEquals(3, heap.size());
+        assertEquals(20150715, heap.lastDate());
+        assertEquals(3, heap.lastPrimaryKey());
+        assertEquals(1, heap.poll());
+        assertEquals(5, heap.poll());
+        assertEquals(3, heap.poll());
+    }
+
+    /**
+     * PrimaryKeyを指定して取り除いた後も、順序が保たれること.
+     */
+    public void testRemove() {
+        TodoDeadlineHeap heap = new TodoDeadlineHeap(8);
+        for (int nIndex = 0; nIndex < 8; nIndex++) {
+            heap.offer(20150701 + nIndex, nIndex);
+        }
+
+        assertTrue(heap.remove(0));
+        assertTrue(heap.remove(5));
+        assertFalse(heap.remove(5));
+        assertEquals(6, heap.size());
+        long[] nExpected = {1, 2, 3, 4, 6, 7};
+        for (long nPrimaryKey : nExpected) {
+            assertEquals(nPrimaryKey, heap.poll());
+        }
+    }
+
+    /**
+     * 追加・削除を無作為に繰り返しても、保持している期限の早い順に取り出されること.
+     */
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        TodoDeadlineHeap heap = new TodoDeadlineHeap(16);
+        long[] nExpected = new long[0];
+        for (int nStep = 0; nStep < 2000; nStep++) {
+            long nPrimaryKey = random.nextInt(64);
+            heap.remove(nPrimaryKey);
+            nExpected = removeKey(nExpected, nPrimaryKey);
+            if (random.nextBoolean()) {
+                int nDate = 20150701 + random.nextInt(28);
+                heap.offer(nDate, nPrimaryKey);
+                nExpected = insertKey(nExpected, nDate, nPrimaryKey, 16);
+            }
+            assertEquals(nExpected.length, heap.size());
+        }
+
+        for (long nPacked : nExpected) {
+            assertEquals(nPacked % 100, heap.poll());
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    public void testEmpty() {
+        TodoDeadlineHeap heap = new TodoDeadlineHeap(1);
+        try {
+            heap.poll();
+            fail();
+        } catch (IllegalStateException e) {
+            // 期待通り
+        }
+    }
+
+    /**
+     * 期限とPrimaryKeyを並べ替え可能な1つの値（期限×100+PrimaryKey）にまとめた配列から取り除く.
+     */
+    private static long[] removeKey(long[] nPacked, long nPrimaryKey) {
+        for (int nIndex = 0; nIndex < nPacked.length; nIndex++) {
+            if (nPacked[nIndex] % 100 == nPrimaryKey) {
+                long[] nResult = new long[nPacked.length - 1];
+                System.arraycopy(nPacked, 0, nResult, 0, nIndex);
+                System.arraycopy(nPacked, nIndex + 1, nResult, nIndex, nResult.length - nIndex);
+                return nResult;
+            }
+        }
+        return nPacked;
+    }
+
+    /**
+     * 期限順に追加し、容量を超えた分は最も遅い期限から取り除く.
+     */
+    private static long[] insertKey(long[] nPacked, int nDate, long nPrimaryKey, int nCapacity) {
+        long[] nResult = Arrays.copyOf(nPacked, nPacked.length + 1);
+        nResult[nPacked.length] = nDate * 100L + nPrimaryKey;
+        Arrays.sort(nResult);
+        return (nResult.length > nCapacity) ? Arrays.copyOf(nResult, nCapacity) : nResult;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.yoshiki.todo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoListSnapshotのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class TodoListSnapshotTest extends TestCase {
+
+    /**
+     * メンバ変数定義
+     */
+    private File mFile;     // スナップショットの保存先
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("snapshot", ".bin");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * 保存した_id・タイトル・期限と並び順が、そのまま読み込めること.
+     */
+    public void testRoundTrip() throws IOException {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        items.add(new TodoItem(3, "買い物", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        items.add(new TodoItem(7, "", "body", "2015/07/01", TodoDbAdapter.STR_STATE_OPEN));
+        items.add(new TodoItem(Long.MAX_VALUE, "emoji 😀", "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        TodoListSnapshot.write(mFile, items, TodoItem.N_SORT_TITLE, 50, false);
+
+        TodoListSnapshot snapshot = TodoListSnapshot.read(mFile);
+        assertNotNull(snapshot);
+        assertFalse(snapshot.hasMore());
+        assertEquals(TodoItem.N_SORT_TITLE, snapshot.getSortOrder());
+        assertEquals(3, snapshot.getItems().size());
+        for (int nIndex = 0; nIndex < items.size(); nIndex++) {
+            TodoItem item = snapshot.getItems().get(nIndex);
+            assertEquals(items.get(nIndex).getPrimaryKey(), item.getPrimaryKey());
+            assertEquals(items.get(nIndex).getTitle(), item.getTitle());
+            assertEquals(items.get(nIndex).getDate(), item.getDate());
+            assertEquals(TodoDbAdapter.STR_STATE_OPEN, item.getState());
+        }
+    }
+
+    /**
+     * 最大件数を超える分は保存せず、続きのページがあるものとして読み込まれること.
+     */
+    public void testMaxCount() throws IOException {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 1; nIndex <= 10; nIndex++) {
+            items.add(new TodoItem(nIndex, "title" + nIndex, null, null, TodoDbAdapter.STR_STATE_OPEN));
+        }
+        TodoListSnapshot.write(mFile, items, TodoItem.N_SORT_CREATED, 4, false);
+
+        TodoListSnapshot snapshot = TodoListSnapshot.read(mFile);
+        assertEquals(4, snapshot.getItems().size());
+        assertEquals("title4", snapshot.getItems().get(3).getTitle());
+        assertTrue(snapshot.hasMore());
+
+        // 空のリスト
+        TodoListSnapshot.write(mFile, new ArrayList<TodoItem>(), TodoItem.N_SORT_CREATED, 4, false);
+        snapshot = TodoListSnapshot.read(mFile);
+        assertNotNull(snapshot);
+        assertEquals(0, snapshot.getItems().size());
+    }
+
+    /**
+     * 存在しない・途中で切れた・内容が壊れたファイルは読み込まないこと.
+     */
+    public void testInvalidFile() throws IOException {
+        assertNull(TodoListSnapshot.read(mFile));
+
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        items.add(new TodoItem(1, "title", null, null, TodoDbAdapter.STR_STATE_OPEN));
+        TodoListSnapshot.write(mFile, items, TodoItem.N_SORT_CREATED, 50, false);
+        long nLength = mFile.length();
+
+        // 本体の1バイトを書き換える
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(nLength - 1);
+            raf.write('T');
+            assertNull(TodoListSnapshot.read(mFile));
+
+            // 末尾が切れている
+            raf.setLength(nLength - 2);
+            assertNull(TodoListSnapshot.read(mFile));
+
+            // ヘッダのみ
+            raf.setLength(10);
+            assertNull(TodoListSnapshot.read(mFile));
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.yoshiki.todo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoReminderSchedulerのテスト（JVM上で実行）.
+ * InMemoryTodoRepositoryと、設定された通知時刻を記録するAlarmを使う.
+ * @author 清兼
+ */
+public class TodoReminderSchedulerTest extends TestCase {
+
+    /**
+     * テスト定義
+     */
+    private static final long N_MILLIS_PER_HOUR = 60L * 60 * 1000;
+    private static final int N_CAPACITY = 4;
+    private static final int N_REMINDER_HOUR = 9;
+
+    /**
+     * メンバ変数定義
+     */
+    private TodoRepository mRepository;         // Todoアイテムの保存先
+    private RecordingAlarm mAlarm;              // 通知時刻の記録
+    private TodoReminderScheduler mScheduler;   // テスト対象
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRepository = new InMemoryTodoRepository().open();
+        mAlarm = new RecordingAlarm();
+        mScheduler = new TodoReminderScheduler(
+                mRepository, mAlarm, TimeZone.getTimeZone("UTC"), N_CAPACITY, N_REMINDER_HOUR);
+    }
+
+    /**
+     * 最も早い期限の通知時刻（期限日の通知時）が設定され、通知時刻を過ぎた本日の期限は対象外となること.
+     */
+    public void testReloadSchedulesEarliest() {
+        create("2015/07/20", TodoDbAdapter.STR_STATE_OPEN);
+        create("2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        create("2015/07/14", TodoDbAdapter.STR_STATE_CLOSE);
+        create("2015/07/15", TodoDbAdapter.STR_STATE_OPEN);
+
+        mScheduler.reload(at(20150713, 8));
+        assertEquals(at(20150713, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+        assertEquals(3, mScheduler.size());
+
+        // 通知時刻を過ぎた後は翌日以降が対象
+        mScheduler.reload(at(20150713, 10));
+        assertEquals(at(20150715, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+        assertEquals(2, mScheduler.size());
+    }
+
+    /**
+     * 登録・更新・削除を反映し、最も早い期限が変わった場合のみ通知時刻を設定し直すこと.
+     */
+    public void testIncrementalUpdates() {
+        long nLater = create("2015/07/20", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.reload(at(20150713, 8));
+        assertEquals(at(20150720, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+        assertEquals(1, mAlarm.mScheduleCount);
+
+        // より早い期限の登録
+        long nEarlier = create("2015/07/15", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nEarlier}));
+        assertEquals(at(20150715, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+        assertEquals(2, mAlarm.mScheduleCount);
+
+        // より遅い期限の登録では設定し直さない
+        long nLatest = create("2015/08/01", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nLatest}));
+        assertEquals(2, mAlarm.mScheduleCount);
+
+        // 完了にすると対象外
+        mRepository.updateTodoItem(nEarlier, null, null, null, TodoDbAdapter.STR_STATE_CLOSE);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nEarlier}));
+        assertEquals(at(20150720, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+
+        // 期限の変更
+        mRepository.updateTodoItem(nLater, null, null, "2015/07/14", null);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nLater}));
+        assertEquals(at(20150714, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+
+        // 全て削除すると取り消す
+        mRepository.deleteNote(new long[]{nLater, nLatest});
+        mScheduler.onItemsDeleted(new long[]{nLater, nLatest});
+        assertEquals(0, mScheduler.size());
+        assertEquals(1, mAlarm.mCancelCount);
+        assertEquals(-1, mScheduler.getScheduledAt());
+    }
+
+    /**
+     * 容量を超える件数でも保持件数は容量以下で、ヒープが減ると境界より後の期限を読み込み直すこと.
+     */
+    public void testBoundedMemory() {
+        long[] nPrimaryKeys = new long[1000];
+        for (int nIndex = 0; nIndex < nPrimaryKeys.length; nIndex++) {
+            nPrimaryKeys[nIndex] = create(TodoDateCodec.format(dayAfter(20150714, nIndex / 10)), TodoDbAdapter.STR_STATE_OPEN);
+        }
+        mScheduler.reload(at(20150713, 8));
+        assertEquals(N_CAPACITY, mScheduler.size());
+
+        // 境界より後の登録は保持しない
+        long nLate = create("2016/01/01", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nLate}));
+        assertEquals(N_CAPACITY, mScheduler.size());
+
+        // 境界より前の登録は、最も遅い期限と入れ替わる
+        long nEarly = create("2015/07/13", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nEarly}));
+        assertEquals(N_CAPACITY, mScheduler.size());
+        assertEquals(at(20150713, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+
+        // 削除でヒープが減ると読み込み直す
+        long[] nDeleted = {nEarly, nPrimaryKeys[0], nPrimaryKeys[1], nPrimaryKeys[2]};
+        mRepository.deleteNote(nDeleted);
+        mScheduler.onItemsDeleted(nDeleted);
+        assertEquals(N_CAPACITY, mScheduler.size());
+        assertEquals(at(20150714, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+
+        // 通知時刻毎に、その日の期限が容量によらず全て取得される
+        long[] nDue = mScheduler.onAlarm(at(20150714, N_REMINDER_HOUR), 100);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(nPrimaryKeys, 3, 10), nDue));
+        assertEquals(at(20150715, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+        nDue = mScheduler.onAlarm(at(20150715, N_REMINDER_HOUR), 100);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(nPrimaryKeys, 10, 20), nDue));
+        assertTrue(mScheduler.size() <= N_CAPACITY);
+    }
+
+    /**
+     * 通知時刻前の呼び出しでは何も取得されず、未読み込みでも通知時刻の期限が取得されること.
+     */
+    public void testOnAlarm() {
+        long nPrimaryKey = create("2015/07/14", TodoDbAdapter.STR_STATE_OPEN);
+
+        // プロセス再起動後（未読み込み）の通知
+        long[] nDue = mScheduler.onAlarm(at(20150714, N_REMINDER_HOUR), 100);
+        assertTrue(Arrays.equals(new long[]{nPrimaryKey}, nDue));
+        assertEquals(0, mScheduler.size());
+
+        // 通知時刻前
+        long nNext = create("2015/07/16", TodoDbAdapter.STR_STATE_OPEN);
+        mScheduler.onItemsChanged(mRepository.fetchTodoItems(new long[]{nNext}));
+        assertEquals(0, mScheduler.onAlarm(at(20150715, 12), 100).length);
+        assertEquals(at(20150716, N_REMINDER_HOUR), mAlarm.mTriggerAt);
+    }
+
+    /**
+     * 期限日の通知時刻がタイムゾーンの時差を反映すること.
+     */
+    public void testTriggerAtTimeZone() {
+        TodoReminderScheduler scheduler = new TodoReminderScheduler(
+                mRepository, mAlarm, TimeZone.getTimeZone("Asia/Tokyo"), N_CAPACITY, N_REMINDER_HOUR);
+        assertEquals(at(20150713, 0), scheduler.triggerAt(20150713));
+    }
+
+    /**
+     * 指定した期限・状態のTodoアイテムを登録する.
+     */
+    private long create(String strDate, String strState) {
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        items.add(new TodoItem("title", "body", strDate, strState));
+        return mRepository.createTodoItems(items)[0];
+    }
+
+    /**
+     * UTCでの日時をエポックミリ秒で取得.
+     */
+    private static long at(int nDate, int nHour) {
+        return TodoDateCodec.toEpochDay(nDate) * 24 * N_MILLIS_PER_HOUR + nHour * N_MILLIS_PER_HOUR;
+    }
+
+    /**
+     * 指定日数後の日付を取得.
+     */
+    private static int dayAfter(int nDate, int nDays) {
+        return TodoDateCodec.fromEpochDay(TodoDateCodec.toEpochDay(nDate) + nDays);
+    }
+
+    /**
+     * 設定された通知時刻を記録するAlarm.
+     */
+    private static class RecordingAlarm implements TodoReminderScheduler.Alarm {
+        long mTriggerAt = -1;
+        int mScheduleCount;
+        int mCancelCount;
+
+        @Override
+        public void schedule(long nTriggerAtMillis) {
+            mTriggerAt = nTriggerAtMillis;
+            mScheduleCount++;
+        }
+
+        @Override
+        public void cancel() {
+            mTriggerAt = -1;
+            mCancelCount++;
+        }
+    }
+}
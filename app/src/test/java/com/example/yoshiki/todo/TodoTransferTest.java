@@ -0,0 +1,206 @@
+package com.example.yoshiki.todo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * TodoTransferのテスト（JVM上で実行）.
+ * @author 清兼
+ */
+public class TodoTransferTest extends TestCase {
+
+    /**
+     * 区切り文字・引用符・改行・制御文字を含むTodoアイテム
+     */
+    private static final TodoItem[] ITEMS = {
+            new TodoItem("買い物", "牛乳, 卵", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN),
+            new TodoItem("say \"hi\"", "line1\nline2\r\n\tend", "2015/07/14", TodoDbAdapter.STR_STATE_CLOSE),
+            new TodoItem("back\\slash", "", "2015/08/01", TodoDbAdapter.STR_STATE_OPEN),
+            new TodoItem("ctrl\u0001 ", "\"\"", "2015/12/31", TodoDbAdapter.STR_STATE_OPEN)};
+
+    /**
+     * JSON Linesで書き出したTodoアイテムが、そのまま読み込めること.
+     */
+    public void testJsonLinesRoundTrip() throws IOException {
+        verifyRoundTrip(TodoTransfer.N_FORMAT_JSON_LINES);
+    }
+
+    /**
+     * CSVで書き出したTodoアイテムが、そのまま読み込めること.
+     */
+    public void testCsvRoundTrip() throws IOException {
+        verifyRoundTrip(TodoTransfer.N_FORMAT_CSV);
+    }
+
+    /**
+     * エクスポートのページ境界をまたぐ件数でも、全件が_id順に書き出されること.
+     */
+    public void testExportPages() throws IOException {
+        TodoRepository source = new InMemoryTodoRepository().open();
+        List<TodoItem> items = new ArrayList<TodoItem>();
+        for (int nIndex = 0; nIndex < 1234; nIndex++) {
+            items.add(new TodoItem("title" + nIndex, "body", "2015/07/13", TodoDbAdapter.STR_STATE_OPEN));
+        }
+        source.createTodoItems(items);
+
+        StringWriter writer = new StringWriter();
+        assertEquals(1234, TodoTransfer.exportTo(source, writer, TodoTransfer.N_FORMAT_JSON_LINES));
+        String[] strLines = writer.toString().split("\n");
+        assertEquals(1234, strLines.length);
+        assertTrue(strLines[1233], strLines[1233].contains("\"title1233\""));
+    }
+
+    /**
+     * 他の形式で書かれたJSON（キーの順序・空白・未知のキー・エスケープ）を読み込めること.
+     */
+    public void testParseJson() {
+        TodoItem item = TodoTransfer.parseJson(
+                " { \"state\" : \"open\", \"extra\": 1.5e3, \"date\":\"2015/7/3\",\"body\":\"a\\/b\\u00e9\","
+                        + "\"title\":\"t\" } ");
+        assertNotNull(item);
+        assertEquals("t", item.getTitle());
+        assertEquals("a/bé", item.getBody());
+        assertEquals("2015/07/03", item.getDate());
+        assertEquals(TodoDbAdapter.STR_STATE_OPEN, item.getState());
+
+        assertNull(TodoTransfer.parseJson("{\"title\":\"t\",\"body\":\"b\",\"date\":\"2015/07/13\"}"));
+        assertNull(TodoTransfer.parseJson("{\"title\":\"t\",\"body\":\"b\",\"date\":\"d\",\"state\":\"x\"}"));
+        assertNull(TodoTransfer.parseJson("{\"title\":\"t\""));
+        assertNull(TodoTransfer.parseJson("[]"));
+    }
+
+    /**
+     * 不正なCSVのレコードは読み込まないこと.
+     */
+    public void testParseCsv() {
+        assertNotNull(TodoTransfer.parseCsv("1,t,b,2015/07/13,open"));
+        assertNull(TodoTransfer.parseCsv("1,t,b,2015/07/13"));
+        assertNull(TodoTransfer.parseCsv("1,t,b,2015/07/13,open,extra"));
+        assertNull(TodoTransfer.parseCsv("1,t\"x,b,2015/07/13,open"));
+        assertNull(TodoTransfer.parseCsv("1,\"t,b,2015/07/13,open"));
+    }
+
+    /**
+     * 不正なレコードがあった場合は、レコード番号を含む例外で中断されること.
+     */
+    public void testImportStopsOnInvalidRecord() {
+        StringBuilder sb = new StringBuilder();
+        for (int nIndex = 0; nIndex < 2500; nIndex++) {
+            sb.append("{\"title\":\"t\",\"body\":\"b\",\"date\":\"2015/07/13\",\"state\":\"open\"}\n");
+        }
+        sb.append("{\"title\":\"t\"}\n");
+
+        TodoRepository target = new InMemoryTodoRepository().open();
+        try {
+            TodoTransfer.importFrom(new StringReader(sb.toString()), TodoTransfer.N_FORMAT_JSON_LINES, target, 4);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("record 2501"));
+        }
+    }
+
+    /**
+     * 100万件のファイルを、Todoアイテムを保持しない登録先へ一定のメモリでインポートできること.
+     * 登録先へ渡すバッチが上限件数を超えないことで、読み込み中に保持するTodoアイテムが一定であることを確認する.
+     */
+    public void testImportMillionRows() throws IOException {
+        final int nRows = 1000000;
+        CountingRepository target = new CountingRepository();
+        Reader reader = new GeneratedReader(nRows);
+
+        int nImported = TodoTransfer.importFrom(reader, TodoTransfer.N_FORMAT_CSV, target, 4);
+
+        assertEquals(nRows, nImported);
+        assertEquals(nRows, target.mCount);
+        assertTrue(target.mMaxBatch <= 1000);
+        assertTrue(target.mOrdered);
+    }
+
+    /**
+     * 指定形式で書き出し、別の登録先へ読み込んだ内容が一致することを確認.
+     */
+    private void verifyRoundTrip(int nFormat) throws IOException {
+        TodoRepository source = new InMemoryTodoRepository().open();
+        source.createTodoItems(Arrays.asList(ITEMS));
+
+        StringWriter writer = new StringWriter();
+        assertEquals(ITEMS.length, TodoTransfer.exportTo(source, writer, nFormat));
+
+        TodoRepository target = new InMemoryTodoRepository().open();
+        assertEquals(ITEMS.length, TodoTransfer.importFrom(new StringReader(writer.toString()), nFormat, target, 2));
+        List<TodoItem> imported = target.fetchTodoItemsAfter(0, 100);
+        assertEquals(ITEMS.length, imported.size());
+        for (int nIndex = 0; nIndex < ITEMS.length; nIndex++) {
+            TodoItem expected = ITEMS[nIndex];
+            TodoItem actual = imported.get(nIndex);
+            // CSVでは行をまたぐ値の改行コードは\nに揃う
+            String strBody = (nFormat == TodoTransfer.N_FORMAT_CSV)
+                    ? expected.getBody().replace("\r\n", "\n") : expected.getBody();
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(strBody, actual.getBody());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getState(), actual.getState());
+        }
+    }
+
+    /**
+     * 登録件数と順序のみを記録し、Todoアイテムを保持しない登録先.
+     */
+    private static class CountingRepository extends InMemoryTodoRepository {
+        int mCount;
+        int mMaxBatch;
+        boolean mOrdered = true;
+
+        @Override
+        public long[] createTodoItems(List<TodoItem> items) {
+            for (TodoItem item : items) {
+                mOrdered &= item.getTitle().equals("title" + mCount++);
+            }
+            mMaxBatch = Math.max(mMaxBatch, items.size());
+            return new long[items.size()];
+        }
+    }
+
+    /**
+     * CSVのレコードを必要な分だけ生成するReader（ファイル全体をメモリに持たない）.
+     */
+    private static class GeneratedReader extends Reader {
+        private final int mRows;
+        private int mNext = -1;     // 次に生成する行（-1は見出し）
+        private String mLine = "";
+        private int mPos;
+
+        GeneratedReader(int nRows) {
+            mRows = nRows;
+        }
+
+        @Override
+        public int read(char[] buffer, int nOffset, int nLength) {
+            if (mPos == mLine.length()) {
+                if (mNext >= mRows) {
+                    return -1;
+                }
+                mLine = (mNext < 0)
+                        ? "_id,title,body,date,state\n"
+                        : mNext + ",title" + mNext + ",\"body, with comma\",2015/07/13,open\n";
+                mNext++;
+                mPos = 0;
+            }
+            int nCount = Math.min(nLength, mLine.length() - mPos);
+            mLine.getChars(mPos, mPos + nCount, buffer, nOffset);
+            mPos += nCount;
+            return nCount;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}